@@ -0,0 +1,54 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.netty.http.client.ResponseFuture;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The future returned by <code>Invoker.callAsync()</code>. Cancelling it
+ * cancels the request.
+ *
+ * @author Tim Boudreau
+ */
+final class AsyncCall<T> extends CompletableFuture<T> implements ResponseSink<T> {
+
+    private final Class<T> type;
+    private volatile ResponseFuture response;
+
+    AsyncCall(Class<T> type) {
+        this.type = type;
+    }
+
+    @Override
+    public Class<T> type() {
+        return type;
+    }
+
+    @Override
+    public void cancelled() {
+        cancel(false);
+    }
+
+    @Override
+    public void attach(ResponseFuture response) {
+        if (response != null) {
+            this.response = response;
+            if (isCancelled()) {
+                response.cancel();
+            }
+        }
+    }
+
+    ResponseFuture response() {
+        return response;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean result = super.cancel(mayInterruptIfRunning);
+        ResponseFuture f = response;
+        if (result && f != null) {
+            f.cancel();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,98 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.function.misc.QuietAutoClosable;
+import com.mastfrog.netty.http.client.State;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Completes the futures of asynchronous and blocking invocations of one call
+ * from the events of their requests. Holds no per-request state, so one instance
+ * serves every invocation of the call.
+ *
+ * @author Tim Boudreau
+ */
+final class AsyncListener {
+
+    private final CallPlan plan;
+
+    AsyncListener(CallPlan plan) {
+        this.plan = plan;
+    }
+
+    void onEvent(ResponseSink<?> call, State<?> state, ResponseCache.Lookup lookup, CallContext ctx) {
+        switch (state.stateType()) {
+            case HeadersReceived:
+                // A 304 has no body, and the client does not report it as
+                // finished
+                HttpResponse resp = (HttpResponse) state.get();
+                if (HttpResponseStatus.NOT_MODIFIED.equals(resp.status())) {
+                    if (lookup != null && lookup.canRevalidate()) {
+                        revalidated(call, resp, lookup);
+                    } else {
+                        // Conditional headers added by a decorator
+                        call.completeExceptionally(new WebCallException(resp.status(), resp.headers(), null));
+                    }
+                }
+                break;
+            case Finished:
+                finished(call, (FullHttpResponse) state.get(), lookup, ctx);
+                break;
+            case Error:
+                call.completeExceptionally((Throwable) state.get());
+                break;
+            case Timeout:
+                call.completeExceptionally(new TimeoutException(plan.call.name()
+                        + " timed out after " + state.get()));
+                break;
+            case Cancelled:
+                call.cancelled();
+                break;
+            case Closed:
+                if (!call.isDone()) {
+                    call.completeExceptionally(new IOException("Connection closed before "
+                            + plan.call.name() + " completed"));
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void revalidated(ResponseSink<T> call, HttpResponse resp, ResponseCache.Lookup lookup) {
+        call.complete((T) lookup.revalidated(resp.headers()));
+    }
+
+    private <T> void finished(ResponseSink<T> call, FullHttpResponse resp, ResponseCache.Lookup lookup, CallContext ctx) {
+        int code = resp.status().code();
+        if (code < 200 || code > 298) {
+            call.completeExceptionally(new WebCallException(resp.status(), resp.headers(), resp.content()));
+            return;
+        }
+        ByteBuf content = resp.content();
+        int size = content.readableBytes();
+        if (DefaultResponseInterceptor.isView(call.type())) {
+            // The result is read from the future after the client has
+            // released the response, so it must not share its memory
+            content = Unpooled.copiedBuffer(content);
+        }
+        try (QuietAutoClosable ac = ctx.enter()) {
+            long start = System.nanoTime();
+            T result = plan.interpreter().interpret(resp.status(), resp.headers(),
+                    content, call.type());
+            plan.metrics().record(CallMetrics.Phase.INTERPRET, System.nanoTime() - start);
+            if (lookup != null) {
+                lookup.store(resp.headers(), result, size);
+            }
+            call.complete(result);
+        } catch (Exception | Error e) {
+            call.completeExceptionally(e);
+        }
+    }
+}
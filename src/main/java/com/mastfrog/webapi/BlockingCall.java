@@ -0,0 +1,121 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.netty.http.client.ResponseFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The outcome of a call made through <code>Invoker.invoke()</code>, which
+ * the invoking thread parks on. The outcome is a single field set once, so
+ * the thread parks with LockSupport directly rather than through a latch,
+ * which would allocate a synchronizer for each call to do the same thing.
+ * Either way a virtual thread waiting here unmounts from its carrier; only
+ * waiting in a <code>synchronized</code> block or <code>Object.wait()</code>
+ * would pin it.
+ *
+ * @author Tim Boudreau
+ */
+final class BlockingCall<T> implements ResponseSink<T> {
+
+    private static final Object NULL = new Object();
+    private static final AtomicReferenceFieldUpdater<BlockingCall, Object> OUTCOME
+            = AtomicReferenceFieldUpdater.newUpdater(BlockingCall.class, Object.class, "outcome");
+    private final Class<T> type;
+    private final Thread waiter;
+    private volatile ResponseFuture response;
+    private volatile Object outcome;
+    private volatile boolean interrupted;
+
+    BlockingCall(Class<T> type) {
+        this.type = type;
+        this.waiter = Thread.currentThread();
+    }
+
+    @Override
+    public Class<T> type() {
+        return type;
+    }
+
+    @Override
+    public void attach(ResponseFuture response) {
+        if (response != null) {
+            this.response = response;
+            if (interrupted) {
+                // A retry or hedge was already being sent
+                response.cancel();
+            }
+        }
+    }
+
+    private boolean finish(Object result) {
+        if (OUTCOME.compareAndSet(this, null, result)) {
+            LockSupport.unpark(waiter);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean complete(T value) {
+        return finish(value == null ? NULL : value);
+    }
+
+    @Override
+    public boolean completeExceptionally(Throwable thrown) {
+        return finish(new Failure(thrown));
+    }
+
+    @Override
+    public boolean isDone() {
+        return outcome != null;
+    }
+
+    @Override
+    public void cancelled() {
+        completeExceptionally(new CancellationException());
+    }
+
+    /**
+     * Park the calling thread until the call completes. If the thread is
+     * interrupted, the call is abandoned: the request is cancelled, and since
+     * the call is then done, a request still waiting for the concurrency
+     * limiter is rejected instead of sent, and a pending retry is dropped.
+     *
+     * @return The result
+     * @throws Exception If the call failed
+     */
+    @SuppressWarnings("unchecked")
+    T await() throws Exception {
+        Object result;
+        while ((result = outcome) == null) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                interrupted = true;
+                finish(new Failure(new InterruptedException()));
+                ResponseFuture response = this.response;
+                if (response != null) {
+                    response.cancel();
+                }
+                throw new InterruptedException();
+            }
+        }
+        if (result instanceof Failure) {
+            Throwable thrown = ((Failure) result).thrown;
+            if (thrown instanceof Exception) {
+                throw (Exception) thrown;
+            }
+            throw (Error) thrown;
+        }
+        return result == NULL ? null : (T) result;
+    }
+
+    private static final class Failure {
+
+        private final Throwable thrown;
+
+        Failure(Throwable thrown) {
+            this.thrown = thrown;
+        }
+    }
+}
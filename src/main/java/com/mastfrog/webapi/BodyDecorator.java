@@ -0,0 +1,42 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.mime.MimeType;
+import com.mastfrog.netty.http.client.HttpRequestBuilder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.io.IOException;
+
+/**
+ * A decorator which sends an object as the body of a request, serialized
+ * into a buffer it allocates. The invoker sets the body itself, so that if
+ * the request is never sent - because a fresh result was cached, it joined a
+ * request already in flight, or it was rejected - the buffer is released.
+ *
+ * @author Tim Boudreau
+ */
+public interface BodyDecorator<T> extends Decorator<T> {
+
+    /**
+     * Serialize an object as a request body. The caller owns the result.
+     *
+     * @param call The call being processed
+     * @param obj An object
+     * @param type The canonical type of the object
+     * @param alloc The allocator to create the buffer with
+     * @return A buffer
+     * @throws IOException If serialization fails
+     */
+    ByteBuf body(WebCall call, T obj, Class<T> type, ByteBufAllocator alloc) throws IOException;
+
+    /**
+     * The content type of the bodies this decorator creates.
+     *
+     * @return A mime type
+     */
+    MimeType contentType();
+
+    @Override
+    default void decorate(WebCall call, HttpRequestBuilder builder, T obj, Class<T> type) throws IOException {
+        builder.setBody(body(call, obj, type, ByteBufAllocator.DEFAULT), contentType());
+    }
+}
@@ -0,0 +1,66 @@
+package com.mastfrog.webapi;
+
+/**
+ * Thing which is called back with the result of each invocation made by
+ * <code>Invoker.callAll()</code>. Its methods are never called concurrently,
+ * so it can collect results without further synchronization.
+ *
+ * @author Tim Boudreau
+ */
+public abstract class BulkCallback<T> {
+
+    private final Class<T> type;
+    private final boolean inputOrder;
+
+    /**
+     * Create a callback which receives results in the order they complete.
+     *
+     * @param type The result type
+     */
+    public BulkCallback(Class<T> type) {
+        this(type, false);
+    }
+
+    /**
+     * Create a callback.
+     *
+     * @param type The result type
+     * @param inputOrder If true, results are delivered in the order of the
+     * argument sets they were invoked with; results which complete early are
+     * held until those before them have been delivered, and count against
+     * the maximum number of calls in flight meanwhile
+     */
+    public BulkCallback(Class<T> type, boolean inputOrder) {
+        this.type = type;
+        this.inputOrder = inputOrder;
+    }
+
+    /**
+     * Called with the result of a successful call.
+     *
+     * @param index The position of the argument set in the input
+     * @param args The argument set
+     * @param result The result
+     */
+    public abstract void onResult(long index, Object[] args, T result);
+
+    /**
+     * Called when a call fails - with a <code>WebCallException</code> if the
+     * response status was not 2xx. The default implementation does nothing;
+     * failures are counted in the summary either way.
+     *
+     * @param index The position of the argument set in the input
+     * @param args The argument set
+     * @param err The failure
+     */
+    public void onFailure(long index, Object[] args, Throwable err) {
+    }
+
+    public final Class<T> type() {
+        return type;
+    }
+
+    public final boolean inInputOrder() {
+        return inputOrder;
+    }
+}
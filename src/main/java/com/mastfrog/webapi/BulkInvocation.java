@@ -0,0 +1,249 @@
+package com.mastfrog.webapi;
+
+import io.netty.util.Timeout;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * One run of <code>Invoker.callAll()</code>. Argument sets are pulled from
+ * the input only when a slot is free, so no more than <i>maxInFlight</i>
+ * calls - counting results held back to preserve input order - exist at
+ * once, however long the input is. All state is guarded by this object's
+ * monitor. Outcomes are queued under it and passed to the callback once it
+ * is released, by one thread at a time, so the callback is never called
+ * concurrently and never runs while holding the monitor.
+ *
+ * @author Tim Boudreau
+ */
+final class BulkInvocation<T> {
+
+    private final Invoker<?> invoker;
+    private final TimeoutTimer timer;
+    private final WebCallEnum call;
+    private final Iterator<Object[]> input;
+    private final int maxInFlight;
+    private final BulkCallback<T> callback;
+    private final CompletableFuture<BulkSummary> summary = new CompletableFuture<>();
+    private final Map<Long, CompletableFuture<T>> inFlight = new HashMap<>();
+    private final TreeMap<Long, Outcome<T>> held = new TreeMap<>();
+    private final ArrayDeque<Outcome<T>> ready = new ArrayDeque<>();
+    private final long started = System.nanoTime();
+    private Timeout deadline;
+    private BulkSummary finalSummary;
+    private long nextIndex;
+    private long nextToDeliver;
+    private int slotsUsed;
+    private long succeeded;
+    private long failed;
+    private long cancelled;
+    private boolean pumping;
+    private boolean draining;
+    private boolean stopped;
+    private boolean deadlineExceeded;
+    private boolean finished;
+
+    BulkInvocation(Invoker<?> invoker, TimeoutTimer timer, WebCallEnum call, Iterable<Object[]> input, int maxInFlight, BulkCallback<T> callback) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Max in flight must be positive: " + maxInFlight);
+        }
+        this.invoker = invoker;
+        this.timer = timer;
+        this.call = call;
+        this.input = input.iterator();
+        this.maxInFlight = maxInFlight;
+        this.callback = callback;
+    }
+
+    CompletableFuture<BulkSummary> start(Duration timeout) {
+        summary.whenComplete((s, e) -> {
+            // Cancelled, or the input or callback threw
+            if (e != null) {
+                stop(false);
+            }
+        });
+        synchronized (this) {
+            if (timeout != null) {
+                deadline = timer.defer(() -> stop(true), timeout.toNanos());
+            }
+            pump();
+        }
+        drain();
+        return summary;
+    }
+
+    private void pump() {
+        if (pumping) {
+            return;
+        }
+        pumping = true;
+        try {
+            while (!stopped && slotsUsed < maxInFlight && input.hasNext()) {
+                long index = nextIndex++;
+                Object[] args = input.next();
+                slotsUsed++;
+                CompletableFuture<T> f = invoker.callAsync(call, callback.type(), args);
+                inFlight.put(index, f);
+                // Runs immediately if the result was cached
+                f.whenComplete((result, thrown) -> completed(index, args, result, thrown));
+            }
+        } catch (Exception | Error e) {
+            // From the input's iterator
+            summary.completeExceptionally(e);
+        } finally {
+            pumping = false;
+        }
+        maybeFinish();
+    }
+
+    private void completed(long index, Object[] args, T result, Throwable thrown) {
+        synchronized (this) {
+            if (inFlight.remove(index) == null) {
+                // Cancelled by stop(), which has counted it
+                return;
+            }
+            if (thrown instanceof CompletionException && thrown.getCause() != null) {
+                thrown = thrown.getCause();
+            }
+            if (callback.inInputOrder()) {
+                held.put(index, new Outcome<>(index, args, result, thrown));
+                deliverHeld(false);
+            } else {
+                slotsUsed--;
+                deliver(new Outcome<>(index, args, result, thrown));
+            }
+            pump();
+        }
+        drain();
+    }
+
+    private void deliverHeld(boolean all) {
+        Map.Entry<Long, Outcome<T>> e;
+        while ((e = held.firstEntry()) != null && (all || e.getKey() == nextToDeliver)) {
+            held.pollFirstEntry();
+            nextToDeliver = e.getKey() + 1;
+            slotsUsed--;
+            deliver(e.getValue());
+        }
+    }
+
+    private void deliver(Outcome<T> outcome) {
+        if (outcome.thrown == null) {
+            succeeded++;
+        } else {
+            failed++;
+        }
+        ready.add(outcome);
+    }
+
+    /**
+     * Pass queued outcomes to the callback, and complete the summary once
+     * the last has been passed. Only one thread drains at a time; one which
+     * finds another draining, or which is inside a locked section - because
+     * a cached result completed a call while it was being started - leaves
+     * its outcomes for the drainer.
+     */
+    private void drain() {
+        if (Thread.holdsLock(this)) {
+            return;
+        }
+        synchronized (this) {
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        for (;;) {
+            Outcome<T> next;
+            BulkSummary done = null;
+            synchronized (this) {
+                next = ready.poll();
+                if (next == null) {
+                    draining = false;
+                    done = finalSummary;
+                    finalSummary = null;
+                }
+            }
+            if (next == null) {
+                if (done != null) {
+                    summary.complete(done);
+                }
+                return;
+            }
+            if (summary.isDone()) {
+                continue;
+            }
+            try {
+                if (next.thrown == null) {
+                    callback.onResult(next.index, next.args, next.result);
+                } else {
+                    callback.onFailure(next.index, next.args, next.thrown);
+                }
+            } catch (Exception | Error e) {
+                summary.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void stop(boolean timedOut) {
+        List<CompletableFuture<T>> toCancel;
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            deadlineExceeded = timedOut;
+            if (timedOut) {
+                // Completed results are part of the partial result
+                deliverHeld(true);
+            } else {
+                cancelled += held.size();
+                slotsUsed -= held.size();
+                held.clear();
+            }
+            cancelled += inFlight.size();
+            slotsUsed -= inFlight.size();
+            toCancel = new ArrayList<>(inFlight.values());
+            inFlight.clear();
+            maybeFinish();
+        }
+        drain();
+        for (CompletableFuture<T> f : toCancel) {
+            f.cancel(true);
+        }
+    }
+
+    private void maybeFinish() {
+        if (slotsUsed == 0 && (stopped || !input.hasNext()) && !finished) {
+            finished = true;
+            if (deadline != null) {
+                deadline.cancel();
+            }
+            // Completed by drain() once the last outcome has been passed on
+            finalSummary = new BulkSummary(nextIndex, succeeded, failed, cancelled, deadlineExceeded,
+                    Duration.ofNanos(System.nanoTime() - started));
+        }
+    }
+
+    private static final class Outcome<T> {
+
+        private final long index;
+        private final Object[] args;
+        private final T result;
+        private final Throwable thrown;
+
+        Outcome(long index, Object[] args, T result, Throwable thrown) {
+            this.index = index;
+            this.args = args;
+            this.result = result;
+            this.thrown = thrown;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.mastfrog.webapi;
+
+import java.time.Duration;
+
+/**
+ * What happened in a run of <code>Invoker.callAll()</code>.
+ *
+ * @author Tim Boudreau
+ */
+public final class BulkSummary {
+
+    private final long submitted;
+    private final long succeeded;
+    private final long failed;
+    private final long cancelled;
+    private final boolean deadlineExceeded;
+    private final Duration elapsed;
+
+    BulkSummary(long submitted, long succeeded, long failed, long cancelled, boolean deadlineExceeded, Duration elapsed) {
+        this.submitted = submitted;
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.cancelled = cancelled;
+        this.deadlineExceeded = deadlineExceeded;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * The number of calls which were started.
+     *
+     * @return A count
+     */
+    public long submitted() {
+        return submitted;
+    }
+
+    /**
+     * The number of results delivered to <code>onResult()</code>.
+     *
+     * @return A count
+     */
+    public long succeeded() {
+        return succeeded;
+    }
+
+    /**
+     * The number of failures delivered to <code>onFailure()</code>.
+     *
+     * @return A count
+     */
+    public long failed() {
+        return failed;
+    }
+
+    /**
+     * The number of calls which were abandoned because the deadline passed
+     * or the run was stopped: those in flight, and, if the run was stopped,
+     * results held back to preserve input order.
+     *
+     * @return A count
+     */
+    public long cancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Whether the run was stopped by its deadline, in which case some
+     * argument sets may not have been used.
+     *
+     * @return true if the deadline passed
+     */
+    public boolean deadlineExceeded() {
+        return deadlineExceeded;
+    }
+
+    public Duration elapsed() {
+        return elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return "submitted=" + submitted + " succeeded=" + succeeded + " failed=" + failed
+                + " cancelled=" + cancelled + (deadlineExceeded ? " deadline-exceeded" : "")
+                + " elapsed=" + elapsed;
+    }
+}
@@ -0,0 +1,138 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.function.misc.QuietAutoClosable;
+import com.mastfrog.giulius.scope.ReentrantScope;
+import com.mastfrog.netty.http.client.HttpRequestBuilder;
+import io.netty.buffer.ByteBuf;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The objects one invocation of a call needs, looked up among its arguments
+ * once when it is invoked and stored in the slots its CallPlan assigned to
+ * each type, so building the request and interpreting the response read them
+ * by index instead of through the Guice scope. As in the scope, if several
+ * arguments are instances of a type, the last one wins.
+ * <p/>
+ * The scope is only entered for calls with a decorator, interpolator or
+ * interpreter which is created per invocation and so may inject any of the
+ * objects; its contents are assembled once per invocation, however many
+ * times it is entered.
+ *
+ * @author Tim Boudreau
+ */
+final class CallContext {
+
+    private final WebCallEnum id;
+    private final Object[] args;
+    private final Object[] values;
+    private final Deadline deadline;
+    private final ReentrantScope scope;
+    private Object[] scopeContents;
+    private volatile Map<HttpRequestBuilder, ByteBuf> bodies;
+
+    CallContext(WebCallEnum id, Object[] args, Object[] values, ReentrantScope scope) {
+        this.id = id;
+        this.args = args;
+        this.values = values;
+        this.deadline = Deadline.in(args);
+        this.scope = scope;
+    }
+
+    /**
+     * Find the value for a type among the arguments to an invocation.
+     *
+     * @param type The type
+     * @param args The arguments
+     * @return The last argument which is an instance of the type, or null
+     */
+    static Object find(Class<?> type, Object[] args) {
+        for (int i = args.length - 1; i >= 0; i--) {
+            if (type.isInstance(args[i])) {
+                return args[i];
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T get(int slot) {
+        return (T) values[slot];
+    }
+
+    /**
+     * The values in slot order, for rendering a path template, whose slots
+     * are the first ones.
+     *
+     * @return The values array, which must not be modified
+     */
+    Object[] values() {
+        return values;
+    }
+
+    /**
+     * The soonest deadline among the arguments.
+     *
+     * @return A deadline, or null
+     */
+    Deadline deadline() {
+        return deadline;
+    }
+
+    /**
+     * Enter the call scope, if the call has anything which may look up its
+     * contents, with the arguments, the call and the enum constant it was
+     * invoked through.
+     *
+     * @return Something to close to exit the scope
+     */
+    QuietAutoClosable enter() {
+        if (scope == null) {
+            return QuietAutoClosable.NO_OP;
+        }
+        Object[] contents = scopeContents;
+        if (contents == null) {
+            contents = new Object[args.length + 2];
+            System.arraycopy(args, 0, contents, 0, args.length);
+            contents[args.length] = id.get();
+            contents[args.length + 1] = id;
+            scopeContents = contents;
+        }
+        return scope.enter(contents);
+    }
+
+    /**
+     * Record the body a decorator serialized for a request, so it can be
+     * released if the request is never sent. Retries and hedges populate
+     * several requests in one context, so bodies are kept per request.
+     *
+     * @param reqb The request
+     * @param body Its body
+     */
+    synchronized void body(HttpRequestBuilder reqb, ByteBuf body) {
+        if (bodies == null) {
+            bodies = new IdentityHashMap<>(2);
+        }
+        bodies.put(reqb, body);
+    }
+
+    /**
+     * Release the body of a request which will not be sent - because a
+     * fresh result was cached, it joined a request already in flight, or it
+     * was rejected. Once a request is sent, the client releases its body.
+     *
+     * @param reqb The request
+     */
+    void discard(HttpRequestBuilder reqb) {
+        if (bodies == null) {
+            return;
+        }
+        ByteBuf body;
+        synchronized (this) {
+            body = bodies.remove(reqb);
+        }
+        if (body != null) {
+            body.release();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.netty.http.client.HttpRequestBuilder;
+import com.mastfrog.netty.http.client.State;
+import com.mastfrog.util.thread.Receiver;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where the time goes in the requests for one call, with counts of response
+ * statuses, errors and bytes transferred. Every request an invoker sends for
+ * the call is recorded; get one with <code>Invoker.metrics()</code> and take
+ * snapshots to pass on to a metrics system.
+ *
+ * @author Tim Boudreau
+ */
+public final class CallMetrics {
+
+    /**
+     * The successive phases of a request, each recorded in its own
+     * histogram.
+     */
+    public enum Phase {
+        /**
+         * Creating the request and running the call's decorators.
+         */
+        BUILD,
+        /**
+         * From being built to starting to connect, including any time
+         * waiting for the concurrency limiter.
+         */
+        QUEUE,
+        /**
+         * Connecting.
+         */
+        CONNECT,
+        /**
+         * From connecting to receiving the response headers.
+         */
+        HEADERS,
+        /**
+         * From receiving the response headers to the end of the body.
+         */
+        BODY,
+        /**
+         * Interpreting the response body as an object.
+         */
+        INTERPRET,
+        /**
+         * From the start of building the request to the end of the response
+         * body, not including interpretation.
+         */
+        TOTAL
+    }
+
+    private final String name;
+    private final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+    private final AtomicLongArray statuses = new AtomicLongArray(600);
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+
+    CallMetrics(String name) {
+        this.name = name;
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public LatencyHistogram histogram(Phase phase) {
+        return phases[phase.ordinal()];
+    }
+
+    void record(Phase phase, long nanos) {
+        phases[phase.ordinal()].record(nanos);
+    }
+
+    /**
+     * Record the phases of a request as it is sent and its response arrives.
+     *
+     * @param reqb The request, which has just been built
+     * @param start When building it started
+     * @param connections The invoker's connections, to record the request's
+     * connection in
+     */
+    void time(HttpRequestBuilder reqb, long start, ConnectionStats connections) {
+        reqb.onEvent(new Timing(start, connections));
+    }
+
+    public Snapshot snapshot() {
+        Map<Phase, LatencyHistogram.Snapshot> latencies = new EnumMap<>(Phase.class);
+        for (Phase p : Phase.values()) {
+            latencies.put(p, histogram(p).snapshot());
+        }
+        Map<Integer, Long> counts = new TreeMap<>();
+        for (int i = 0; i < statuses.length(); i++) {
+            long count = statuses.get(i);
+            if (count > 0) {
+                counts.put(i, count);
+            }
+        }
+        return new Snapshot(name, latencies, counts, errors.sum(), cancelled.sum(),
+                bytesSent.sum(), bytesReceived.sum());
+    }
+
+    @Override
+    public String toString() {
+        return "CallMetrics(" + name + ")";
+    }
+
+    /**
+     * Follows one request. Its events arrive in order, though not always on
+     * the same thread.
+     */
+    private final class Timing extends Receiver<State<?>> {
+
+        private final long start;
+        private final ConnectionStats connections;
+        private volatile long built;
+        private volatile long connecting;
+        private volatile long connected;
+        private volatile long headers;
+        private volatile boolean received;
+
+        Timing(long start, ConnectionStats connections) {
+            this.start = start;
+            this.connections = connections;
+            built = System.nanoTime();
+            record(Phase.BUILD, built - start);
+        }
+
+        @Override
+        public void receive(State<?> state) {
+            long now = System.nanoTime();
+            switch (state.stateType()) {
+                case Connecting:
+                    connecting = now;
+                    record(Phase.QUEUE, now - built);
+                    break;
+                case Connected:
+                    connected = now;
+                    record(Phase.CONNECT, now - connecting);
+                    connections.connected((Channel) state.get(), now - connecting);
+                    break;
+                case SendRequest:
+                    if (state.get() instanceof ByteBufHolder) {
+                        bytesSent.add(((ByteBufHolder) state.get()).content().readableBytes());
+                    }
+                    break;
+                case HeadersReceived:
+                    headers = now;
+                    record(Phase.HEADERS, now - (connected == 0 ? built : connected));
+                    HttpResponseStatus status = ((HttpResponse) state.get()).status();
+                    if (status.code() >= 0 && status.code() < statuses.length()) {
+                        statuses.incrementAndGet(status.code());
+                    }
+                    if (HttpResponseStatus.NOT_MODIFIED.equals(status)) {
+                        // The client does not report a 304 as finished
+                        record(Phase.TOTAL, now - start);
+                    }
+                    break;
+                case ContentReceived:
+                    received = true;
+                    bytesReceived.add(((HttpContent) state.get()).content().readableBytes());
+                    break;
+                case Finished:
+                    if (!received) {
+                        bytesReceived.add(((FullHttpResponse) state.get()).content().readableBytes());
+                    }
+                    record(Phase.BODY, now - headers);
+                    record(Phase.TOTAL, now - start);
+                    break;
+                case Error:
+                case Timeout:
+                    errors.increment();
+                    break;
+                case Cancelled:
+                    cancelled.increment();
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * The metrics of a call at one point in time.
+     */
+    public static final class Snapshot {
+
+        private final String name;
+        private final Map<Phase, LatencyHistogram.Snapshot> latencies;
+        private final Map<Integer, Long> statuses;
+        private final long errors;
+        private final long cancelled;
+        private final long bytesSent;
+        private final long bytesReceived;
+
+        Snapshot(String name, Map<Phase, LatencyHistogram.Snapshot> latencies, Map<Integer, Long> statuses,
+                long errors, long cancelled, long bytesSent, long bytesReceived) {
+            this.name = name;
+            this.latencies = latencies;
+            this.statuses = Collections.unmodifiableMap(statuses);
+            this.errors = errors;
+            this.cancelled = cancelled;
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public LatencyHistogram.Snapshot latency(Phase phase) {
+            return latencies.get(phase);
+        }
+
+        /**
+         * The number of responses received with each status code.
+         *
+         * @return A map from status code to count, in order of status code
+         */
+        public Map<Integer, Long> statuses() {
+            return statuses;
+        }
+
+        /**
+         * The number of requests which failed without a response.
+         *
+         * @return A count
+         */
+        public long errors() {
+            return errors;
+        }
+
+        /**
+         * The number of requests which were cancelled, by the caller or for
+         * taking too long.
+         *
+         * @return A count
+         */
+        public long cancelled() {
+            return cancelled;
+        }
+
+        public long bytesSent() {
+            return bytesSent;
+        }
+
+        public long bytesReceived() {
+            return bytesReceived;
+        }
+
+        @Override
+        public String toString() {
+            return name + " " + statuses + " errors=" + errors + " total("
+                    + latency(Phase.TOTAL) + ")";
+        }
+    }
+}
@@ -0,0 +1,503 @@
+package com.mastfrog.webapi;
+
+import com.google.inject.Binding;
+import com.google.inject.ConfigurationException;
+import com.google.inject.Injector;
+import com.google.inject.Provider;
+import com.google.inject.Scopes;
+import com.google.inject.spi.InjectionPoint;
+import com.mastfrog.acteur.header.entities.BasicCredentials;
+import com.mastfrog.acteur.headers.Headers;
+import com.mastfrog.function.misc.QuietAutoClosable;
+import com.mastfrog.giulius.Dependencies;
+import com.mastfrog.giulius.scope.ReentrantScope;
+import com.mastfrog.netty.http.client.HttpRequestBuilder;
+import com.mastfrog.url.Path;
+import com.mastfrog.url.URL;
+import com.mastfrog.url.URLBuilder;
+import com.mastfrog.util.preconditions.Exceptions;
+import com.mastfrog.webapi.builtin.Parameters;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A WebCall with everything needed to turn it into a request resolved up
+ * front: the path template merged with the base path, the CallContext slot
+ * each object the call needs is read from, and decorator, interpolator and
+ * interpreter instances. Decorators registered as instances are used as-is.
+ * Decorators, interpolators and interpreters which are singletons, or which
+ * have no injected dependencies (and so cannot depend on the call context)
+ * are instantiated once; anything else gets a pre-resolved provider, and the
+ * call scope is entered while it is used.
+ *
+ * @author Tim Boudreau
+ */
+final class CallPlan {
+
+    final WebCall call;
+    private final PathTemplate template;
+    private final Class<?>[] contextTypes;
+    private final int[] requiredSlots;
+    private final Step<?>[] interpolations;
+    private final Step<?>[] decorations;
+    private final int parameters;
+    private final int credentials;
+    private final boolean scoped;
+    private final Provider<? extends Interpreter> interpreter;
+    private final String accept;
+    private final boolean streaming;
+    private final boolean cacheable;
+    private final boolean coalesced;
+    private final ConcurrencyLimiter limiter;
+    private final RetryPolicy retries;
+    private final CircuitBreaker breaker;
+    private final HedgePolicy hedging;
+    private final CallTimeouts timeouts;
+    private final CallMetrics metrics;
+    private volatile AsyncListener async;
+    private final Dependencies deps;
+
+    CallPlan(WebCall call, Dependencies deps, String basePrefix, JsonBindings bindings) {
+        this.call = call;
+        this.deps = deps;
+        Injector injector = deps.getInjector();
+        // Everything beyond the WebCall interface - caching, limits, retries
+        // and so on - can only be configured through WebCallBuilder
+        WebCallBuilder.WebCallImpl impl = call instanceof WebCallBuilder.WebCallImpl
+                ? (WebCallBuilder.WebCallImpl) call : null;
+        template = PathTemplate.of(call).withBase(basePrefix);
+        // The path template's slots come first, so the context's values can
+        // be rendered into it directly
+        List<Class<?>> types = new ArrayList<>();
+        for (int i = 0; i < template.slotCount(); i++) {
+            types.add(template.slotType(i));
+        }
+        Class<?>[] required = call.requiredTypes();
+        requiredSlots = new int[required.length];
+        for (int i = 0; i < required.length; i++) {
+            requiredSlots[i] = slot(types, required[i]);
+        }
+        parameters = slot(types, Parameters.class);
+        credentials = call.authenticationRequired() ? slot(types, BasicCredentials.class) : -1;
+        contextTypes = types.toArray(new Class<?>[types.size()]);
+        boolean stateless = true;
+        List<Step<?>> interps = new ArrayList<>(3);
+        List<Step<?>> decs = new ArrayList<>(3);
+        for (int i = 0; i < required.length; i++) {
+            Class<?> type = required[i];
+            Class<?> interp = call.interpolator(type);
+            if (interp != null) {
+                interps.add(step(injector, type, requiredSlots[i], interp));
+                stateless &= isStateless(injector, interp);
+            }
+            Class<?> dec = call.decorator(type);
+            Decorator<?> instance = impl == null ? null : impl.decoratorInstance(type);
+            if (instance != null) {
+                decs.add(new Step<>(type, requiredSlots[i], constant(instance)));
+            } else if (dec != null) {
+                decs.add(step(injector, type, requiredSlots[i], dec));
+                stateless &= isStateless(injector, dec);
+            }
+        }
+        interpolations = interps.toArray(new Step<?>[interps.size()]);
+        decorations = decs.toArray(new Step<?>[decs.size()]);
+        Codecs codecs = impl == null ? null : codecs(impl, injector);
+        accept = codecs == null ? null : codecs.accept();
+        interpreter = interpreter(call, impl, injector, bindings, codecs);
+        Class<? extends Interpreter> interpreterType = impl == null ? null : impl.interpreterType();
+        if (impl == null) {
+            stateless = false;
+        } else if (interpreterType != null && interpreterType != DefaultResponseInterceptor.class) {
+            stateless &= isStateless(injector, interpreterType);
+        }
+        scoped = !stateless;
+        streaming = interpreterType != null && StreamingInterpreter.class.isAssignableFrom(interpreterType);
+        cacheable = !streaming && impl != null && impl.isCacheable();
+        coalesced = !streaming && impl != null && impl.isCoalesced();
+        limiter = impl == null ? null : impl.createLimiter();
+        retries = impl == null ? null : impl.retryPolicy();
+        breaker = impl == null ? null : impl.createCircuitBreaker();
+        hedging = impl == null ? null : impl.createHedgePolicy();
+        timeouts = impl == null ? null : impl.timeouts();
+        metrics = new CallMetrics(call.name());
+    }
+
+    private static Codecs codecs(WebCallBuilder.WebCallImpl call, Injector injector) {
+        Class<? extends Codec>[] types = call.codecTypes();
+        if (types.length == 0) {
+            return null;
+        }
+        Codec[] codecs = new Codec[types.length];
+        for (int i = 0; i < types.length; i++) {
+            codecs[i] = injector.getInstance(types[i]);
+        }
+        return new Codecs(codecs);
+    }
+
+    private Provider<? extends Interpreter> interpreter(WebCall call, WebCallBuilder.WebCallImpl impl,
+            Injector injector, JsonBindings bindings, Codecs codecs) {
+        if (impl != null) {
+            Class<? extends Interpreter> type = impl.interpreterType();
+            if (type == null || type == DefaultResponseInterceptor.class) {
+                return constant(codecs == null ? new DefaultResponseInterceptor(bindings)
+                        : new DefaultResponseInterceptor(codecs));
+            }
+            return resolve(injector, type);
+        }
+        // Unknown implementation - let it decide each time
+        return () -> {
+            Interpreter result = call.interpreter(deps);
+            if (result instanceof StreamingInterpreter) {
+                // Its response would be aggregated, which is what streaming
+                // is meant to avoid
+                throw new IllegalStateException(call.name() + " is a " + call.getClass().getName()
+                        + ", but streaming interpreters are only supported for "
+                        + "calls created with WebCallBuilder");
+            }
+            return result;
+        };
+    }
+
+    private static int slot(List<Class<?>> types, Class<?> type) {
+        int result = types.indexOf(type);
+        if (result < 0) {
+            result = types.size();
+            types.add(type);
+        }
+        return result;
+    }
+
+    private static <T> Step<T> step(Injector injector, Class<T> type, int slot, Class<?> handler) {
+        return new Step<>(type, slot, resolve(injector, handler));
+    }
+
+    private static <T> Provider<T> constant(T obj) {
+        return () -> obj;
+    }
+
+    static <T> Provider<T> resolve(Injector injector, Class<T> type) {
+        Provider<T> result = injector.getProvider(type);
+        if (isStateless(injector, type)) {
+            return constant(result.get());
+        }
+        return result;
+    }
+
+    static boolean isStateless(Injector injector, Class<?> type) {
+        try {
+            Binding<?> binding = injector.getBinding(type);
+            if (Scopes.isSingleton(binding)) {
+                return true;
+            }
+            return InjectionPoint.forConstructorOf(type).getDependencies().isEmpty()
+                    && InjectionPoint.forInstanceMethodsAndFields(type).isEmpty();
+        } catch (ConfigurationException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Look up the objects an invocation of this call needs among its
+     * arguments.
+     *
+     * @param id The enum constant the call was invoked through
+     * @param args The arguments
+     * @param scope The call scope, entered only if something may look up its
+     * contents
+     * @return A context
+     */
+    CallContext context(WebCallEnum id, Object[] args, ReentrantScope scope) {
+        Object[] values = new Object[contextTypes.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = CallContext.find(contextTypes[i], args);
+        }
+        return new CallContext(id, args, values, scoped ? scope : null);
+    }
+
+    /**
+     * Look up the objects an invocation of this call needs in the call
+     * scope, which must already have been entered.
+     *
+     * @return A context
+     */
+    CallContext context() {
+        Object[] values = new Object[contextTypes.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = deps.getInstance(contextTypes[i]);
+        }
+        return new CallContext(null, new Object[0], values, null);
+    }
+
+    /**
+     * Populate a request, entering the call scope only if a decorator or
+     * interpolator may need it.
+     *
+     * @param builder A request builder
+     * @param base The base URL
+     * @param ctx The invocation's context
+     * @return the builder
+     * @throws IOException If a decorator fails
+     */
+    HttpRequestBuilder populate(HttpRequestBuilder builder, URL base, CallContext ctx) throws IOException {
+        try (QuietAutoClosable cl = ctx.enter()) {
+            if (interpolations.length > 0) {
+                builder.setURL(interpolatedURL(base, ctx));
+            } else {
+                StringBuilder b = new StringBuilder(template.template().length() + 24);
+                template.appendTo(b, ctx.values());
+                builder.setURL(base).setPath(b.toString());
+            }
+            if (accept != null) {
+                builder.addHeader(Headers.ACCEPT, accept);
+            }
+            Parameters params = ctx.get(parameters);
+            if (params != null) {
+                params.populate(builder);
+            }
+            try {
+                for (Step<?> step : decorations) {
+                    step.decorate(call, builder, ctx);
+                }
+            } catch (IOException | RuntimeException | Error e) {
+                // An earlier decorator may have set a body
+                ctx.discard(builder);
+                throw e;
+            }
+            if (credentials >= 0) {
+                BasicCredentials bc = ctx.get(credentials);
+                if (bc != null) {
+                    builder.addHeader(Headers.AUTHORIZATION, bc);
+                }
+            }
+        }
+        return builder;
+    }
+
+    Interpreter interpreter() {
+        return interpreter.get();
+    }
+
+    /**
+     * Get the listener which completes futures for asynchronous invocations
+     * of this call.
+     *
+     * @return A listener
+     */
+    AsyncListener asyncListener() {
+        AsyncListener result = async;
+        if (result == null) {
+            async = result = new AsyncListener(this);
+        }
+        return result;
+    }
+
+    /**
+     * Whether the call's interpreter is a StreamingInterpreter, in which case
+     * the response should not be aggregated.
+     *
+     * @return true if the response should be streamed
+     */
+    boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Start a cache lookup for a populated request, if the call is cacheable
+     * and the result type can be cached.
+     *
+     * @param cache The cache
+     * @param reqb The request
+     * @param type The result type
+     * @param ctx The invocation's context
+     * @return A lookup, or null
+     */
+    ResponseCache.Lookup cacheLookup(ResponseCache cache, HttpRequestBuilder reqb, Class<?> type, CallContext ctx) {
+        if (!cacheable || !ResponseCache.isCacheable(type)) {
+            return null;
+        }
+        return cache.lookup(requestKey(reqb, type, ctx));
+    }
+
+    /**
+     * The call's own concurrency limiter.
+     *
+     * @return A limiter, or null if the call uses the invoker's
+     */
+    ConcurrencyLimiter limiter() {
+        return limiter;
+    }
+
+    /**
+     * The call's circuit breaker.
+     *
+     * @return A breaker, or null if the call has none
+     */
+    CircuitBreaker circuitBreaker() {
+        return breaker;
+    }
+
+    /**
+     * The call's retry policy.
+     *
+     * @return A policy, or null if the call is not retried
+     */
+    RetryPolicy retries() {
+        return retries;
+    }
+
+    /**
+     * The call's hedging policy.
+     *
+     * @return A policy, or null if the call is not hedged
+     */
+    HedgePolicy hedging() {
+        return hedging;
+    }
+
+    /**
+     * The call's timeouts.
+     *
+     * @return The timeouts, or null if the call has none
+     */
+    CallTimeouts timeouts() {
+        return timeouts;
+    }
+
+    CallMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Whether concurrent identical invocations of this call should share one
+     * request, which they should not if the result is a view of the response
+     * body that each would read.
+     *
+     * @param type The result type
+     * @return true if they should
+     */
+    boolean isCoalesced(Class<?> type) {
+        return coalesced && !DefaultResponseInterceptor.isView(type);
+    }
+
+    /**
+     * Get a string identifying the response to a populated request, as far as
+     * the invoker can tell: the method, URL, Accept header and credentials,
+     * the objects passed to the call's decorators, plus the type it will be
+     * interpreted as.
+     *
+     * @param reqb The request
+     * @param type The result type
+     * @param ctx The invocation's context
+     * @return A key
+     */
+    String requestKey(HttpRequestBuilder reqb, Class<?> type, CallContext ctx) {
+        StringBuilder key = new StringBuilder(128).append(call.method()).append(' ')
+                .append(reqb.toURL()).append('\n').append(type.getName());
+        if (accept != null) {
+            key.append('\n').append(accept);
+        }
+        if (credentials >= 0) {
+            BasicCredentials bc = ctx.get(credentials);
+            if (bc != null) {
+                key.append('\n').append(bc);
+            }
+        }
+        // Any headers a decorator adds are derived from the object it is
+        // passed, so those objects tell apart requests with the same URL
+        for (Step<?> step : decorations) {
+            Object obj = ctx.get(step.slot);
+            if (obj != null) {
+                key.append('\n').append(step.type.getName()).append('=').append(obj);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Whether anything the call uses is created per invocation, and so may
+     * inject objects from the call scope.
+     *
+     * @return true if the scope must be entered
+     */
+    boolean isScoped() {
+        return scoped;
+    }
+
+    private URL interpolatedURL(URL base, CallContext ctx) {
+        // An interpolator may rewrite the template arbitrarily, so the
+        // precompiled template cannot be used here
+        StringBuilder b = new StringBuilder(call.urlTemplate());
+        for (Step<?> step : interpolations) {
+            step.interpolate(call, b, ctx);
+        }
+        for (int i = 0; i < requiredSlots.length; i++) {
+            replace(contextTypes[requiredSlots[i]].getSimpleName().toLowerCase(), b, ctx.get(requiredSlots[i]));
+        }
+        URLBuilder bld = URL.builder(base);
+        Path p = Path.parse(b.toString());
+        Path pth = Path.merge(base.getPath() == null ? Path.parse("/") : base.getPath(), p);
+        bld.setPath(pth);
+        return bld.create();
+    }
+
+    private static void replace(String token, StringBuilder in, Object with) {
+        if (with == null) {
+            return;
+        }
+        token = "{{" + token + "}}";
+        int ix = in.indexOf(token);
+        if (ix >= 0) {
+            try {
+                String val = URLEncoder.encode(with.toString(), "UTF-8");
+                in.replace(ix, ix + token.length(), val);
+            } catch (UnsupportedEncodingException ex) {
+                Exceptions.chuck(ex);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return call.name() + " " + call.method() + " " + template;
+    }
+
+    private static final class Step<T> {
+
+        private final Class<T> type;
+        private final int slot;
+        private final Provider<?> handler;
+
+        Step(Class<T> type, int slot, Provider<?> handler) {
+            this.type = type;
+            this.slot = slot;
+            this.handler = handler;
+        }
+
+        @SuppressWarnings("unchecked")
+        void decorate(WebCall call, HttpRequestBuilder builder, CallContext ctx) throws IOException {
+            T obj = ctx.get(slot);
+            if (obj == null) {
+                return;
+            }
+            Decorator<T> decorator = (Decorator<T>) handler.get();
+            if (decorator instanceof BodyDecorator<?>) {
+                BodyDecorator<T> body = (BodyDecorator<T>) decorator;
+                ByteBuf buf = body.body(call, obj, type, ByteBufAllocator.DEFAULT);
+                ctx.body(builder, buf);
+                builder.setBody(buf, body.contentType());
+            } else {
+                decorator.decorate(call, builder, obj, type);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void interpolate(WebCall call, StringBuilder path, CallContext ctx) {
+            ((Interpolator<T>) handler.get()).interpolate(call, path, ctx.<T>get(slot), type);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.mastfrog.webapi;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.mastfrog.giulius.Dependencies;
+import com.mastfrog.url.URL;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The call plans of an injector, and the per-call state they hold - circuit
+ * breakers, concurrency limiters, hedging budgets and metrics - along with
+ * the requests being shared between coalesced invocations. Every invoker
+ * created by the same injector uses the same instance, so invocations of a
+ * call through any of them see the same upstream.
+ *
+ * @author Tim Boudreau
+ */
+@Singleton
+final class CallPlans {
+
+    private final Dependencies deps;
+    private final String basePrefix;
+    private final JsonBindings bindings;
+    private final InFlight inFlight = new InFlight();
+    private final ConnectionStats connections = new ConnectionStats();
+    private final ConcurrentHashMap<WebCall, CallPlan> plans = new ConcurrentHashMap<>();
+
+    @Inject
+    CallPlans(Dependencies deps, URL base, JsonBindings bindings) {
+        this.deps = deps;
+        this.basePrefix = PathTemplate.basePrefix(base.getPath());
+        this.bindings = bindings;
+    }
+
+    CallPlan plan(WebCall call) {
+        CallPlan result = plans.get(call);
+        if (result == null) {
+            result = new CallPlan(call, deps, basePrefix, bindings);
+            CallPlan existing = plans.putIfAbsent(call, result);
+            if (existing != null) {
+                result = existing;
+            }
+        }
+        return result;
+    }
+
+    Collection<CallPlan> all() {
+        return plans.values();
+    }
+
+    InFlight inFlight() {
+        return inFlight;
+    }
+
+    ConnectionStats connections() {
+        return connections;
+    }
+}
@@ -0,0 +1,32 @@
+package com.mastfrog.webapi;
+
+import java.io.IOException;
+
+/**
+ * Passed to <code>Callback.error()</code> (or used to complete a future
+ * exceptionally) when a <code>ConcurrencyLimiter</code> refuses to send a
+ * request, because its wait queue is full or the request waited in it too
+ * long, or when the call's <code>CircuitBreaker</code> is open. The request
+ * was never sent, so it is always safe to retry.
+ *
+ * @author Tim Boudreau
+ */
+public final class CallRejectedException extends IOException {
+
+    public enum Reason {
+        QUEUE_FULL,
+        QUEUE_TIMEOUT,
+        CIRCUIT_OPEN
+    }
+
+    private final Reason reason;
+
+    CallRejectedException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason reason() {
+        return reason;
+    }
+}
@@ -0,0 +1,57 @@
+package com.mastfrog.webapi;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Passed to <code>Callback.error()</code> (or used to complete a future
+ * exceptionally) when a request for a call takes longer than one of the
+ * timeouts set with <code>WebCallBuilder</code>, or than the
+ * <code>Deadline</code> passed with an invocation. The request is cancelled
+ * and its connection closed.
+ *
+ * @author Tim Boudreau
+ */
+public final class CallTimeoutException extends TimeoutException {
+
+    public enum Kind {
+        /**
+         * The connection was not made in time.
+         */
+        CONNECT,
+        /**
+         * The response headers did not arrive in time once connected.
+         */
+        HEADERS,
+        /**
+         * The whole response did not arrive in time.
+         */
+        TOTAL,
+        /**
+         * The invocation's deadline passed.
+         */
+        DEADLINE
+    }
+
+    private final Kind kind;
+    private final Duration timeout;
+
+    CallTimeoutException(String call, Kind kind, Duration timeout) {
+        super(call + " timed out: " + kind + " after " + timeout);
+        this.kind = kind;
+        this.timeout = timeout;
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    /**
+     * The time which was allowed.
+     *
+     * @return A duration
+     */
+    public Duration timeout() {
+        return timeout;
+    }
+}
@@ -0,0 +1,248 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.netty.http.client.HttpRequestBuilder;
+import com.mastfrog.netty.http.client.ResponseFuture;
+import com.mastfrog.netty.http.client.State;
+import com.mastfrog.util.thread.Receiver;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.Timeout;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * The timeouts for a call's requests, as configured with
+ * <code>WebCallBuilder.connectTimeout()</code>, <code>headersTimeout()</code>
+ * and <code>timeout()</code>.
+ *
+ * @author Tim Boudreau
+ */
+final class CallTimeouts {
+
+    private final Duration connect;
+    private final Duration headers;
+    private final Duration total;
+
+    CallTimeouts(Duration connect, Duration headers, Duration total) {
+        this.connect = connect;
+        this.headers = headers;
+        this.total = total;
+    }
+
+    /**
+     * Time a request, failing it and cancelling it if it takes too long. The
+     * total timeout, or the deadline if it is sooner, starts now, so it
+     * includes any time spent waiting for the concurrency limiter.
+     *
+     * @param timeouts The call's timeouts, or null
+     * @param deadline The invocation's deadline, or null
+     * @param reqb The request
+     * @param name The call's name
+     * @param timer The timer
+     * @param onTimeout Passed the exception when a timeout expires
+     * @return A watch to attach the request's future to once it is sent
+     */
+    static Watch watch(CallTimeouts timeouts, Deadline deadline, HttpRequestBuilder reqb, String name,
+            TimeoutTimer timer, Consumer<Throwable> onTimeout) {
+        Watch watch = new Watch(timeouts, name, timer, onTimeout);
+        long totalNanos = timeouts == null || timeouts.total == null ? Long.MAX_VALUE : timeouts.total.toNanos();
+        if (deadline != null && deadline.remainingNanos() < totalNanos) {
+            watch.total = watch.schedule(CallTimeoutException.Kind.DEADLINE, deadline.remainingNanos());
+        } else if (totalNanos != Long.MAX_VALUE) {
+            watch.total = watch.schedule(CallTimeoutException.Kind.TOTAL, totalNanos);
+        }
+        reqb.onEvent(watch);
+        return watch;
+    }
+
+    /**
+     * Wrap a timed call's callback so it is passed exactly one outcome. A
+     * response can finish after a timeout has expired but before it has
+     * failed the call, or the reverse; whichever claims the callback first
+     * wins, and the other is dropped.
+     *
+     * @param <T> The type
+     * @param callback The callback
+     * @return A callback
+     */
+    static <T> Callback<T> once(Callback<T> callback) {
+        return new Once<>(callback);
+    }
+
+    private static final class Once<T> extends Callback<T> {
+
+        private final Callback<T> delegate;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        Once(Callback<T> delegate) {
+            super(delegate.type());
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void responseReceived(HttpResponseStatus status, HttpHeaders headers) {
+            if (!done.get()) {
+                delegate.responseReceived(status, headers);
+            }
+        }
+
+        @Override
+        public void success(T object) {
+            if (done.compareAndSet(false, true)) {
+                delegate.success(object);
+            }
+        }
+
+        @Override
+        public void fail(HttpResponseStatus status, ByteBuf bytes) {
+            if (done.compareAndSet(false, true)) {
+                delegate.fail(status, bytes);
+            }
+        }
+
+        @Override
+        public void notModified(HttpHeaders headers) {
+            if (done.compareAndSet(false, true)) {
+                delegate.notModified(headers);
+            }
+        }
+
+        @Override
+        public void error(Throwable err) {
+            if (done.compareAndSet(false, true)) {
+                delegate.error(err);
+            }
+        }
+    }
+
+    static final class Watch extends Receiver<State<?>> {
+
+        private final CallTimeouts timeouts;
+        private final String name;
+        private final TimeoutTimer timer;
+        private final Consumer<Throwable> onTimeout;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile boolean expired;
+        private volatile ResponseFuture future;
+        private volatile Timeout total;
+        private volatile Timeout phase;
+
+        Watch(CallTimeouts timeouts, String name, TimeoutTimer timer, Consumer<Throwable> onTimeout) {
+            this.timeouts = timeouts;
+            this.name = name;
+            this.timer = timer;
+            this.onTimeout = onTimeout;
+        }
+
+        private Timeout schedule(CallTimeoutException.Kind kind, long nanos) {
+            return timer.schedule(t -> expire(kind, nanos), Math.max(0, nanos));
+        }
+
+        private void startPhase(CallTimeoutException.Kind kind, Duration timeout) {
+            cancel(phase);
+            phase = timeout == null || done.get() ? null : schedule(kind, timeout.toNanos());
+        }
+
+        private static void cancel(Timeout t) {
+            if (t != null) {
+                t.cancel();
+            }
+        }
+
+        private void expire(CallTimeoutException.Kind kind, long nanos) {
+            // Runs on the wheel's thread, so only claim the request here;
+            // failing it calls back into application code
+            if (done.compareAndSet(false, true)) {
+                expired = true;
+                timer.execute(() -> {
+                    cancel(total);
+                    cancel(phase);
+                    onTimeout.accept(new CallTimeoutException(name, kind, Duration.ofNanos(nanos)));
+                    ResponseFuture f = future;
+                    if (f != null) {
+                        f.cancel();
+                    }
+                });
+            }
+        }
+
+        private void finish() {
+            if (done.compareAndSet(false, true)) {
+                cancel(total);
+                cancel(phase);
+            }
+        }
+
+        /**
+         * Whether the request was failed by a timeout.
+         *
+         * @return true if it was
+         */
+        boolean expired() {
+            return expired;
+        }
+
+        /**
+         * Wrap the consumer of rejections by the concurrency limiter, so a
+         * request which has already timed out does not fail twice.
+         *
+         * @param onRejected The consumer
+         * @return A consumer
+         */
+        Consumer<Throwable> rejections(Consumer<Throwable> onRejected) {
+            return thrown -> {
+                if (done.compareAndSet(false, true)) {
+                    cancel(total);
+                    cancel(phase);
+                    onRejected.accept(thrown);
+                }
+            };
+        }
+
+        void attach(ResponseFuture f) {
+            if (f == null) {
+                return;
+            }
+            future = f;
+            if (expired) {
+                // Expired while waiting for the concurrency limiter
+                f.cancel();
+            }
+        }
+
+        @Override
+        public void receive(State<?> state) {
+            switch (state.stateType()) {
+                case Connecting:
+                    if (timeouts != null) {
+                        startPhase(CallTimeoutException.Kind.CONNECT, timeouts.connect);
+                    }
+                    break;
+                case Connected:
+                    if (timeouts != null) {
+                        startPhase(CallTimeoutException.Kind.HEADERS, timeouts.headers);
+                    }
+                    break;
+                case HeadersReceived:
+                    cancel(phase);
+                    if (HttpResponseStatus.NOT_MODIFIED.equals(((HttpResponse) state.get()).status())) {
+                        // The client does not report a 304 as finished
+                        finish();
+                    }
+                    break;
+                case Finished:
+                case Error:
+                case Timeout:
+                case Closed:
+                case Cancelled:
+                    finish();
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
@@ -21,13 +21,16 @@ public abstract class Callback<T> {
      * Called when the call has succeeded, with the body (or some other
      * representation) of the response translated into an object by the
      * ResponseInterpreter of the call (or the default one which handles
-     * a number of basic types and JSON).
+     * a number of basic types and JSON).  Results which are views of the
+     * response body, such as ByteBufs, are only valid until this method
+     * returns.
      * @param object 
      */
     public abstract void success(T object);
 
     /**
-     * Called if there is a response code > 399, with the raw response bytes
+     * Called if there is a response code > 399, with the raw response bytes,
+     * which are released when this method returns
      * @param status The status
      * @param bytes The bytes
      */
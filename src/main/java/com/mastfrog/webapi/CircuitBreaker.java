@@ -0,0 +1,387 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.netty.http.client.HttpRequestBuilder;
+import com.mastfrog.netty.http.client.State;
+import com.mastfrog.util.thread.Receiver;
+import io.netty.handler.codec.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops sending requests for a call whose upstream is failing, so callers
+ * fail immediately instead of each waiting for a connection or a timeout.
+ * <p/>
+ * While <i>closed</i>, the breaker records the outcome of the last
+ * <i>windowSize</i> requests; a request fails if it errors, times out or gets
+ * a 429 or 5xx response, and is slow if its response headers take longer than
+ * the slow call duration. Once the window is full, if the proportion of
+ * failed or slow requests reaches its threshold, the breaker <i>opens</i>,
+ * and invocations of the call fail with a <code>CallRejectedException</code>
+ * without sending anything. After the open duration it becomes
+ * <i>half-open</i> and lets a few trial requests through: if they all
+ * succeed quickly it closes again with an empty window, and if any fails it
+ * opens again.
+ * <p/>
+ * State is kept in atomics, so recording outcomes and checking the state
+ * never block.
+ *
+ * @author Tim Boudreau
+ */
+public final class CircuitBreaker {
+
+    private static final int RECORDED = 1;
+    private static final int FAILED = 2;
+    private static final int SLOW = 4;
+    private final String name;
+    private final int windowSize;
+    private final double failureRateThreshold;
+    private final long slowCallNanos;
+    private final double slowCallRateThreshold;
+    private final long openNanos;
+    private final int trialCalls;
+    private final LongSupplier clock;
+    private final AtomicReference<Phase> phase;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Create a breaker which ignores how long requests take.
+     *
+     * @param name The name of the call, for error messages
+     * @param windowSize The number of outcomes to consider
+     * @param failureRateThreshold The proportion of failed requests, from 0
+     * to 1, at which to open
+     * @param openDuration How long to stay open before letting trial requests
+     * through
+     * @param trialCalls The number of trial requests which must succeed to
+     * close
+     */
+    public CircuitBreaker(String name, int windowSize, double failureRateThreshold, Duration openDuration, int trialCalls) {
+        this(name, windowSize, failureRateThreshold, null, 1, openDuration, trialCalls);
+    }
+
+    /**
+     * Create a breaker.
+     *
+     * @param name The name of the call, for error messages
+     * @param windowSize The number of outcomes to consider
+     * @param failureRateThreshold The proportion of failed requests, from 0
+     * to 1, at which to open
+     * @param slowCallDuration The time to response headers beyond which a
+     * request is slow, or null
+     * @param slowCallRateThreshold The proportion of slow requests, from 0 to
+     * 1, at which to open
+     * @param openDuration How long to stay open before letting trial requests
+     * through
+     * @param trialCalls The number of trial requests which must succeed to
+     * close
+     */
+    public CircuitBreaker(String name, int windowSize, double failureRateThreshold, Duration slowCallDuration,
+            double slowCallRateThreshold, Duration openDuration, int trialCalls) {
+        this(name, windowSize, failureRateThreshold, slowCallDuration, slowCallRateThreshold,
+                openDuration, trialCalls, System::nanoTime);
+    }
+
+    CircuitBreaker(String name, int windowSize, double failureRateThreshold, Duration slowCallDuration,
+            double slowCallRateThreshold, Duration openDuration, int trialCalls, LongSupplier clock) {
+        if (windowSize <= 0 || trialCalls <= 0) {
+            throw new IllegalArgumentException("Window size and trial calls must be positive: "
+                    + windowSize + ", " + trialCalls);
+        }
+        if (failureRateThreshold <= 0 || failureRateThreshold > 1
+                || slowCallRateThreshold <= 0 || slowCallRateThreshold > 1) {
+            throw new IllegalArgumentException("Thresholds must be greater than 0 and at most 1: "
+                    + failureRateThreshold + ", " + slowCallRateThreshold);
+        }
+        if (openDuration.isNegative() || openDuration.isZero()) {
+            throw new IllegalArgumentException("Open duration must be positive: " + openDuration);
+        }
+        this.name = name;
+        this.windowSize = windowSize;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallNanos = slowCallDuration == null ? Long.MAX_VALUE : slowCallDuration.toNanos();
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.trialCalls = trialCalls;
+        this.clock = clock;
+        this.phase = new AtomicReference<>(closed());
+    }
+
+    public enum CircuitState {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Notified when a breaker changes state, on the thread whose request
+     * caused the change.
+     */
+    public interface Listener {
+
+        void stateChanged(CircuitBreaker breaker, CircuitState from, CircuitState to);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * The current state. An open breaker whose open duration has passed is
+     * reported as open until a request arrives to try it.
+     *
+     * @return The state
+     */
+    public CircuitState state() {
+        return phase.get().state;
+    }
+
+    /**
+     * The number of invocations failed because the breaker was open, or
+     * half-open with all of its trial requests in flight.
+     *
+     * @return A count
+     */
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * The proportion of the requests in the current window which failed.
+     *
+     * @return A proportion from 0 to 1, or 0 if the breaker is not closed
+     */
+    public double failureRate() {
+        Window w = phase.get().window;
+        return w == null ? 0 : w.rate(w.failures);
+    }
+
+    /**
+     * The proportion of the requests in the current window which were slow.
+     *
+     * @return A proportion from 0 to 1, or 0 if the breaker is not closed
+     */
+    public double slowCallRate() {
+        Window w = phase.get().window;
+        return w == null ? 0 : w.rate(w.slow);
+    }
+
+    private Phase closed() {
+        return new Phase(CircuitState.CLOSED, new Window(windowSize), 0, 0);
+    }
+
+    /**
+     * Ask to send a request.
+     *
+     * @return The phase the request is sent in, to report its outcome to, or
+     * null if it must not be sent
+     */
+    Phase acquire() {
+        for (;;) {
+            Phase p = phase.get();
+            switch (p.state) {
+                case CLOSED:
+                    return p;
+                case OPEN:
+                    if (clock.getAsLong() - p.since < openNanos) {
+                        rejected.increment();
+                        return null;
+                    }
+                    transition(p, new Phase(CircuitState.HALF_OPEN, null, clock.getAsLong(), trialCalls));
+                    // Go round again to take a trial permit
+                    break;
+                default:
+                    if (p.permits.getAndDecrement() > 0) {
+                        return p;
+                    }
+                    p.permits.getAndIncrement();
+                    rejected.increment();
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * Create the exception invocations which may not be sent fail with.
+     *
+     * @return An exception
+     */
+    CallRejectedException rejection() {
+        return new CallRejectedException(CallRejectedException.Reason.CIRCUIT_OPEN,
+                "Circuit breaker for " + name + " is open");
+    }
+
+    /**
+     * Give back a permit for a request which was acquired but never sent or
+     * never completed, so a half-open breaker is not left waiting for it.
+     *
+     * @param p The phase
+     */
+    void release(Phase p) {
+        if (p.state == CircuitState.HALF_OPEN) {
+            p.permits.incrementAndGet();
+        }
+    }
+
+    void record(Phase p, boolean failed, long elapsedNanos) {
+        boolean slow = elapsedNanos > slowCallNanos;
+        if (phase.get() != p) {
+            // The outcome of a request sent before the last transition
+            return;
+        }
+        if (p.state == CircuitState.CLOSED) {
+            Window w = p.window;
+            w.record(RECORDED | (failed ? FAILED : 0) | (slow ? SLOW : 0));
+            if (w.isFull() && (w.rate(w.failures) >= failureRateThreshold
+                    || w.rate(w.slow) >= slowCallRateThreshold)) {
+                transition(p, new Phase(CircuitState.OPEN, null, clock.getAsLong(), 0));
+            }
+        } else if (p.state == CircuitState.HALF_OPEN) {
+            if (failed || slow) {
+                transition(p, new Phase(CircuitState.OPEN, null, clock.getAsLong(), 0));
+            } else if (p.successes.incrementAndGet() >= trialCalls) {
+                transition(p, closed());
+            }
+        }
+    }
+
+    private void transition(Phase from, Phase to) {
+        if (phase.compareAndSet(from, to)) {
+            for (Listener l : listeners) {
+                l.stateChanged(this, from.state, to.state);
+            }
+        }
+    }
+
+    /**
+     * Record the outcome of a request when it arrives.
+     *
+     * @param reqb The request
+     * @param p The phase returned by <code>acquire()</code>
+     * @param timedOut Whether a cancelled request was cancelled for taking
+     * too long, which counts as a failure
+     */
+    void watch(HttpRequestBuilder reqb, Phase p, BooleanSupplier timedOut) {
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong start = new AtomicLong(clock.getAsLong());
+        reqb.onEvent(new Receiver<State<?>>() {
+            @Override
+            public void receive(State<?> state) {
+                switch (state.stateType()) {
+                    case Connecting:
+                        // The request may have waited for the concurrency
+                        // limiter, which is not the upstream's fault
+                        start.set(clock.getAsLong());
+                        break;
+                    case HeadersReceived:
+                        if (done.compareAndSet(false, true)) {
+                            int code = ((HttpResponse) state.get()).status().code();
+                            record(p, code == 429 || code >= 500, clock.getAsLong() - start.get());
+                        }
+                        break;
+                    case Error:
+                    case Timeout:
+                    case Closed:
+                        if (done.compareAndSet(false, true)) {
+                            record(p, true, clock.getAsLong() - start.get());
+                        }
+                        break;
+                    case Cancelled:
+                        if (done.compareAndSet(false, true)) {
+                            if (timedOut.getAsBoolean()) {
+                                record(p, true, clock.getAsLong() - start.get());
+                            } else {
+                                release(p);
+                            }
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker(" + name + " " + state() + ")";
+    }
+
+    static final class Phase {
+
+        private final CircuitState state;
+        private final Window window;
+        private final long since;
+        private final AtomicInteger permits;
+        private final AtomicInteger successes = new AtomicInteger();
+
+        Phase(CircuitState state, Window window, long since, int permits) {
+            this.state = state;
+            this.window = window;
+            this.since = since;
+            this.permits = new AtomicInteger(permits);
+        }
+    }
+
+    /**
+     * The outcomes of the most recent requests, in a ring. Concurrent
+     * recorders each claim a slot with an atomic increment; the counts are
+     * adjusted by the difference between the outcome written and the one it
+     * replaced.
+     */
+    private static final class Window {
+
+        private final AtomicIntegerArray outcomes;
+        private final AtomicLong next = new AtomicLong();
+        private final AtomicInteger recorded = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger slow = new AtomicInteger();
+
+        Window(int size) {
+            outcomes = new AtomicIntegerArray(size);
+        }
+
+        void record(int outcome) {
+            int slot = (int) (next.getAndIncrement() % outcomes.length());
+            int old = outcomes.getAndSet(slot, outcome);
+            if (old == 0) {
+                recorded.incrementAndGet();
+            }
+            adjust(failures, FAILED, old, outcome);
+            adjust(slow, SLOW, old, outcome);
+        }
+
+        private static void adjust(AtomicInteger count, int bit, int old, int outcome) {
+            int delta = ((outcome & bit) != 0 ? 1 : 0) - ((old & bit) != 0 ? 1 : 0);
+            if (delta != 0) {
+                count.addAndGet(delta);
+            }
+        }
+
+        boolean isFull() {
+            return recorded.get() >= outcomes.length();
+        }
+
+        double rate(AtomicInteger count) {
+            int n = recorded.get();
+            return n == 0 ? 0 : (double) count.get() / n;
+        }
+    }
+}
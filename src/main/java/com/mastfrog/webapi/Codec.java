@@ -0,0 +1,87 @@
+package com.mastfrog.webapi;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpHeaders;
+
+/**
+ * Decodes response bodies of one or more media types into objects. Codecs
+ * are registered on a call with <code>WebCallBuilder.codec()</code>; the
+ * default interpreter picks the first one whose media types include the
+ * response's <code>Content-Type</code> and which can produce the requested
+ * type, and the <code>Accept</code> header of the request is generated from
+ * the media types of all of them, in the order they were registered.
+ * <p/>
+ * A codec instance is created when a call is first used and is shared by
+ * every invocation of it, so implementations must be thread-safe.
+ * <p/>
+ * The content buffer is owned by the caller, as with
+ * <a href="Interpreter.html"><code>Interpreter</code></a>.
+ *
+ * @author Tim Boudreau
+ */
+public abstract class Codec {
+
+    private final String[] mediaTypes;
+
+    /**
+     * Create a codec.
+     *
+     * @param mediaTypes The media types this codec can decode, without
+     * parameters, most specific first; must not be empty
+     */
+    protected Codec(String... mediaTypes) {
+        if (mediaTypes.length == 0) {
+            throw new IllegalArgumentException("No media types");
+        }
+        this.mediaTypes = mediaTypes.clone();
+    }
+
+    /**
+     * The media types this codec can decode.
+     *
+     * @return An array of media types
+     */
+    public final String[] mediaTypes() {
+        return mediaTypes.clone();
+    }
+
+    /**
+     * Determine if this codec can decode the passed media type. The default
+     * implementation compares it case-insensitively with each of
+     * <code>mediaTypes()</code>.
+     *
+     * @param mediaType A media type, with any parameters removed
+     * @return true if it can be decoded
+     */
+    public boolean decodes(String mediaType) {
+        for (String mt : mediaTypes) {
+            if (mt.equalsIgnoreCase(mediaType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determine if this codec can produce objects of the passed type. The
+     * default implementation returns true.
+     *
+     * @param type A type
+     * @return true if it can
+     */
+    public boolean produces(Class<?> type) {
+        return true;
+    }
+
+    /**
+     * Decode a response body.
+     *
+     * @param <T> The result type
+     * @param headers The response headers
+     * @param content The response body
+     * @param as The result type
+     * @return An object
+     * @throws Exception If the content cannot be decoded
+     */
+    public abstract <T> T decode(HttpHeaders headers, ByteBuf content, Class<T> as) throws Exception;
+}
@@ -0,0 +1,84 @@
+package com.mastfrog.webapi;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+
+/**
+ * The codecs of one call, in order of preference, and the Accept header
+ * generated from them.
+ *
+ * @author Tim Boudreau
+ */
+final class Codecs {
+
+    private final Codec[] codecs;
+    private final String accept;
+
+    Codecs(Codec... codecs) {
+        if (codecs.length == 0) {
+            throw new IllegalArgumentException("No codecs");
+        }
+        this.codecs = codecs;
+        this.accept = accept(codecs);
+    }
+
+    private static String accept(Codec[] codecs) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < codecs.length; i++) {
+            // 1, 0.9, 0.8 ... 0.1, 0.1
+            int q = Math.max(1, 10 - i);
+            for (String mt : codecs[i].mediaTypes()) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(mt);
+                if (q < 10) {
+                    sb.append(";q=0.").append(q);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The value for the request's Accept header.
+     *
+     * @return A string
+     */
+    String accept() {
+        return accept;
+    }
+
+    /**
+     * Find the codec for a response. If none decodes the response's content
+     * type (or there is none), the first codec which can produce the type is
+     * used, since servers often mislabel content.
+     *
+     * @param headers The response headers
+     * @param type The type wanted
+     * @return A codec, or null if none can produce the type
+     */
+    Codec find(HttpHeaders headers, Class<?> type) {
+        String mediaType = mediaType(headers.get(HttpHeaderNames.CONTENT_TYPE));
+        Codec fallback = null;
+        for (Codec codec : codecs) {
+            if (codec.produces(type)) {
+                if (mediaType == null || codec.decodes(mediaType)) {
+                    return codec;
+                }
+                if (fallback == null) {
+                    fallback = codec;
+                }
+            }
+        }
+        return fallback;
+    }
+
+    static String mediaType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int ix = contentType.indexOf(';');
+        return (ix < 0 ? contentType : contentType.substring(0, ix)).trim();
+    }
+}
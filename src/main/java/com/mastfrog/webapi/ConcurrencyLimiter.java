@@ -0,0 +1,385 @@
+package com.mastfrog.webapi;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.mastfrog.netty.http.client.HttpRequestBuilder;
+import com.mastfrog.netty.http.client.ResponseFuture;
+import com.mastfrog.netty.http.client.State;
+import com.mastfrog.util.thread.Receiver;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.Timeout;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Limits the number of requests in flight at once. The limit is either fixed,
+ * or adjusted after each response by a <code>LimitAlgorithm</code> from the
+ * time it took to arrive and whether it indicated overload. A request which arrives
+ * when the limit has been reached waits in a bounded queue until another
+ * completes; if the queue is full, or the request waits longer than the
+ * maximum wait, it fails with a <code>CallRejectedException</code> without
+ * being sent.
+ * <p/>
+ * The limiter bound in the injector applies to every call made by the
+ * invoker, except those given a limit of their own with
+ * <code>WebCallBuilder.concurrencyLimit()</code>; by default it imposes no
+ * limit. Results served from the cache, and coalesced invocations waiting on
+ * another's request, do not count against the limit.
+ *
+ * @author Tim Boudreau
+ */
+@Singleton
+public final class ConcurrencyLimiter {
+
+    private final LimitAlgorithm algorithm;
+    private final int maxQueued;
+    private final long maxWaitNanos;
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    private volatile int limit;
+    private int inFlight;
+    private long queued;
+    private long rejected;
+    private long timedOut;
+    private long totalWaitNanos;
+    private long maxObservedWaitNanos;
+
+    /**
+     * Create a limiter which imposes no limit.
+     */
+    @Inject
+    public ConcurrencyLimiter() {
+        this(Integer.MAX_VALUE, 0, Duration.ZERO);
+    }
+
+    /**
+     * Create a limiter.
+     *
+     * @param maxInFlight The maximum number of requests in flight
+     * @param maxQueued The maximum number of requests waiting to be sent; if
+     * zero, requests over the limit fail immediately
+     * @param maxWait The longest a request may wait to be sent, which must
+     * be positive if requests may be queued
+     */
+    public ConcurrencyLimiter(int maxInFlight, int maxQueued, Duration maxWait) {
+        this(null, maxInFlight, maxQueued, maxWait);
+    }
+
+    /**
+     * Create a limiter whose limit is adjusted by an algorithm. Each limiter
+     * needs its own instance of the algorithm.
+     *
+     * @param algorithm The algorithm
+     * @param maxQueued The maximum number of requests waiting to be sent
+     * @param maxWait The longest a request may wait to be sent
+     */
+    public ConcurrencyLimiter(LimitAlgorithm algorithm, int maxQueued, Duration maxWait) {
+        this(algorithm, algorithm.initialLimit(), maxQueued, maxWait);
+    }
+
+    private ConcurrencyLimiter(LimitAlgorithm algorithm, int maxInFlight, int maxQueued, Duration maxWait) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Max in flight must be positive: " + maxInFlight);
+        }
+        if (maxQueued < 0) {
+            throw new IllegalArgumentException("Max queued may not be negative: " + maxQueued);
+        }
+        if (maxQueued > 0 && (maxWait.isNegative() || maxWait.isZero())) {
+            throw new IllegalArgumentException("Max wait must be positive: " + maxWait);
+        }
+        this.algorithm = algorithm;
+        this.limit = maxInFlight;
+        this.maxQueued = maxQueued;
+        this.maxWaitNanos = maxWait.toNanos();
+    }
+
+    boolean isUnlimited() {
+        return algorithm == null && limit == Integer.MAX_VALUE;
+    }
+
+    /**
+     * The current limit on requests in flight.
+     *
+     * @return The limit
+     */
+    public int maxInFlight() {
+        return limit;
+    }
+
+    /**
+     * The number of requests currently in flight.
+     *
+     * @return A count
+     */
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    /**
+     * The number of requests currently waiting to be sent.
+     *
+     * @return A count
+     */
+    public synchronized int queueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * The number of requests which have had to wait to be sent.
+     *
+     * @return A count
+     */
+    public synchronized long queued() {
+        return queued;
+    }
+
+    /**
+     * The number of requests rejected because the queue was full.
+     *
+     * @return A count
+     */
+    public synchronized long rejected() {
+        return rejected;
+    }
+
+    /**
+     * The number of requests rejected because they waited too long.
+     *
+     * @return A count
+     */
+    public synchronized long timedOut() {
+        return timedOut;
+    }
+
+    /**
+     * The total time requests which were eventually sent spent waiting.
+     *
+     * @return A duration
+     */
+    public synchronized Duration totalQueueWait() {
+        return Duration.ofNanos(totalWaitNanos);
+    }
+
+    /**
+     * The longest time a request which was eventually sent spent waiting.
+     *
+     * @return A duration
+     */
+    public synchronized Duration maxQueueWait() {
+        return Duration.ofNanos(maxObservedWaitNanos);
+    }
+
+    /**
+     * Send a request if the limit allows, or queue it.
+     *
+     * @param reqb The request, populated and with its receivers attached
+     * @param name The call name, for error messages
+     * @param timer The timer to time out a queued request with
+     * @param abandoned Whether the caller has given up on a queued request,
+     * in which case it is rejected rather than sent when its turn comes
+     * @param onSent Called with the future if the request is sent after
+     * waiting in the queue
+     * @param onRejected Called if the request is not sent
+     * @return The future if the request was sent immediately, otherwise null
+     */
+    ResponseFuture execute(HttpRequestBuilder reqb, String name, TimeoutTimer timer, BooleanSupplier abandoned, Consumer<ResponseFuture> onSent, Consumer<Throwable> onRejected) {
+        if (isUnlimited()) {
+            return reqb.execute();
+        }
+        Pending pending;
+        boolean full = false;
+        synchronized (this) {
+            if (inFlight < limit) {
+                inFlight++;
+                pending = null;
+            } else if (queue.size() < maxQueued) {
+                queued++;
+                pending = new Pending(reqb, name, abandoned, onSent, onRejected);
+                queue.add(pending);
+            } else {
+                rejected++;
+                pending = null;
+                full = true;
+            }
+        }
+        if (full) {
+            onRejected.accept(new CallRejectedException(CallRejectedException.Reason.QUEUE_FULL,
+                    name + ": " + limit + " requests in flight and " + maxQueued + " waiting"));
+            return null;
+        }
+        if (pending != null) {
+            pending.scheduleTimeout(timer);
+            return null;
+        }
+        return send(reqb);
+    }
+
+    private ResponseFuture send(HttpRequestBuilder reqb) {
+        AtomicBoolean released = new AtomicBoolean();
+        AtomicBoolean sampled = new AtomicBoolean(algorithm == null);
+        long start = System.nanoTime();
+        reqb.onEvent(new Receiver<State<?>>() {
+            @Override
+            public void receive(State<?> state) {
+                switch (state.stateType()) {
+                    case HeadersReceived:
+                        HttpResponseStatus status = ((HttpResponse) state.get()).status();
+                        if (sampled.compareAndSet(false, true)) {
+                            int code = status.code();
+                            sample(System.nanoTime() - start, code == 429 || code >= 500);
+                        }
+                        if (HttpResponseStatus.NOT_MODIFIED.equals(status)
+                                && released.compareAndSet(false, true)) {
+                            // The client does not report a 304 as finished
+                            release();
+                        }
+                        break;
+                    case Error:
+                    case Timeout:
+                        if (sampled.compareAndSet(false, true)) {
+                            sample(System.nanoTime() - start, true);
+                        }
+                    // fall through
+                    case Finished:
+                    case Cancelled:
+                    case Closed:
+                        if (released.compareAndSet(false, true)) {
+                            release();
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+        try {
+            return reqb.execute();
+        } catch (RuntimeException | Error e) {
+            if (released.compareAndSet(false, true)) {
+                release();
+            }
+            throw e;
+        }
+    }
+
+    private void sample(long rttNanos, boolean dropped) {
+        List<Pending> toSend;
+        synchronized (this) {
+            int updated = algorithm.update(limit, rttNanos, inFlight, dropped);
+            limit = Math.max(1, updated);
+            toSend = dequeue();
+        }
+        send(toSend);
+    }
+
+    private void release() {
+        List<Pending> toSend;
+        synchronized (this) {
+            inFlight--;
+            toSend = dequeue();
+        }
+        send(toSend);
+    }
+
+    /**
+     * Take as many waiting requests as the limit allows off the queue,
+     * counting them as in flight, along with any abandoned ahead of them.
+     */
+    private List<Pending> dequeue() {
+        List<Pending> result = null;
+        while (inFlight < limit && !queue.isEmpty()) {
+            Pending next = queue.poll();
+            if (result == null) {
+                result = new ArrayList<>(2);
+            }
+            result.add(next);
+            if (next.abandoned.getAsBoolean()) {
+                // Takes no slot; rejected once out of the lock
+                next.cancelled = true;
+                continue;
+            }
+            inFlight++;
+            long waited = System.nanoTime() - next.enqueued;
+            totalWaitNanos += waited;
+            maxObservedWaitNanos = Math.max(maxObservedWaitNanos, waited);
+        }
+        return result == null ? Collections.emptyList() : result;
+    }
+
+    private void send(List<Pending> pending) {
+        for (Pending next : pending) {
+            next.dequeued();
+            if (next.cancelled) {
+                next.onRejected.accept(new CancellationException(next.name));
+                continue;
+            }
+            try {
+                next.onSent.accept(send(next.reqb));
+            } catch (Exception | Error e) {
+                next.onRejected.accept(e);
+            }
+        }
+    }
+
+    private synchronized boolean expire(Pending pending) {
+        if (queue.remove(pending)) {
+            timedOut++;
+            return true;
+        }
+        return false;
+    }
+
+    private final class Pending implements Runnable {
+
+        private final HttpRequestBuilder reqb;
+        private final String name;
+        private final BooleanSupplier abandoned;
+        private final Consumer<ResponseFuture> onSent;
+        private final Consumer<Throwable> onRejected;
+        private final long enqueued = System.nanoTime();
+        private volatile Timeout timeout;
+        private volatile boolean dequeued;
+        private boolean cancelled;
+
+        Pending(HttpRequestBuilder reqb, String name, BooleanSupplier abandoned, Consumer<ResponseFuture> onSent, Consumer<Throwable> onRejected) {
+            this.reqb = reqb;
+            this.name = name;
+            this.abandoned = abandoned;
+            this.onSent = onSent;
+            this.onRejected = onRejected;
+        }
+
+        void scheduleTimeout(TimeoutTimer timer) {
+            // The rejection calls back into the application, so it is made
+            // from a worker rather than the timer's thread
+            Timeout t = timer.defer(this, maxWaitNanos);
+            timeout = t;
+            if (dequeued) {
+                t.cancel();
+            }
+        }
+
+        void dequeued() {
+            dequeued = true;
+            Timeout t = timeout;
+            if (t != null) {
+                t.cancel();
+            }
+        }
+
+        @Override
+        public void run() {
+            if (expire(this)) {
+                onRejected.accept(new CallRejectedException(CallRejectedException.Reason.QUEUE_TIMEOUT,
+                        name + " waited more than " + Duration.ofNanos(maxWaitNanos) + " to be sent"));
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.mastfrog.webapi;
+
+import io.netty.channel.Channel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The connections an invoker has opened. The HTTP client opens a connection
+ * for each request and closes it when the response is complete, so the
+ * number open is the number of requests on the wire, and the connect time
+ * is paid by every request; get these with <code>Invoker.connections()</code>
+ * to see how close the concurrency limit is to being reached, and what
+ * connecting costs.
+ *
+ * @author Tim Boudreau
+ */
+public final class ConnectionStats {
+
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicInteger peak = new AtomicInteger();
+    private final LongAdder opened = new LongAdder();
+    private final LatencyHistogram connectTime = new LatencyHistogram();
+
+    ConnectionStats() {
+    }
+
+    /**
+     * Note a connection which has just been made, counting it as open until
+     * its channel closes.
+     *
+     * @param channel The channel
+     * @param nanos How long connecting took
+     */
+    void connected(Channel channel, long nanos) {
+        opened.increment();
+        connectTime.record(nanos);
+        peak.accumulateAndGet(open.incrementAndGet(), Math::max);
+        channel.closeFuture().addListener(f -> open.decrementAndGet());
+    }
+
+    /**
+     * The number of connections open now.
+     *
+     * @return A count
+     */
+    public int open() {
+        return open.get();
+    }
+
+    /**
+     * The most connections which have been open at once.
+     *
+     * @return A count
+     */
+    public int peakOpen() {
+        return peak.get();
+    }
+
+    /**
+     * The number of connections which have been made.
+     *
+     * @return A count
+     */
+    public long opened() {
+        return opened.sum();
+    }
+
+    /**
+     * How long connecting has taken, including resolving the host and any
+     * TLS handshake.
+     *
+     * @return A histogram
+     */
+    public LatencyHistogram connectTime() {
+        return connectTime;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionStats(open " + open() + ", peak " + peakOpen() + ", opened " + opened()
+                + ", connect " + connectTime.snapshot() + ")";
+    }
+}
@@ -0,0 +1,83 @@
+package com.mastfrog.webapi;
+
+import java.time.Duration;
+
+/**
+ * A time by which an invocation must complete. Pass one among the arguments
+ * to an invocation to bound it more tightly than the call's own timeouts;
+ * a server handling a request with a deadline of its own can pass on what
+ * remains of it, so an upstream call does not outlive the request it serves.
+ * A deadline spans every attempt of a retried call, and one which has passed
+ * fails the invocation without sending anything.
+ * <p/>
+ * Deadlines are also available for injection into decorators, which may
+ * send the remaining time to the upstream in a header.
+ *
+ * @author Tim Boudreau
+ */
+public final class Deadline {
+
+    private final long nanoTime;
+
+    private Deadline(long nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Create a deadline the passed time from now.
+     *
+     * @param timeout The time
+     * @return A deadline
+     */
+    public static Deadline after(Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    /**
+     * The time remaining.
+     *
+     * @return A duration, zero if the deadline has passed
+     */
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, remainingNanos()));
+    }
+
+    long remainingNanos() {
+        return nanoTime - System.nanoTime();
+    }
+
+    public boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+
+    /**
+     * Return whichever of this deadline and another is sooner.
+     *
+     * @param other Another deadline, or null
+     * @return A deadline
+     */
+    public Deadline min(Deadline other) {
+        return other == null || nanoTime - other.nanoTime <= 0 ? this : other;
+    }
+
+    /**
+     * Find the deadline among the arguments to an invocation.
+     *
+     * @param args The arguments
+     * @return The soonest deadline, or null
+     */
+    static Deadline in(Object[] args) {
+        Deadline result = null;
+        for (Object o : args) {
+            if (o instanceof Deadline) {
+                result = ((Deadline) o).min(result);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline(" + remaining() + " remaining)";
+    }
+}
@@ -1,43 +1,86 @@
 package com.mastfrog.webapi;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
+ * Registry of decorators by type
  *
  * @author Tim Boudreau
  */
 final class Decorators {
 
-    private final List<Entry<?, ?>> all = new LinkedList<>();
+    private final List<Class<?>> parameterTypes;
+    private final List<Class<?>> decoratorTypes;
+    private final List<Decorator<?>> instances;
+    private final TypeIndex index;
+
+    Decorators() {
+        parameterTypes = new ArrayList<>(3);
+        decoratorTypes = new ArrayList<>(3);
+        instances = new ArrayList<>(3);
+        index = null;
+    }
+
+    private Decorators(Decorators orig) {
+        parameterTypes = new ArrayList<>(orig.parameterTypes);
+        decoratorTypes = new ArrayList<>(orig.decoratorTypes);
+        instances = new ArrayList<>(orig.instances);
+        index = new TypeIndex(parameterTypes.toArray(new Class<?>[parameterTypes.size()]),
+                decoratorTypes.toArray(new Class<?>[decoratorTypes.size()]), true);
+    }
+
+    /**
+     * Create an immutable copy of this registry with an index for fast
+     * lookups.
+     *
+     * @return A frozen copy
+     */
+    Decorators freeze() {
+        return new Decorators(this);
+    }
 
     @SuppressWarnings("unchecked")
     <T, R extends Decorator<T>> Class<R> get(Class<T> type) {
-        for (Entry<?,?> e : all) {
-            if (type == e.parameterType) {
-                return (Class<R>) e.decoratorType;
+        if (index == null) {
+            // Lookups are made per call; only a frozen copy has an index
+            throw new IllegalStateException("Not frozen");
+        }
+        return (Class<R>) index.get(type);
+    }
+
+    /**
+     * Get the decorator instance registered for a type, if one was
+     * registered as an instance rather than a type.
+     *
+     * @param type The parameter type
+     * @return A decorator or null
+     */
+    Decorator<?> instance(Class<?> type) {
+        // Resolved the same way as the type, but only when a call is planned
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            if (parameterTypes.get(i) == type) {
+                return instances.get(i);
             }
         }
-        for (Entry<?,?> e : all) {
-            if (type.isAssignableFrom(e.parameterType)) {
-                return (Class<R>) e.decoratorType;
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            if (type.isAssignableFrom(parameterTypes.get(i))) {
+                return instances.get(i);
             }
         }
         return null;
     }
 
     public <T, R extends Decorator<T>> void add(Class<T> type, Class<R> dec) {
-        all.add(new Entry(type, dec));
+        add(type, dec, null);
     }
 
-    private static final class Entry<T, R extends Decorator<T>> {
-
-        private final Class<T> parameterType;
-        private final Class<R> decoratorType;
-
-        public Entry(Class<T> parameterType, Class<R> decoratorType) {
-            this.parameterType = parameterType;
-            this.decoratorType = decoratorType;
+    <T> void add(Class<T> type, Class<?> decType, Decorator<? super T> dec) {
+        if (index != null) {
+            throw new IllegalStateException("Frozen");
         }
+        parameterTypes.add(type);
+        decoratorTypes.add(decType);
+        instances.add(dec);
     }
 }
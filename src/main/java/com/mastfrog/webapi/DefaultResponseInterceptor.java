@@ -1,67 +1,120 @@
 package com.mastfrog.webapi;
 
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
+import com.mastfrog.webapi.builtin.JsonCodec;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
 import io.netty.util.CharsetUtil;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import javax.imageio.ImageIO;
 
 /**
+ * Handles strings, bytes and images, which are looked up by result type
+ * regardless of the content type, and passes anything else to the call's
+ * codecs (JSON if it has none). Nothing here moves the reader index of the
+ * content, and the content is only copied where the result type requires
+ * it: strings and CharSequences are decoded straight out of the buffer, and
+ * TextView, ByteBuffer, ByteBuf and InputStream results are views of the
+ * content - see <code>Interpreter</code> for how long those remain valid.
  *
  * @author Tim Boudreau
  */
 class DefaultResponseInterceptor extends Interpreter {
 
-    private final ObjectMapper mapper;
+    private final Codecs codecs;
 
     @Inject
-    DefaultResponseInterceptor(ObjectMapper mapper) {
-        this.mapper = mapper;
+    DefaultResponseInterceptor(JsonBindings bindings) {
+        this(new Codecs(new JsonCodec(bindings)));
     }
-    
-    private byte[] toBytes(ByteBuf bb) {
-        bb.resetReaderIndex();
-        byte[] b = new byte[bb.readableBytes()];
-        bb.readBytes(b);
-        bb.resetReaderIndex();
-        return b;
+
+    DefaultResponseInterceptor(Codecs codecs) {
+        this.codecs = codecs;
+    }
+
+    private static Charset charset(HttpHeaders headers) {
+        String contentType = headers.get(HttpHeaderNames.CONTENT_TYPE);
+        return contentType == null ? CharsetUtil.UTF_8
+                : HttpUtil.getCharset(contentType, CharsetUtil.UTF_8);
+    }
+
+    private static String decode(ByteBuf bb, Charset charset) {
+        return bb.toString(bb.readerIndex(), bb.readableBytes(), charset);
     }
-    
+
     @Override
     public <T> T interpret(HttpResponseStatus status, HttpHeaders headers, ByteBuf contents, Class<T> as) throws Exception {
-        if (as == Void.class) {
-            return null;
-        }
-        contents.resetReaderIndex();
-        if (as == String.class || as == CharSequence.class) {
-            return as.cast(new String(toBytes(contents), CharsetUtil.UTF_8));
-        } else if (byte[].class == as) {
-            return as.cast(toBytes(contents));
-        } else if (ByteBuf.class == as) {
-            return as.cast(contents);
-        } else if (as == InputStream.class) {
-            return as.cast(new ByteBufInputStream(contents));
-        } else if (as == Image.class || as == BufferedImage.class) {
-            try (InputStream in = new ByteBufInputStream(contents)) {
-                return as.cast(ImageIO.read(in));
-            }
+        RawType raw = RAW_TYPES.get(as);
+        if (raw != null) {
+            return as.cast(raw.decode(headers, contents));
         }
-        try {
-            ByteBufInputStream in = new ByteBufInputStream(contents);
-            return mapper.readValue((InputStream)in, as);
-        } catch (JsonMappingException | JsonParseException ex) {
-            contents.resetReaderIndex();
-            String s = new String(toBytes(contents), CharsetUtil.UTF_8);
-            throw new IOException("Bad JSON trying to deserialize " + as + " '" +s + "'", ex);
+        Codec codec = codecs.find(headers, as);
+        if (codec == null) {
+            throw new IOException("No codec for " + as.getName() + " from "
+                    + headers.get(HttpHeaderNames.CONTENT_TYPE));
         }
+        return codec.decode(headers, contents, as);
+    }
+
+    /**
+     * Whether results of a type are views of the content, which are only
+     * valid while the client holds the response.
+     *
+     * @param type A result type
+     * @return true if it is ByteBuf, ByteBuffer, InputStream or TextView
+     */
+    static boolean isView(Class<?> type) {
+        return type == ByteBuf.class || type == ByteBuffer.class
+                || type == InputStream.class || type == TextView.class;
+    }
+
+    /**
+     * Produces a result type which is a representation of the bytes,
+     * regardless of the content type.
+     */
+    private interface RawType {
+
+        Object decode(HttpHeaders headers, ByteBuf contents) throws Exception;
+    }
+
+    private static final Map<Class<?>, RawType> RAW_TYPES = new IdentityHashMap<>();
+
+    static {
+        RAW_TYPES.put(Void.class, (headers, contents) -> null);
+        RAW_TYPES.put(String.class, (headers, contents) -> decode(contents, charset(headers)));
+        RAW_TYPES.put(CharSequence.class, (headers, contents) -> decode(contents, charset(headers)));
+        RAW_TYPES.put(TextView.class, (headers, contents) -> {
+            // Bytes which are all 7-bit are the same characters in any
+            // charset we are likely to see, so they can be used in place
+            if (ByteBufUtil.isText(contents, CharsetUtil.US_ASCII)) {
+                return new TextView(contents, contents.readerIndex(), contents.readableBytes());
+            }
+            return new TextView(decode(contents, charset(headers)));
+        });
+        RAW_TYPES.put(byte[].class, (headers, contents) -> ByteBufUtil.getBytes(contents));
+        // A single NIO view if the content is one contiguous region,
+        // otherwise nioBuffer() has to merge the components
+        RAW_TYPES.put(ByteBuffer.class, (headers, contents) -> contents.nioBuffer().asReadOnlyBuffer());
+        RAW_TYPES.put(ByteBuf.class, (headers, contents) -> contents);
+        RAW_TYPES.put(InputStream.class, (headers, contents) -> new ByteBufInputStream(contents.duplicate()));
+        RawType image = (headers, contents) -> {
+            try (InputStream in = new ByteBufInputStream(contents.duplicate())) {
+                return ImageIO.read(in);
+            }
+        };
+        RAW_TYPES.put(Image.class, image);
+        RAW_TYPES.put(BufferedImage.class, image);
     }
 }
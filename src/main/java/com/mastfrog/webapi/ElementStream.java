@@ -0,0 +1,300 @@
+package com.mastfrog.webapi;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.mastfrog.netty.http.client.HttpRequestBuilder;
+import com.mastfrog.netty.http.client.State;
+import com.mastfrog.util.thread.Receiver;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * Decodes a top-level JSON array one element at a time and hands the elements
+ * to a StreamingCallback as demand allows, turning off auto-read on the
+ * channel while there is none. All state is confined to the channel's event
+ * loop; demand, rejections and timeouts signalled from other threads are
+ * handed off to it.
+ *
+ * @author Tim Boudreau
+ */
+final class ElementStream<T> extends StreamingInterpreter {
+
+    private final JsonBindings bindings;
+    private final ObjectReader reader;
+    private final StreamingCallback<T> callback;
+    private final ArrayDeque<T> pending = new ArrayDeque<>();
+    private final DemandImpl demand = new DemandImpl();
+    private final Completion completion = new Completion();
+    private volatile Channel channel;
+    private long requested;
+    private boolean draining;
+    private boolean paused;
+    private boolean completePending;
+    private boolean done;
+
+    ElementStream(JsonBindings bindings, StreamingCallback<T> callback) {
+        this.bindings = bindings;
+        this.reader = bindings.reader(callback.type());
+        this.callback = callback;
+    }
+
+    HttpRequestBuilder attach(HttpRequestBuilder reqb) {
+        reqb.on(State.Connected.class, new Receiver<Channel>() {
+            @Override
+            public void receive(Channel object) {
+                channel = object;
+            }
+        });
+        return reqb;
+    }
+
+    /**
+     * The callback the request should report to; it forwards to the
+     * StreamingCallback.
+     *
+     * @return A callback
+     */
+    Callback<Void> completion() {
+        return completion;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R> ContentConsumer<R> start(HttpResponseStatus status, HttpHeaders headers, Class<R> as) throws Exception {
+        ArrayConsumer result = new ArrayConsumer();
+        callback.onStart(demand);
+        return (ContentConsumer<R>) result;
+    }
+
+    private void onEventLoop(Runnable r) {
+        Channel ch = channel;
+        if (ch == null || ch.eventLoop().inEventLoop()) {
+            r.run();
+        } else {
+            ch.eventLoop().execute(r);
+        }
+    }
+
+    private void enqueue(T element) {
+        if (!done) {
+            pending.add(element);
+            drain();
+        }
+    }
+
+    private void drain() {
+        if (draining || done) {
+            return;
+        }
+        draining = true;
+        try {
+            while (requested > 0 && !done && !pending.isEmpty()) {
+                if (requested != Long.MAX_VALUE) {
+                    requested--;
+                }
+                try {
+                    callback.onElement(pending.poll());
+                } catch (Exception | Error e) {
+                    failed(e);
+                    closeChannel();
+                    return;
+                }
+            }
+        } finally {
+            draining = false;
+        }
+        if (done) {
+            return;
+        }
+        if (completePending && pending.isEmpty()) {
+            done = true;
+            callback.onComplete();
+        } else if (requested == 0) {
+            pause();
+        } else {
+            resume();
+        }
+    }
+
+    private void pause() {
+        Channel ch = channel;
+        if (!paused && ch != null) {
+            paused = true;
+            ch.config().setAutoRead(false);
+        }
+    }
+
+    private void resume() {
+        Channel ch = channel;
+        if (paused && ch != null) {
+            paused = false;
+            ch.config().setAutoRead(true);
+            ch.read();
+        }
+    }
+
+    private void closeChannel() {
+        Channel ch = channel;
+        if (ch != null) {
+            ch.close();
+        }
+    }
+
+    private void failed(Throwable err) {
+        if (!done) {
+            done = true;
+            pending.clear();
+            callback.error(err);
+        }
+    }
+
+    private final class DemandImpl extends StreamingCallback.Demand {
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                throw new IllegalArgumentException("Demand must be positive: " + n);
+            }
+            onEventLoop(() -> {
+                requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+                drain();
+            });
+        }
+
+        @Override
+        public void cancel() {
+            onEventLoop(() -> {
+                if (!done) {
+                    done = true;
+                    pending.clear();
+                    closeChannel();
+                }
+            });
+        }
+    }
+
+    private final class Completion extends Callback<Void> {
+
+        Completion() {
+            super(Void.class);
+        }
+
+        @Override
+        public void success(Void object) {
+            completePending = true;
+            drain();
+        }
+
+        @Override
+        public void fail(HttpResponseStatus status, ByteBuf bytes) {
+            callback.fail(status, bytes);
+        }
+
+        @Override
+        public void error(Throwable err) {
+            // Rejections and timeouts arrive on other threads
+            onEventLoop(() -> failed(err));
+        }
+
+        @Override
+        public void responseReceived(HttpResponseStatus status, HttpHeaders headers) {
+            callback.responseReceived(status, headers);
+        }
+
+        @Override
+        public void notModified(HttpHeaders headers) {
+            // A StreamingCallback has no other way to hear of a 304
+            callback.fail(HttpResponseStatus.NOT_MODIFIED, Unpooled.EMPTY_BUFFER);
+        }
+    }
+
+    private final class ArrayConsumer extends ContentConsumer<Void> {
+
+        private final JsonParser parser;
+        private TokenBuffer element;
+        private boolean started;
+        private int depth;
+
+        ArrayConsumer() throws IOException {
+            parser = bindings.mapper().getFactory().createNonBlockingByteBufferParser();
+        }
+
+        @Override
+        public void chunk(ByteBuf chunk) throws IOException {
+            ((ByteBufferFeeder) parser.getNonBlockingInputFeeder()).feedInput(chunk.nioBuffer());
+            // The feeder holds onto the buffer, so everything in it must be
+            // consumed before the chunk is released
+            drainTokens();
+        }
+
+        private void drainTokens() throws IOException {
+            JsonToken tok;
+            while (!done && (tok = parser.nextToken()) != null && tok != JsonToken.NOT_AVAILABLE) {
+                token(tok);
+            }
+        }
+
+        private void token(JsonToken tok) throws IOException {
+            if (!started) {
+                if (tok != JsonToken.START_ARRAY) {
+                    throw new IOException("Response is not a JSON array: " + tok);
+                }
+                started = true;
+                depth = 1;
+                return;
+            }
+            if (depth == 0) {
+                throw new IOException("Content after end of JSON array: " + tok);
+            }
+            if (depth == 1 && tok == JsonToken.END_ARRAY) {
+                depth = 0;
+                return;
+            }
+            if (element == null) {
+                element = new TokenBuffer(bindings.mapper(), false);
+            }
+            element.copyCurrentEvent(parser);
+            if (tok.isStructStart()) {
+                depth++;
+            } else if (tok.isStructEnd()) {
+                depth--;
+            }
+            if (depth == 1) {
+                T obj;
+                try (JsonParser p = element.asParser(bindings.mapper())) {
+                    obj = reader.readValue(p);
+                }
+                element = null;
+                enqueue(obj);
+            }
+        }
+
+        @Override
+        public Void finish() throws IOException {
+            parser.getNonBlockingInputFeeder().endOfInput();
+            drainTokens();
+            parser.close();
+            if (started && depth != 0 && !done) {
+                throw new IOException("Response ended inside a JSON array");
+            }
+            return null;
+        }
+
+        @Override
+        public void abort(Throwable cause) {
+            try {
+                parser.close();
+            } catch (IOException ex) {
+                cause.addSuppressed(ex);
+            }
+        }
+    }
+}
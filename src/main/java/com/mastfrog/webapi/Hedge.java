@@ -0,0 +1,266 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.netty.http.client.HttpRequestBuilder;
+import com.mastfrog.netty.http.client.ResponseFuture;
+import com.mastfrog.netty.http.client.State;
+import com.mastfrog.util.thread.Receiver;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.Timeout;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * One invocation of a call which may be hedged. The first request is sent at
+ * once; if it has not received response headers when the policy's delay
+ * elapses on the timeout timer, and the policy's budget allows, an identical
+ * second request is sent from a worker thread. Whichever request receives
+ * its response headers first wins, and the other is cancelled. Each request
+ * reports to its own callback or sink, which passes on only the winner's
+ * outcome, so the caller's sees exactly one. A request which fails before
+ * either has won is ignored while the other is still outstanding.
+ *
+ * @author Tim Boudreau
+ */
+final class Hedge {
+
+    private static final int NONE = -1;
+    private final HedgePolicy policy;
+    private final TimeoutTimer timer;
+    private final AtomicInteger winner = new AtomicInteger(NONE);
+    private final AtomicInteger live = new AtomicInteger(1);
+    private final AtomicReferenceArray<ResponseFuture> futures = new AtomicReferenceArray<>(2);
+    private volatile Timeout delayed;
+
+    Hedge(HedgePolicy policy, TimeoutTimer timer) {
+        this.policy = policy;
+        this.timer = timer;
+        policy.invoked();
+    }
+
+    /**
+     * Send the first request for a callback, and schedule the second.
+     *
+     * @param target The caller's callback
+     * @param attempt Sends a request reporting to the callback passed to it
+     * @return The first request's future, if the invoker returned one
+     * @throws Exception If sending fails
+     */
+    <T> ResponseFuture call(Callback<T> target, Attempt<Callback<T>> attempt) throws Exception {
+        return start(new HedgeCallback<>(target, 0), new HedgeCallback<>(target, 1), attempt, target::error);
+    }
+
+    /**
+     * Send the first request for a sink, and schedule the second.
+     *
+     * @param target The caller's sink
+     * @param attempt Sends a request reporting to the sink passed to it
+     * @return The first request's future, if the invoker returned one
+     * @throws Exception If sending fails
+     */
+    <T> ResponseFuture send(ResponseSink<T> target, Attempt<ResponseSink<T>> attempt) throws Exception {
+        return start(new HedgeSink<>(target, 0), new HedgeSink<>(target, 1), attempt, target::completeExceptionally);
+    }
+
+    private <C> ResponseFuture start(C first, C second, Attempt<C> attempt, Consumer<Throwable> onError) throws Exception {
+        ResponseFuture result = attempt.send(first, reqb -> watch(reqb, 0));
+        sent(0, result);
+        if (winner.get() == NONE) {
+            delayed = timer.defer(() -> {
+                if (winner.get() != NONE || !policy.permit()) {
+                    return;
+                }
+                live.incrementAndGet();
+                if (winner.get() != NONE) {
+                    // The first request failed while the budget was checked
+                    live.decrementAndGet();
+                    return;
+                }
+                try {
+                    sent(1, attempt.send(second, reqb -> watch(reqb, 1)));
+                } catch (Exception | Error e) {
+                    if (failed(1)) {
+                        onError.accept(e);
+                    }
+                }
+            }, policy.delayNanos());
+        }
+        return result;
+    }
+
+    private void sent(int attempt, ResponseFuture future) {
+        if (future == null) {
+            // Queued by the limiter, or answered from the cache
+            return;
+        }
+        futures.set(attempt, future);
+        int w = winner.get();
+        if (w != NONE && w != attempt) {
+            future.cancel();
+        }
+    }
+
+    /**
+     * Make a request the winner, if there is none yet.
+     *
+     * @return true if the request is the winner
+     */
+    private boolean claim(int attempt) {
+        if (winner.compareAndSet(NONE, attempt)) {
+            Timeout t = delayed;
+            if (t != null) {
+                t.cancel();
+            }
+            ResponseFuture loser = futures.get(1 - attempt);
+            if (loser != null) {
+                loser.cancel();
+            }
+            return true;
+        }
+        return winner.get() == attempt;
+    }
+
+    /**
+     * Note that a request failed before any won, making it the winner if it
+     * was the last one outstanding, so its failure is passed on.
+     *
+     * @return true if the failure should be passed on
+     */
+    private boolean failed(int attempt) {
+        if (winner.get() == attempt) {
+            return true;
+        }
+        return winner.get() == NONE && live.decrementAndGet() == 0 && claim(attempt);
+    }
+
+    private void watch(HttpRequestBuilder reqb, int attempt) {
+        AtomicLong start = new AtomicLong(System.nanoTime());
+        reqb.onEvent(new Receiver<State<?>>() {
+            @Override
+            public void receive(State<?> state) {
+                switch (state.stateType()) {
+                    case Connecting:
+                        start.set(System.nanoTime());
+                        break;
+                    case HeadersReceived:
+                        policy.record(System.nanoTime() - start.get());
+                        claim(attempt);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+    }
+
+    interface Attempt<C> {
+
+        ResponseFuture send(C target, Consumer<HttpRequestBuilder> prepare) throws Exception;
+    }
+
+    private final class HedgeCallback<T> extends Callback<T> {
+
+        private final Callback<T> target;
+        private final int attempt;
+        private final AtomicBoolean failed = new AtomicBoolean();
+
+        HedgeCallback(Callback<T> target, int attempt) {
+            super(target.type());
+            this.target = target;
+            this.attempt = attempt;
+        }
+
+        @Override
+        public void responseReceived(HttpResponseStatus status, HttpHeaders headers) {
+            if (claim(attempt)) {
+                target.responseReceived(status, headers);
+            }
+        }
+
+        @Override
+        public void success(T object) {
+            // A cached result arrives without response headers
+            if (claim(attempt)) {
+                target.success(object);
+            }
+        }
+
+        @Override
+        public void fail(HttpResponseStatus status, ByteBuf bytes) {
+            if (claim(attempt)) {
+                target.fail(status, bytes);
+            }
+        }
+
+        @Override
+        public void error(Throwable err) {
+            if (failed.compareAndSet(false, true) && failed(attempt)) {
+                target.error(err);
+            }
+        }
+
+        @Override
+        public void notModified(HttpHeaders headers) {
+            if (claim(attempt)) {
+                target.notModified(headers);
+            }
+        }
+    }
+
+    private final class HedgeSink<T> implements ResponseSink<T> {
+
+        private final ResponseSink<T> target;
+        private final int attempt;
+        private final AtomicBoolean failed = new AtomicBoolean();
+
+        HedgeSink(ResponseSink<T> target, int attempt) {
+            this.target = target;
+            this.attempt = attempt;
+        }
+
+        @Override
+        public Class<T> type() {
+            return target.type();
+        }
+
+        @Override
+        public boolean complete(T value) {
+            return claim(attempt) && target.complete(value);
+        }
+
+        @Override
+        public boolean completeExceptionally(Throwable thrown) {
+            return failed.compareAndSet(false, true) && failed(attempt)
+                    && target.completeExceptionally(thrown);
+        }
+
+        @Override
+        public boolean isDone() {
+            int w = winner.get();
+            return failed.get() || (w != NONE && w != attempt) || target.isDone();
+        }
+
+        @Override
+        public void attach(ResponseFuture response) {
+            sent(attempt, response);
+            int w = winner.get();
+            if (w == NONE || w == attempt) {
+                // So cancelling the caller's future cancels this request
+                target.attach(response);
+            }
+        }
+
+        @Override
+        public void cancelled() {
+            // Unless cancelled for losing, the caller cancelled, and the
+            // other request should go too
+            if (claim(attempt)) {
+                target.cancelled();
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.mastfrog.webapi;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * When to send a second request for a call whose first is slow to respond,
+ * and how many such requests to allow, as configured with
+ * <code>WebCallBuilder.hedge()</code>. One instance is shared by every
+ * invocation of a call made through one invoker.
+ * <p/>
+ * The delay is either fixed, or a percentile of the time to response headers
+ * of recent requests, recomputed every few responses from a ring of samples.
+ *
+ * @author Tim Boudreau
+ */
+final class HedgePolicy {
+
+    private static final int SAMPLES = 256;
+    private static final int RECOMPUTE_EVERY = 32;
+    private static final double MAX_TOKENS = 10;
+    private final double percentile;
+    private final long ratio;
+    private final AtomicLongArray samples;
+    private final AtomicLong recorded = new AtomicLong();
+    private final Tokens tokens = new Tokens(MAX_TOKENS, 1);
+    private volatile long delayNanos;
+
+    HedgePolicy(double percentile, long initialDelayNanos, double maxExtraLoad) {
+        this.percentile = percentile;
+        this.delayNanos = initialDelayNanos;
+        this.ratio = Tokens.units(maxExtraLoad);
+        this.samples = percentile > 0 ? new AtomicLongArray(SAMPLES) : null;
+    }
+
+    long delayNanos() {
+        return delayNanos;
+    }
+
+    /**
+     * Record how long a request took to get its response headers.
+     *
+     * @param nanos The time
+     */
+    void record(long nanos) {
+        if (samples == null) {
+            return;
+        }
+        long n = recorded.getAndIncrement();
+        samples.set((int) (n % SAMPLES), nanos);
+        if ((n + 1) % RECOMPUTE_EVERY == 0) {
+            int count = (int) Math.min(n + 1, SAMPLES);
+            long[] sorted = new long[count];
+            for (int i = 0; i < count; i++) {
+                sorted[i] = samples.get(i);
+            }
+            Arrays.sort(sorted);
+            delayNanos = sorted[Math.min(count - 1, (int) (count * percentile))];
+        }
+    }
+
+    /**
+     * Called once for each invocation which may be hedged.
+     */
+    void invoked() {
+        tokens.deposit(ratio);
+    }
+
+    /**
+     * Take a token for a hedged request, if one is available.
+     *
+     * @return true if the request may be sent
+     */
+    boolean permit() {
+        return tokens.withdraw();
+    }
+}
@@ -0,0 +1,224 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.netty.http.client.ResponseFuture;
+import com.mastfrog.netty.http.client.State;
+import com.mastfrog.util.thread.Receiver;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The requests of coalesced calls which have been sent and not yet
+ * completed, keyed by method, URL, Accept header, credentials and result
+ * type. A call whose key matches one in flight waits for its result instead
+ * of making its own request.
+ *
+ * @author Tim Boudreau
+ */
+final class InFlight {
+
+    private final ConcurrentHashMap<String, Flight<?>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * Join the flight for a key, creating it if there is none. The caller
+     * must then call <code>lead()</code>, and make the request if it returns
+     * true.
+     *
+     * @param <T> The result type
+     * @param key The key, which must include the result type
+     * @param name The name of the call, for error messages
+     * @param callback The callback to pass the outcome to
+     * @return A flight
+     */
+    @SuppressWarnings("unchecked")
+    <T> Flight<T> join(String key, String name, Callback<T> callback) {
+        for (;;) {
+            Flight<?> existing = flights.get(key);
+            if (existing == null) {
+                Flight<T> created = new Flight<>(key, name, callback.type());
+                existing = flights.putIfAbsent(key, created);
+                if (existing == null) {
+                    existing = created;
+                }
+            }
+            if (((Flight<T>) existing).add(callback)) {
+                return (Flight<T>) existing;
+            }
+            // Completed between lookup and joining
+            flights.remove(key, existing);
+        }
+    }
+
+    /**
+     * One request whose outcome is passed to every callback that joined it.
+     */
+    final class Flight<T> extends Callback<T> {
+
+        private final String key;
+        private final String name;
+        private final AtomicBoolean led = new AtomicBoolean();
+        private final List<Callback<T>> waiters = new ArrayList<>(4);
+        private volatile ResponseFuture response;
+        private HttpResponseStatus status;
+        private HttpHeaders headers;
+        private boolean done;
+
+        Flight(String key, String name, Class<T> type) {
+            super(type);
+            this.key = key;
+            this.name = name;
+        }
+
+        /**
+         * Claim the job of making the request.
+         *
+         * @return true if the caller should make it
+         */
+        boolean lead() {
+            return led.compareAndSet(false, true);
+        }
+
+        void attach(ResponseFuture response) {
+            if (response != null) {
+                this.response = response;
+            }
+        }
+
+        /**
+         * The shared request; null until the leader has sent it, or if the
+         * result was served from the cache.
+         *
+         * @return A future or null
+         */
+        ResponseFuture response() {
+            return response;
+        }
+
+        private boolean add(Callback<T> callback) {
+            HttpResponseStatus st;
+            HttpHeaders hdrs;
+            synchronized (this) {
+                if (done) {
+                    return false;
+                }
+                waiters.add(callback);
+                st = status;
+                hdrs = headers;
+            }
+            // Joined after the headers arrived
+            if (hdrs != null) {
+                callback.responseReceived(st, hdrs);
+            }
+            return true;
+        }
+
+        private List<Callback<T>> finish() {
+            List<Callback<T>> result;
+            synchronized (this) {
+                if (done) {
+                    return null;
+                }
+                done = true;
+                result = new ArrayList<>(waiters);
+            }
+            // Calls made from here on need a new request
+            flights.remove(key, this);
+            return result;
+        }
+
+        @Override
+        public void responseReceived(HttpResponseStatus status, HttpHeaders headers) {
+            List<Callback<T>> all;
+            synchronized (this) {
+                this.status = status;
+                this.headers = headers;
+                all = new ArrayList<>(waiters);
+            }
+            for (Callback<T> cb : all) {
+                cb.responseReceived(status, headers);
+            }
+        }
+
+        @Override
+        public void notModified(HttpHeaders headers) {
+            List<Callback<T>> all = finish();
+            if (all != null) {
+                for (Callback<T> cb : all) {
+                    cb.notModified(headers);
+                }
+            }
+        }
+
+        @Override
+        public void success(T object) {
+            List<Callback<T>> all = finish();
+            if (all != null) {
+                for (Callback<T> cb : all) {
+                    try {
+                        cb.success(object);
+                    } catch (Exception e) {
+                        cb.error(e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void fail(HttpResponseStatus status, ByteBuf bytes) {
+            List<Callback<T>> all = finish();
+            if (all != null) {
+                for (Callback<T> cb : all) {
+                    // Each gets its own indices over the same content
+                    cb.fail(status, bytes.duplicate());
+                }
+            }
+        }
+
+        @Override
+        public void error(Throwable err) {
+            List<Callback<T>> all = finish();
+            if (all != null) {
+                for (Callback<T> cb : all) {
+                    cb.error(err);
+                }
+            }
+        }
+
+        /**
+         * A receiver which fails the flight if the request ends without a
+         * response.
+         *
+         * @return A receiver
+         */
+        Receiver<State<?>> events() {
+            return new Receiver<State<?>>() {
+                @Override
+                public void receive(State<?> state) {
+                    switch (state.stateType()) {
+                        case Error:
+                            error((Throwable) state.get());
+                            break;
+                        case Timeout:
+                            error(new TimeoutException(name + " timed out after " + state.get()));
+                            break;
+                        case Cancelled:
+                            error(new CancellationException(name));
+                            break;
+                        case Closed:
+                            error(new IOException("Connection closed before " + name + " completed"));
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            };
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package com.mastfrog.webapi;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -10,30 +10,47 @@ import java.util.List;
  */
 final class Interpolators {
 
-    private final List<Entry<?, ?>> all = new LinkedList<>();
+    private final List<Class<?>> parameterTypes;
+    private final List<Class<?>> interpolatorTypes;
+    private final TypeIndex index;
 
-    @SuppressWarnings("unchecked")
-    <T, R extends Interpolator<T>> Class<R> get(Class<T> type) {
-        for (Entry<?, ?> e : all) {
-            if (type == e.parameterType) {
-                return (Class<R>) e.interpolatorType;
-            }
-        }
-        return null;
+    Interpolators() {
+        parameterTypes = new ArrayList<>(3);
+        interpolatorTypes = new ArrayList<>(3);
+        index = null;
     }
 
-    public <T, R extends Interpolator<T>> void add(Class<T> type, Class<R> dec) {
-        all.add(new Entry(type, dec));
+    private Interpolators(Interpolators orig) {
+        parameterTypes = new ArrayList<>(orig.parameterTypes);
+        interpolatorTypes = new ArrayList<>(orig.interpolatorTypes);
+        index = new TypeIndex(parameterTypes.toArray(new Class<?>[parameterTypes.size()]),
+                interpolatorTypes.toArray(new Class<?>[interpolatorTypes.size()]), false);
     }
 
-    private static final class Entry<T, R extends Interpolator<T>> {
+    /**
+     * Create an immutable copy of this registry with an index for fast
+     * lookups.
+     *
+     * @return A frozen copy
+     */
+    Interpolators freeze() {
+        return new Interpolators(this);
+    }
 
-        private final Class<T> parameterType;
-        private final Class<R> interpolatorType;
+    @SuppressWarnings("unchecked")
+    <T, R extends Interpolator<T>> Class<R> get(Class<T> type) {
+        if (index == null) {
+            // Lookups are made per call; only a frozen copy has an index
+            throw new IllegalStateException("Not frozen");
+        }
+        return (Class<R>) index.get(type);
+    }
 
-        public Entry(Class<T> parameterType, Class<R> interpolatorType) {
-            this.parameterType = parameterType;
-            this.interpolatorType = interpolatorType;
+    public <T, R extends Interpolator<T>> void add(Class<T> type, Class<R> dec) {
+        if (index != null) {
+            throw new IllegalStateException("Frozen");
         }
+        parameterTypes.add(type);
+        interpolatorTypes.add(dec);
     }
 }
@@ -8,6 +8,15 @@ import io.netty.handler.codec.http.HttpResponseStatus;
 /**
  * Takes an HTTP response and translates it into some sort of object.
  * The default implementation handles JSON and string.
+ * <p/>
+ * The content buffer belongs to the HTTP client, which releases it once the
+ * callback's <code>success()</code> or <code>fail()</code> method has
+ * returned, so it may be a pooled or direct buffer. Interpreters must not
+ * release it, and should leave its reader index alone. A result may share
+ * the buffer's memory - the default interpreter does for ByteBuf, ByteBuffer,
+ * TextView and InputStream results - in which case it is only valid until
+ * the callback returns; a callback which needs one for longer must copy it,
+ * or retain a ByteBuf result and release it when done.
  *
  * @author Tim Boudreau
  */
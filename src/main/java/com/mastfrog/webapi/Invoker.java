@@ -5,8 +5,7 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
 import com.google.inject.Key;
 import com.google.inject.name.Names;
-import com.mastfrog.acteur.header.entities.BasicCredentials;
-import com.mastfrog.acteur.headers.Headers;
+import com.mastfrog.function.misc.QuietAutoClosable;
 import com.mastfrog.giulius.Dependencies;
 import com.mastfrog.giulius.scope.ReentrantScope;
 import com.mastfrog.netty.http.client.HttpClient;
@@ -14,24 +13,25 @@ import com.mastfrog.netty.http.client.HttpClientBuilder;
 import com.mastfrog.netty.http.client.HttpRequestBuilder;
 import com.mastfrog.netty.http.client.ResponseFuture;
 import com.mastfrog.netty.http.client.State;
-import com.mastfrog.url.Path;
 import com.mastfrog.url.URL;
-import com.mastfrog.url.URLBuilder;
 import com.mastfrog.util.preconditions.Exceptions;
 import com.mastfrog.util.thread.Receiver;
-import com.mastfrog.webapi.builtin.Parameters;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 /**
- * Invokes web api calls
+ * Invokes web api calls. Invokers created by the same injector share the
+ * state of each call - its circuit breaker, concurrency limiter, metrics and
+ * coalesced requests - so it does not matter how many are injected.
  *
  * @author Tim Boudreau
  */
@@ -40,30 +40,28 @@ public class Invoker<T extends Enum<T> & WebCallEnum> {
     private final HttpClient client;
     private final Dependencies deps;
     private final URL base;
-    private final ObjectMapper mapper;
+    private final JsonBindings bindings;
+    private final String basePrefix;
+    private final ReentrantScope scope;
+    private final ResponseCache cache;
+    private final ConcurrencyLimiter limiter;
+    private final RetryBudget retryBudget;
+    private final TimeoutTimer timer;
+    private final CallPlans plans;
 
     @Inject
     public Invoker(HttpClient client, Dependencies deps, URL base, ObjectMapper mapper) {
         this.client = client;
         this.deps = deps;
         this.base = base;
-        this.mapper = mapper;
-    }
-
-    private void replace(String token, StringBuilder in, Object with) {
-        if (with == null) {
-            return;
-        }
-        token = "{{" + token + "}}";
-        int ix = in.indexOf(token);
-        if (ix >= 0) {
-            try {
-                String val = URLEncoder.encode(with.toString(), "UTF-8");
-                in.replace(ix, ix + token.length(), val);
-            } catch (UnsupportedEncodingException ex) {
-                Exceptions.chuck(ex);
-            }
-        }
+        this.bindings = deps.getInstance(JsonBindings.class);
+        this.basePrefix = PathTemplate.basePrefix(base.getPath());
+        this.scope = deps.getInstance(Key.get(ReentrantScope.class, Names.named("webapi")));
+        this.cache = deps.getInstance(ResponseCache.class);
+        this.limiter = deps.getInstance(ConcurrencyLimiter.class);
+        this.retryBudget = deps.getInstance(RetryBudget.class);
+        this.timer = deps.getInstance(TimeoutTimer.class);
+        this.plans = deps.getInstance(CallPlans.class);
     }
 
     /**
@@ -85,7 +83,30 @@ public class Invoker<T extends Enum<T> & WebCallEnum> {
      * @throws IOException
      */
     public static <T extends Enum<T> & WebCallEnum> Invoker<T> create(URL baseUrl, Class<T> webApi) throws IOException {
-        Dependencies deps = Dependencies.builder().add(new StandaloneModule(baseUrl))
+        return create(baseUrl, webApi, null);
+    }
+
+    /**
+     * Create a standalone Web API invoker as with
+     * <code>create(baseUrl, webApi)</code>, configuring the HTTP client it
+     * uses - for example, to set its thread count, or channel options such
+     * as <code>ChannelOption.CONNECT_TIMEOUT_MILLIS</code> or
+     * <code>ChannelOption.TCP_NODELAY</code>.
+     *
+     * @param <T> The type
+     * @param baseUrl The base URL for api calls
+     * @param webApi An enum whose constants implement WebCall
+     * @param configure Configures a client builder which already follows
+     * redirects, or null
+     * @return An invoker
+     * @throws IOException
+     */
+    public static <T extends Enum<T> & WebCallEnum> Invoker<T> create(URL baseUrl, Class<T> webApi, Consumer<? super HttpClientBuilder> configure) throws IOException {
+        HttpClientBuilder builder = HttpClient.builder().followRedirects();
+        if (configure != null) {
+            configure.accept(builder);
+        }
+        Dependencies deps = Dependencies.builder().add(new StandaloneModule(baseUrl, builder))
                 .add(new WebApiModule(webApi)).build();
         return deps.getInstance(Invoker.class);
     }
@@ -93,10 +114,11 @@ public class Invoker<T extends Enum<T> & WebCallEnum> {
     private static class StandaloneModule extends AbstractModule {
 
         private final URL url;
-        private final HttpClientBuilder builder = HttpClient.builder().followRedirects();
+        private final HttpClientBuilder builder;
 
-        StandaloneModule(URL url) {
+        StandaloneModule(URL url, HttpClientBuilder builder) {
             this.url = url;
+            this.builder = builder;
         }
 
         @Override
@@ -106,128 +128,536 @@ public class Invoker<T extends Enum<T> & WebCallEnum> {
         }
     }
 
-    private <T> boolean interpolate(StringBuilder sb, Class<T> type, Dependencies deps, WebCall call) {
-        Class<? extends Interpolator<T>> pi = call.interpolator(type);
-        if (pi != null) {
-            return interpolate(sb, type, deps, call, pi);
-        }
-        return false;
-    }
+    private static final BooleanSupplier NOT_ABANDONED = () -> false;
+    private static final Consumer<ResponseFuture> NOT_RETURNED = f -> {
+        // A request which had to wait for the limiter after call() returned
+    };
 
-    private <T, R extends Interpolator<T>> boolean interpolate(StringBuilder sb, Class<T> type, Dependencies deps, WebCall call, Class<R> pi) {
-        R r = deps.getInstance(pi);
-        T obj = deps.getInstance(type);
-        r.interpolate(call, sb, obj, type);
-        return false;
+    /**
+     * Invoke a call, passing the result to a callback. If the call is
+     * cacheable and a fresh result is cached, the callback is invoked before
+     * this method returns, and no request is made.
+     *
+     * @param <T> The result type
+     * @param call The call
+     * @param callback The callback
+     * @param args Objects needed by the call
+     * @return A future, or null if the result was served from the cache or
+     * the request is waiting for the concurrency limiter; if the call is
+     * coalesced, the future may be shared with other invocations, or null if
+     * the one which is making the request has not sent it yet; if the call
+     * is retried or hedged, it is the future of the first request - so once
+     * that request has failed, cancelling it does not stop a retry which is
+     * pending or already sent. To be able to cancel a retried call, use
+     * <code>callAsync()</code>, whose future cancels the current attempt and
+     * any pending retry.
+     * @throws Exception If something goes wrong
+     */
+    public <T> ResponseFuture call(final WebCallEnum call, final Callback<T> callback, final Object... args) throws Exception {
+        return call(call, null, callback, args);
     }
 
-    private Object[] combine(Object[] a, Object... with) {
-        List<Object> all = new ArrayList<>(a.length + with.length);
-        all.addAll(Arrays.asList(a));
-        all.addAll(Arrays.asList(with));
-        return all.toArray(new Object[a.length + with.length]);
+    public <T> ResponseFuture call(final WebCallEnum call, Receiver<State<?>> listener, final Callback<T> callback, final Object... args) throws Exception {
+        final CallPlan plan = plan(call.get());
+        final CallContext ctx = plan.context(call, args, scope);
+        if (plan.retries() == null) {
+            return hedged(plan, listener, callback, null, ctx);
+        }
+        Retry retry = new Retry(plan.retries(), retryBudget, timer);
+        return hedged(plan, listener, retry.callback(callback,
+                next -> hedged(plan, listener, next, retry, ctx)), retry, ctx);
     }
 
-    public <T> ResponseFuture call(final WebCallEnum call, final Callback<T> callback, final Object... args) throws Exception {
-        return call(call, null, callback, args);
+    private <T> ResponseFuture hedged(CallPlan plan, Receiver<State<?>> listener, Callback<T> callback, Retry retry, CallContext ctx) throws Exception {
+        Consumer<HttpRequestBuilder> decorate = retry == null ? null : retry::decorate;
+        if (plan.hedging() == null) {
+            return call(plan, listener, callback, decorate, ctx);
+        }
+        return new Hedge(plan.hedging(), timer).call(callback, (next, watch)
+                -> call(plan, listener, next, decorate == null ? watch : decorate.andThen(watch), ctx));
     }
 
-    public <T> ResponseFuture call(final WebCallEnum call, Receiver<State<?>> listener, final Callback<T> callback, final Object... args) throws Exception {
-        final ReentrantScope scope = deps.getInstance(Key.get(ReentrantScope.class, Names.named("webapi")));
-        try (AutoCloseable cl = scope.enter(args)) {
-            final WebCall wc = call.get();
-            HttpRequestBuilder reqb = toRequest(wc, deps);
+    private <T> ResponseFuture call(CallPlan plan, Receiver<State<?>> listener, Callback<T> callback, Consumer<HttpRequestBuilder> prepare, CallContext ctx) throws Exception {
+        if (plan.isCoalesced(callback.type())) {
+            HttpRequestBuilder reqb = populate(plan, ctx);
             if (listener != null) {
                 reqb.onEvent(listener);
             }
-            if (wc.authenticationRequired()) {
-                BasicCredentials bc = deps.getInstance(BasicCredentials.class);
-                if (bc != null) {
-                    reqb.addHeader(Headers.AUTHORIZATION, bc);
-                }
+            return coalesce(plan, reqb, callback, ctx);
+        }
+        if (plan.timeouts() != null || ctx.deadline() != null) {
+            // The response and the timeout race to end the call
+            callback = CallTimeouts.once(callback);
+        }
+        HttpRequestBuilder reqb = request(plan, listener, callback, ctx);
+        if (prepare != null) {
+            prepare.accept(reqb);
+        }
+        if (plan.isStreaming()) {
+            new StreamingResponse<>(() -> (StreamingInterpreter) plan.interpreter(),
+                    callback, ctx).attach(reqb);
+            return limit(plan, reqb, ctx, NOT_ABANDONED, NOT_RETURNED, callback::error);
+        }
+        return execute(plan, reqb, callback, NOT_RETURNED, ctx);
+    }
+
+    /**
+     * Share one request between concurrent invocations which would send the
+     * same one.
+     */
+    private <T> ResponseFuture coalesce(CallPlan plan, HttpRequestBuilder reqb, Callback<T> callback, CallContext ctx) throws Exception {
+        InFlight.Flight<T> flight = plans.inFlight().join(plan.requestKey(reqb, callback.type(), ctx), plan.call.name(), callback);
+        if (!flight.lead()) {
+            ctx.discard(reqb);
+            return flight.response();
+        }
+        reqb.onEvent(flight.events());
+        try {
+            ResponseFuture result = execute(plan, reqb, flight, flight::attach, ctx);
+            flight.attach(result);
+            return result;
+        } catch (Exception | Error e) {
+            flight.error(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Add the receivers which interpret the response to a request for a
+     * call which is not streamed, and send it unless a fresh result is
+     * cached.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> ResponseFuture execute(CallPlan plan, HttpRequestBuilder reqb, Callback<T> callback, Consumer<ResponseFuture> onSent, CallContext ctx) {
+        final ResponseCache.Lookup lookup = plan.cacheLookup(cache, reqb, callback.type(), ctx);
+        if (lookup != null) {
+            Object cached = lookup.fresh();
+            if (cached != null) {
+                ctx.discard(reqb);
+                callback.success((T) cached);
+                return null;
             }
-            reqb.on(State.Error.class, new Receiver<Throwable>() {
-                @Override
-                public void receive(Throwable object) {
-                    callback.error(object);
-                }
-            });
-            reqb.on(State.HeadersReceived.class, new Receiver<HttpResponse>() {
-                @Override
-                public void receive(HttpResponse object) {
-                    callback.responseReceived(object.status(), object.headers());
-                    if (HttpResponseStatus.NOT_MODIFIED.equals(object.getStatus())) {
+            lookup.addValidators(reqb);
+        }
+        reqb.on(State.HeadersReceived.class, new Receiver<HttpResponse>() {
+            @Override
+            public void receive(HttpResponse object) {
+                callback.responseReceived(object.status(), object.headers());
+                if (HttpResponseStatus.NOT_MODIFIED.equals(object.getStatus())) {
+                    // A 304 has no body, and the client does not report
+                    // it as finished
+                    if (lookup != null && lookup.canRevalidate()) {
+                        callback.success((T) lookup.revalidated(object.headers()));
+                    } else {
                         callback.notModified(object.headers());
                     }
                 }
-            });
-            reqb.on(State.Finished.class, new Receiver<FullHttpResponse>() {
+            }
+        });
+        reqb.on(State.Finished.class, new Receiver<FullHttpResponse>() {
 
-                @Override
-                public void receive(FullHttpResponse resp) {
-                    try (AutoCloseable ac = scope.enter(combine(args, wc, call))) {
-                        if (resp.status().code() < 299 && resp.status().code() > 199) {
-                            Interpreter inter = wc.interpreter(deps);
-                            if (inter == null) {
-                                inter = new DefaultResponseInterceptor(mapper);
-                            }
-                            try {
-                                T obj = inter.interpret(resp.getStatus(), resp.headers(), resp.content(), callback.type());
-                                callback.success(obj);
-                            } catch (Exception ex) {
-                                callback.error(ex);
-                                Exceptions.printStackTrace(ex);
+            @Override
+            public void receive(FullHttpResponse resp) {
+                try (QuietAutoClosable ac = ctx.enter()) {
+                    if (resp.status().code() < 299 && resp.status().code() > 199) {
+                        Interpreter inter = plan.interpreter();
+                        if (inter == null) {
+                            inter = new DefaultResponseInterceptor(bindings);
+                        }
+                        try {
+                            long start = System.nanoTime();
+                            int size = resp.content().readableBytes();
+                            T obj = inter.interpret(resp.getStatus(), resp.headers(), resp.content(), callback.type());
+                            plan.metrics().record(CallMetrics.Phase.INTERPRET, System.nanoTime() - start);
+                            if (lookup != null) {
+                                lookup.store(resp.headers(), obj, size);
                             }
-                        } else {
-                            callback.fail(resp.getStatus(), resp.content());
+                            callback.success(obj);
+                        } catch (Exception ex) {
+                            callback.error(ex);
+                            Exceptions.printStackTrace(ex);
                         }
-                    } catch (Exception e) {
-                        callback.error(e);
+                    } else {
+                        callback.fail(resp.getStatus(), resp.content());
                     }
+                } catch (Exception e) {
+                    callback.error(e);
                 }
-            });
-            return reqb.execute();
+            }
+        });
+        return limit(plan, reqb, ctx, NOT_ABANDONED, onSent, callback::error);
+    }
+
+    /**
+     * Send a request through the call's circuit breaker, if it has one, and
+     * concurrency limiter, timing it if the call has timeouts or the
+     * invocation a deadline.
+     *
+     * @return The future, or null if the request was queued or rejected
+     */
+    private ResponseFuture limit(CallPlan plan, HttpRequestBuilder reqb, CallContext ctx, BooleanSupplier abandoned, Consumer<ResponseFuture> onSent, Consumer<Throwable> onRejected) {
+        Deadline deadline = ctx.deadline();
+        if (plan.timeouts() == null && deadline == null) {
+            return admit(plan, reqb, ctx, null, abandoned, onSent, onRejected);
         }
+        if (deadline != null && deadline.isExpired()) {
+            ctx.discard(reqb);
+            onRejected.accept(new CallTimeoutException(plan.call.name(),
+                    CallTimeoutException.Kind.DEADLINE, Duration.ZERO));
+            return null;
+        }
+        CallTimeouts.Watch watch = CallTimeouts.watch(plan.timeouts(), deadline, reqb,
+                plan.call.name(), timer, onRejected);
+        ResponseFuture result = admit(plan, reqb, ctx, watch, abandoned, f -> {
+            watch.attach(f);
+            onSent.accept(f);
+        }, watch.rejections(onRejected));
+        watch.attach(result);
+        return result;
     }
 
-    public HttpRequestBuilder toRequest(WebCall call, Dependencies deps) throws IOException {
-        StringBuilder b = new StringBuilder(call.urlTemplate());
-        for (Class<?> type : call.requiredTypes()) {
-            if (!interpolate(b, type, deps, call)) {
-                Object o = deps.getInstance(type);
-                replace(type.getSimpleName().toLowerCase(), b, o);
+    private ResponseFuture admit(CallPlan plan, HttpRequestBuilder reqb, CallContext ctx, CallTimeouts.Watch watch, BooleanSupplier abandoned, Consumer<ResponseFuture> onSent, Consumer<Throwable> onRejected) {
+        ConcurrencyLimiter lim = plan.limiter();
+        CircuitBreaker breaker = plan.circuitBreaker();
+        Consumer<Throwable> unsent = thrown -> {
+            ctx.discard(reqb);
+            onRejected.accept(thrown);
+        };
+        if (breaker == null) {
+            return (lim == null ? limiter : lim).execute(reqb, plan.call.name(), timer, abandoned, onSent, unsent);
+        }
+        CircuitBreaker.Phase permit = breaker.acquire();
+        if (permit == null) {
+            unsent.accept(breaker.rejection());
+            return null;
+        }
+        breaker.watch(reqb, permit, watch == null ? () -> false : watch::expired);
+        return (lim == null ? limiter : lim).execute(reqb, plan.call.name(), timer, abandoned, onSent, thrown -> {
+            breaker.release(permit);
+            unsent.accept(thrown);
+        });
+    }
+
+    /**
+     * Get the concurrency limiter which applies to a call, to read its
+     * statistics.
+     *
+     * @param call The call
+     * @return The call's own limiter, or the invoker's
+     */
+    public ConcurrencyLimiter limiter(WebCallEnum call) {
+        ConcurrencyLimiter lim = plan(call.get()).limiter();
+        return lim == null ? limiter : lim;
+    }
+
+    /**
+     * Get a call's circuit breaker, to read its state or listen for changes
+     * to it.
+     *
+     * @param call The call
+     * @return The breaker, or null if the call does not have one
+     */
+    public CircuitBreaker circuitBreaker(WebCallEnum call) {
+        return plan(call.get()).circuitBreaker();
+    }
+
+    /**
+     * Get the metrics of a call's requests.
+     *
+     * @param call The call
+     * @return The metrics
+     */
+    public CallMetrics metrics(WebCallEnum call) {
+        return plan(call.get()).metrics();
+    }
+
+    /**
+     * Get the metrics of every call which has been invoked.
+     *
+     * @return A map from each call's id to its metrics
+     */
+    public Map<Enum<?>, CallMetrics> metrics() {
+        Map<Enum<?>, CallMetrics> result = new LinkedHashMap<>();
+        for (CallPlan plan : plans.all()) {
+            result.put(plan.call.id(), plan.metrics());
+        }
+        return result;
+    }
+
+    /**
+     * Get statistics about the connections the invoker has opened.
+     *
+     * @return The statistics
+     */
+    public ConnectionStats connections() {
+        return plans.connections();
+    }
+
+    /**
+     * Resolve the path templates, decorators, interpolators and interpreters
+     * of some calls now, rather than on the first invocation of each.
+     *
+     * @param calls The calls
+     * @return this
+     */
+    public Invoker<T> prepare(WebCallEnum... calls) {
+        for (WebCallEnum call : calls) {
+            plan(call.get());
+        }
+        return this;
+    }
+
+    /**
+     * Prepare every call of the enum a call belongs to, so that resolving
+     * decorators, interpolators and interpreters does not happen on the
+     * first real invocation of each, then invoke the call a number of times,
+     * a few at a time, so that class loading, JIT compilation, host name
+     * resolution and TLS setup happen before real traffic arrives. Use a
+     * call which is cheap for the upstream, such as a health check.
+     *
+     * @param call The call to invoke
+     * @param type The type to interpret responses as
+     * @param invocations The number of times to invoke it
+     * @param concurrency The number of invocations to have in flight at once
+     * @param args Objects needed by the call
+     * @return A future which is completed with a summary once every
+     * invocation has completed; failures are counted, not thrown
+     */
+    public <R> CompletableFuture<BulkSummary> warmUp(WebCallEnum call, Class<R> type, int invocations, int concurrency, Object... args) {
+        for (Object constant : call.get().id().getDeclaringClass().getEnumConstants()) {
+            if (constant instanceof WebCallEnum) {
+                plan(((WebCallEnum) constant).get());
+            }
+        }
+        return callAll(call, Collections.nCopies(invocations, args), concurrency, new BulkCallback<R>(type) {
+            @Override
+            public void onResult(long index, Object[] args, R result) {
+                // Only the effort matters
             }
+        });
+    }
+
+    /**
+     * Get the budget which limits how many retries the invoker makes, to
+     * read its statistics.
+     *
+     * @return The budget
+     */
+    public RetryBudget retryBudget() {
+        return retryBudget;
+    }
+
+    /**
+     * Invoke a call, returning a future which is completed with the
+     * interpreted response. If the response status is not 2xx, the future is
+     * completed exceptionally with a <code>WebCallException</code> carrying
+     * the status, headers and body - including a 304 which the cache cannot
+     * answer. Cancelling the future cancels the
+     * request, unless the call is coalesced, in which case it only detaches
+     * this caller from the shared request; if the call is retried, it
+     * cancels whichever attempt is in flight, and any retry which is
+     * waiting out its backoff is not sent. If the call is cacheable and a
+     * fresh result is cached, the future is already complete when it is
+     * returned. ByteBuf, ByteBuffer, InputStream and TextView results are
+     * interpreted from a copy of the body, since the future may be read after
+     * the response has been released.
+     *
+     * @param <T> The result type
+     * @param call The call
+     * @param type The result type
+     * @param args Objects needed by the call
+     * @return A future
+     */
+    public <T> CompletableFuture<T> callAsync(final WebCallEnum call, Class<T> type, final Object... args) {
+        AsyncCall<T> result = new AsyncCall<>(type);
+        try {
+            result.attach(send(call, result, args));
+        } catch (Exception | Error e) {
+            result.completeExceptionally(e);
         }
+        return result;
+    }
+
+    /**
+     * Invoke a call and wait for the interpreted response. The calling thread
+     * is parked rather than blocked on a monitor, so this is the cheapest way
+     * to make a call from a virtual thread. If the response status is not
+     * 2xx, a <code>WebCallException</code> carrying the status, headers and
+     * body is thrown. Interrupting the thread cancels the request; one still
+     * waiting for the concurrency limiter is not sent, and a retry waiting
+     * out its backoff is dropped. If the
+     * call is cacheable and a fresh result is cached, it is returned without
+     * making a request. As with <code>callAsync()</code>, results which would
+     * be views of the body are interpreted from a copy of it.
+     *
+     * @param <T> The result type
+     * @param call The call
+     * @param type The result type
+     * @param args Objects needed by the call
+     * @return The result
+     * @throws Exception If the call fails
+     */
+    public <T> T invoke(final WebCallEnum call, Class<T> type, final Object... args) throws Exception {
+        BlockingCall<T> result = new BlockingCall<>(type);
+        result.attach(send(call, result, args));
+        return result.await();
+    }
 
-        Parameters params = deps.getInstance(Parameters.class);
-        URLBuilder bld = URL.builder(base);
-        Path p = Path.parse(b.toString());
-        Path pth = Path.merge(base.getPath() == null ? Path.parse("/") : base.getPath(), p);
-        bld.setPath(pth);
+    private <T> ResponseFuture send(WebCallEnum call, ResponseSink<T> sink, Object[] args) throws Exception {
+        final CallPlan plan = plan(call.get());
+        final CallContext ctx = plan.context(call, args, scope);
+        if (plan.retries() == null) {
+            return hedged(plan, sink, null, ctx);
+        }
+        Retry retry = new Retry(plan.retries(), retryBudget, timer);
+        return hedged(plan, retry.sink(sink,
+                next -> sink.attach(hedged(plan, next, retry, ctx))), retry, ctx);
+    }
 
-        HttpRequestBuilder builder = client.request(call.method()).setURL(bld.create());
+    private <T> ResponseFuture hedged(CallPlan plan, ResponseSink<T> sink, Retry retry, CallContext ctx) throws Exception {
+        Consumer<HttpRequestBuilder> decorate = retry == null ? null : retry::decorate;
+        if (plan.hedging() == null) {
+            return send(plan, sink, decorate, ctx);
+        }
+        return new Hedge(plan.hedging(), timer).send(sink, (next, watch)
+                -> send(plan, next, decorate == null ? watch : decorate.andThen(watch), ctx));
+    }
 
-        if (params != null) {
-            params.populate(builder);
+    @SuppressWarnings("unchecked")
+    private <T> ResponseFuture send(CallPlan plan, ResponseSink<T> sink, Consumer<HttpRequestBuilder> prepare, CallContext ctx) throws Exception {
+        HttpRequestBuilder reqb = populate(plan, ctx);
+        if (prepare != null) {
+            prepare.accept(reqb);
         }
-        for (Class<?> type : call.requiredTypes()) {
-            decorate(builder, type, deps, call);
+        if (plan.isStreaming()) {
+            Callback<T> callback = sink.asCallback();
+            reqb.on(State.Error.class, new Receiver<Throwable>() {
+                @Override
+                public void receive(Throwable object) {
+                    callback.error(object);
+                }
+            });
+            new StreamingResponse<>(() -> (StreamingInterpreter) plan.interpreter(),
+                    callback, ctx).attach(reqb);
+        } else if (plan.isCoalesced(sink.type())) {
+            coalesce(plan, reqb, sink.asCallback(), ctx);
+            return null;
+        } else {
+            ResponseCache.Lookup lookup = plan.cacheLookup(cache, reqb, sink.type(), ctx);
+            if (lookup != null) {
+                Object cached = lookup.fresh();
+                if (cached != null) {
+                    ctx.discard(reqb);
+                    sink.complete((T) cached);
+                    return null;
+                }
+                lookup.addValidators(reqb);
+            }
+            reqb.onEvent(sink.events(plan.asyncListener(), lookup, ctx));
         }
-        return builder;
+        return limit(plan, reqb, ctx, sink::isDone, sink::attach, sink::completeExceptionally);
+    }
+
+    /**
+     * Invoke a call once for each of a series of argument sets, with no more
+     * than <i>maxInFlight</i> calls outstanding at a time. The next argument
+     * set is only taken from the input when a call completes, so the input
+     * can be arbitrarily long, or lazily generated. Results are passed to the
+     * callback in the order they complete, unless it asks for input order.
+     *
+     * @param <T> The result type
+     * @param call The call
+     * @param argumentSets The objects needed by each invocation of the call
+     * @param maxInFlight The maximum number of calls outstanding
+     * @param callback The callback
+     * @return A future which is completed with a summary once every call has
+     * completed; cancelling it cancels the calls in flight
+     */
+    public <T> CompletableFuture<BulkSummary> callAll(WebCallEnum call, Iterable<Object[]> argumentSets, int maxInFlight, BulkCallback<T> callback) {
+        return callAll(call, argumentSets, maxInFlight, null, callback);
+    }
+
+    /**
+     * Invoke a call once for each of a series of argument sets, as with
+     * <code>callAll(call, argumentSets, maxInFlight, callback)</code>, giving
+     * up once a deadline has passed. When it does, calls in flight are
+     * cancelled, any results held back to preserve input order are delivered,
+     * and the summary records that the deadline was exceeded.
+     *
+     * @param <T> The result type
+     * @param call The call
+     * @param argumentSets The objects needed by each invocation of the call
+     * @param maxInFlight The maximum number of calls outstanding
+     * @param deadline How long to allow for all of the calls, or null
+     * @param callback The callback
+     * @return A future which is completed with a summary
+     */
+    public <T> CompletableFuture<BulkSummary> callAll(WebCallEnum call, Iterable<Object[]> argumentSets, int maxInFlight, Duration deadline, BulkCallback<T> callback) {
+        return new BulkInvocation<>(this, timer, call, argumentSets, maxInFlight, callback).start(deadline);
+    }
+
+    /**
+     * Invoke a call whose response is a JSON array, passing each element to
+     * the callback as it is decoded rather than materializing the whole
+     * array. The call's own interpreter is not used.
+     *
+     * @param <T> The element type
+     * @param call The call
+     * @param callback The callback
+     * @param args Objects needed by the call
+     * @return A future
+     * @throws Exception If something goes wrong
+     */
+    public <T> ResponseFuture stream(final WebCallEnum call, final StreamingCallback<T> callback, final Object... args) throws Exception {
+        return stream(call, null, callback, args);
+    }
+
+    public <T> ResponseFuture stream(final WebCallEnum call, Receiver<State<?>> listener, final StreamingCallback<T> callback, final Object... args) throws Exception {
+        final CallPlan plan = plan(call.get());
+        final CallContext ctx = plan.context(call, args, scope);
+        ElementStream<T> elements = new ElementStream<>(bindings, callback);
+        HttpRequestBuilder reqb = request(plan, listener, elements.completion(), ctx);
+        elements.attach(reqb);
+        new StreamingResponse<>(() -> elements, elements.completion(), ctx).attach(reqb);
+        return limit(plan, reqb, ctx, NOT_ABANDONED, NOT_RETURNED, elements.completion()::error);
     }
 
-    private <T, R extends Decorator<T>> boolean decorate(Class<T> type, HttpRequestBuilder builder, T obj, Dependencies deps, WebCall call, Class<R> rt) throws IOException {
-        R r = deps.getInstance(rt);
-        r.decorate(call, builder, obj, type);
-        return true;
+    private HttpRequestBuilder populate(CallPlan plan, CallContext ctx) throws IOException {
+        long start = System.nanoTime();
+        HttpRequestBuilder reqb = plan.populate(client.request(plan.call.method()), base, ctx);
+        plan.metrics().time(reqb, start, plans.connections());
+        return reqb;
     }
 
-    private <T> boolean decorate(HttpRequestBuilder builder, Class<T> type, Dependencies deps, WebCall call) throws IOException {
-        Class<? extends Decorator<T>> x = call.decorator(type);
-        T obj = deps.getInstance(type);
-        if (x != null && obj != null) {
-            return decorate(type, builder, obj, deps, call, x);
+    private HttpRequestBuilder request(CallPlan plan, Receiver<State<?>> listener, final Callback<?> callback, CallContext ctx) throws IOException {
+        HttpRequestBuilder reqb = populate(plan, ctx);
+        if (listener != null) {
+            reqb.onEvent(listener);
         }
-        return false;
+        reqb.on(State.Error.class, new Receiver<Throwable>() {
+            @Override
+            public void receive(Throwable object) {
+                callback.error(object);
+            }
+        });
+        return reqb;
+    }
+
+    /**
+     * Create a request for the passed call, reading the objects it needs from
+     * the call scope, which must already have been entered.
+     *
+     * @param call The call
+     * @param deps The dependencies
+     * @return A request builder
+     * @throws IOException If a decorator fails
+     */
+    public HttpRequestBuilder toRequest(WebCall call, Dependencies deps) throws IOException {
+        CallPlan plan = deps == this.deps ? plan(call) : new CallPlan(call, deps, basePrefix, bindings);
+        return plan.populate(client.request(call.method()), base, plan.context());
+    }
+
+    private CallPlan plan(WebCall call) {
+        return plans.plan(call);
     }
 }
@@ -0,0 +1,26 @@
+package com.mastfrog.webapi;
+
+import com.fasterxml.jackson.databind.Module;
+import com.google.inject.Inject;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Jackson modules registered with WebApiModule, for JsonBindings.
+ *
+ * @author Tim Boudreau
+ */
+final class JacksonModules {
+
+    static final JacksonModules NONE = new JacksonModules(Collections.<Module>emptyList());
+    final List<Module> modules;
+
+    @Inject
+    JacksonModules() {
+        this(Collections.<Module>emptyList());
+    }
+
+    JacksonModules(List<Module> modules) {
+        this.modules = modules;
+    }
+}
@@ -0,0 +1,121 @@
+package com.mastfrog.webapi;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Caches an ObjectReader and ObjectWriter for each type that is read from
+ * responses or written into request bodies, so Jackson resolves the
+ * (de)serializers for a type once rather than on every call. The readers and
+ * writers come from the bound ObjectMapper - or a copy of it, if modules such
+ * as Blackbird or Afterburner were registered with
+ * <code>WebApiModule.withJacksonModule()</code>.
+ *
+ * @author Tim Boudreau
+ */
+@Singleton
+public final class JsonBindings {
+
+    private final ObjectMapper mapper;
+    private final ClassValue<ObjectReader> readers = new ClassValue<ObjectReader>() {
+        @Override
+        protected ObjectReader computeValue(Class<?> type) {
+            return mapper.readerFor(type);
+        }
+    };
+    private final ClassValue<ObjectWriter> writers = new ClassValue<ObjectWriter>() {
+        @Override
+        protected ObjectWriter computeValue(Class<?> type) {
+            return mapper.writerFor(type);
+        }
+    };
+
+    @Inject
+    JsonBindings(ObjectMapper mapper, JacksonModules modules) {
+        this(mapper, modules.modules);
+    }
+
+    JsonBindings(ObjectMapper mapper) {
+        this(mapper, JacksonModules.NONE.modules);
+    }
+
+    private JsonBindings(ObjectMapper mapper, List<Module> modules) {
+        // Copy rather than modify a mapper the application may use elsewhere
+        this.mapper = modules.isEmpty() ? mapper : mapper.copy().registerModules(modules);
+    }
+
+    /**
+     * The mapper readers and writers are created from.
+     *
+     * @return A mapper
+     */
+    public ObjectMapper mapper() {
+        return mapper;
+    }
+
+    /**
+     * Get bindings for a copy of this mapper - with the same configuration
+     * and modules - which reads and writes a different format, such as Smile
+     * or CBOR. Each call creates new bindings with their own caches, so keep
+     * the result.
+     *
+     * @param factory The factory for the format
+     * @return New bindings
+     */
+    public JsonBindings withFactory(JsonFactory factory) {
+        return new JsonBindings(mapper.copyWith(factory));
+    }
+
+    /**
+     * Get the reader for a type.
+     *
+     * @param type A type
+     * @return A reader
+     */
+    public ObjectReader reader(Class<?> type) {
+        return readers.get(type);
+    }
+
+    /**
+     * Get the writer for a type.
+     *
+     * @param type A type
+     * @return A writer
+     */
+    public ObjectWriter writer(Class<?> type) {
+        return writers.get(type);
+    }
+
+    /**
+     * Serialize an object directly into a buffer from the passed allocator.
+     * The caller owns the result; if it is passed as the body of a request,
+     * the HTTP client releases it once it has been written.
+     *
+     * @param obj An object
+     * @param type The type to serialize it as
+     * @param alloc An allocator
+     * @return A buffer
+     * @throws IOException If serialization fails
+     */
+    public ByteBuf toByteBuf(Object obj, Class<?> type, ByteBufAllocator alloc) throws IOException {
+        ByteBuf buf = alloc.buffer();
+        try (ByteBufOutputStream out = new ByteBufOutputStream(buf)) {
+            writer(type).writeValue((OutputStream) out, obj);
+            return buf;
+        } catch (IOException | RuntimeException ex) {
+            buf.release();
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.mastfrog.webapi;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in nanoseconds, with buckets of logarithmically
+ * increasing width in the style of HdrHistogram: each power of two is split
+ * into sixteen buckets, so any value read back is within about 6% of one
+ * recorded, from a nanosecond to centuries, in a fixed 960 counters.
+ * Recording is a few atomic increments and allocates nothing; reading takes
+ * a snapshot, which may be slightly inconsistent with concurrent recording
+ * but never loses a value.
+ *
+ * @author Tim Boudreau
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a duration.
+     *
+     * @param nanos The duration; negative values are recorded as zero
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        total.add(value);
+        long m;
+        while (value < (m = min.get()) && !min.compareAndSet(m, value)) {
+            // retry
+        }
+        while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+            // retry
+        }
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * The largest value which falls in a bucket.
+     */
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long sub = SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, count, total.sum(), count == 0 ? 0 : min.get(), max.get());
+    }
+
+    /**
+     * The contents of a histogram at one point in time.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long min;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long total, long min, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+            this.min = min;
+            this.max = max;
+        }
+
+        /**
+         * The number of values recorded.
+         *
+         * @return A count
+         */
+        public long count() {
+            return count;
+        }
+
+        public long min() {
+            return min;
+        }
+
+        public long max() {
+            return max;
+        }
+
+        public double mean() {
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        /**
+         * The value at a percentile: the largest value in the bucket which
+         * contains it, or the largest value recorded if that is smaller.
+         *
+         * @param percentile A percentile, from 0 to 100
+         * @return A value in nanoseconds, or 0 if nothing was recorded
+         */
+        public long valueAt(double percentile) {
+            if (count == 0) {
+                return 0;
+            } else if (percentile <= 0) {
+                return min;
+            }
+            long rank = Math.max(1, (long) Math.ceil(count * Math.min(100, percentile) / 100D));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(max, Math.max(min, highestValue(i)));
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + " min=" + min + " p50=" + valueAt(50)
+                    + " p99=" + valueAt(99) + " max=" + max;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.mastfrog.webapi;
+
+/**
+ * Adjusts the limit of a <code>ConcurrencyLimiter</code> from the responses
+ * it sees. An instance belongs to one limiter, which never calls it
+ * concurrently, so it can keep state without synchronization.
+ *
+ * @author Tim Boudreau
+ */
+public abstract class LimitAlgorithm {
+
+    /**
+     * The limit to start with.
+     *
+     * @return A limit greater than zero
+     */
+    public abstract int initialLimit();
+
+    /**
+     * Called once for each request which got a response or failed, with the
+     * time from sending it to receiving the response headers (or failing).
+     *
+     * @param limit The current limit
+     * @param rttNanos The round trip time in nanoseconds
+     * @param inFlight The number of requests in flight, including this one
+     * @param dropped True if the request failed, timed out, or got a 429 or
+     * 5xx response, all of which suggest the upstream is overloaded
+     * @return The new limit; values less than one are treated as one
+     */
+    public abstract int update(int limit, long rttNanos, int inFlight, boolean dropped);
+}
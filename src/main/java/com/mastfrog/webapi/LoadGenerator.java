@@ -0,0 +1,348 @@
+package com.mastfrog.webapi;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.LongFunction;
+
+/**
+ * Drives one or more calls at a fixed arrival rate, to see how an invoker
+ * and its upstream behave under a given load rather than how fast they can
+ * go. Invocations are started on a fixed schedule, whether or not earlier
+ * ones have completed, and each one's latency is measured from when the
+ * schedule said it should start, not from when it actually did; if the
+ * generator falls behind - because of a GC pause, or because invoking
+ * blocked - the time it spent behind counts against the invocations it
+ * delayed. This corrects for <i>coordinated omission</i>, where a load
+ * generator which waits for responses stops sending during a stall and so
+ * never measures the stall's effect on the requests that should have been
+ * sent during it. The uncorrected time from actually starting an invocation
+ * to its completion is reported too, as the service time.
+ * <p/>
+ * With several calls, invocations are shared between them in proportion to
+ * their weights. Invocations scheduled during the warmup are made but not
+ * counted.
+ *
+ * @author Tim Boudreau
+ */
+public final class LoadGenerator {
+
+    private final Invoker<?> invoker;
+    private final List<Target<?>> targets;
+    private final int[] schedule;
+    private final double rate;
+    private final long warmupNanos;
+    private final long durationNanos;
+    private final long drainNanos;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicBoolean ran = new AtomicBoolean();
+
+    private LoadGenerator(Builder builder) {
+        this.invoker = builder.invoker;
+        this.targets = new ArrayList<>(builder.calls.size());
+        for (CallSpec<?> spec : builder.calls) {
+            targets.add(spec.target(this));
+        }
+        this.rate = builder.rate;
+        this.warmupNanos = builder.warmup.toNanos();
+        this.durationNanos = builder.duration.toNanos();
+        this.drainNanos = builder.drain.toNanos();
+        int total = 0;
+        for (Target<?> t : targets) {
+            total += t.weight;
+        }
+        schedule = new int[total];
+        for (int i = 0, slot = 0; i < targets.size(); i++) {
+            for (int j = 0; j < targets.get(i).weight; j++) {
+                schedule[slot++] = i;
+            }
+        }
+    }
+
+    public static Builder builder(Invoker<?> invoker) {
+        return new Builder(invoker);
+    }
+
+    /**
+     * Run the load, blocking until it has finished and the invocations
+     * still outstanding have completed or the drain timeout has passed. A
+     * generator can only be run once.
+     *
+     * @return A report
+     * @throws InterruptedException If interrupted
+     */
+    public LoadReport run() throws InterruptedException {
+        if (!ran.compareAndSet(false, true)) {
+            throw new IllegalStateException("Already run");
+        }
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        long maxLag = 0;
+        for (long seq = 0;; seq++) {
+            long intended = start + (long) (seq * intervalNanos);
+            if (intended >= end) {
+                break;
+            }
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            if (intended >= measureFrom) {
+                maxLag = Math.max(maxLag, now - intended);
+            }
+            Target<?> target = targets.get(schedule[(int) (seq % schedule.length)]);
+            target.invoke(seq, intended, intended >= measureFrom);
+        }
+        long drainUntil = System.nanoTime() + drainNanos;
+        while (outstanding.get() > 0 && System.nanoTime() < drainUntil) {
+            Thread.sleep(10);
+        }
+        Map<Enum<?>, LoadReport.CallLoad> calls = new LinkedHashMap<>();
+        for (Target<?> t : targets) {
+            calls.put(t.call.get().id(), t.report(durationNanos));
+        }
+        return new LoadReport(rate, Duration.ofNanos(durationNanos), Duration.ofNanos(maxLag), calls);
+    }
+
+    private final class Target<T> {
+
+        private final WebCallEnum call;
+        private final Class<T> type;
+        private final int weight;
+        private final LongFunction<Object[]> arguments;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram serviceTime = new LatencyHistogram();
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder succeeded = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+        private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+        Target(WebCallEnum call, Class<T> type, int weight, LongFunction<Object[]> arguments) {
+            this.call = call;
+            this.type = type;
+            this.weight = weight;
+            this.arguments = arguments;
+        }
+
+        void invoke(long seq, long intended, boolean measured) {
+            Outcome outcome = new Outcome(intended, measured);
+            outstanding.incrementAndGet();
+            if (measured) {
+                sent.increment();
+            }
+            try {
+                // callAsync() completes its future for every terminal state,
+                // including timeouts, cancellation and the connection closing
+                invoker.callAsync(call, type, arguments.apply(seq)).whenComplete(outcome);
+            } catch (Exception | Error e) {
+                outcome.accept(null, e);
+            }
+        }
+
+        private void failed(String reason) {
+            failed.increment();
+            errors.computeIfAbsent(reason, r -> new LongAdder()).increment();
+        }
+
+        LoadReport.CallLoad report(long elapsedNanos) {
+            Map<String, Long> errorCounts = new TreeMap<>();
+            for (Map.Entry<String, LongAdder> e : errors.entrySet()) {
+                errorCounts.put(e.getKey(), e.getValue().sum());
+            }
+            long done = completed.sum();
+            return new LoadReport.CallLoad(call.get().name(), sent.sum(), succeeded.sum(),
+                    failed.sum(), sent.sum() - done, done * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos,
+                    latency.snapshot(), serviceTime.snapshot(), errorCounts);
+        }
+
+        private final class Outcome implements BiConsumer<T, Throwable> {
+
+            private final long intended;
+            private final long started = System.nanoTime();
+            private final boolean measured;
+            private final AtomicBoolean done = new AtomicBoolean();
+
+            Outcome(long intended, boolean measured) {
+                this.intended = intended;
+                this.measured = measured;
+            }
+
+            private boolean complete() {
+                if (!done.compareAndSet(false, true)) {
+                    return false;
+                }
+                outstanding.decrementAndGet();
+                if (measured) {
+                    completed.increment();
+                }
+                return measured;
+            }
+
+            @Override
+            public void accept(T object, Throwable err) {
+                if (!complete()) {
+                    return;
+                }
+                if (err == null) {
+                    long now = System.nanoTime();
+                    latency.record(now - intended);
+                    serviceTime.record(now - started);
+                    succeeded.increment();
+                } else {
+                    failed(describe(err instanceof CompletionException && err.getCause() != null
+                            ? err.getCause() : err));
+                }
+            }
+        }
+    }
+
+    private static String describe(Throwable err) {
+        if (err instanceof WebCallException) {
+            return "HTTP " + ((WebCallException) err).status().code();
+        } else if (err instanceof CallRejectedException) {
+            return "rejected " + ((CallRejectedException) err).reason();
+        } else if (err instanceof CallTimeoutException) {
+            return "timeout " + ((CallTimeoutException) err).kind();
+        }
+        return err.getClass().getSimpleName();
+    }
+
+    public static final class Builder {
+
+        private final Invoker<?> invoker;
+        private final List<CallSpec<?>> calls = new ArrayList<>();
+        private double rate;
+        private Duration warmup = Duration.ZERO;
+        private Duration duration;
+        private Duration drain = Duration.ofSeconds(30);
+
+        Builder(Invoker<?> invoker) {
+            this.invoker = invoker;
+        }
+
+        /**
+         * Add a call to make, with a weight of one.
+         *
+         * @param call The call
+         * @param type The type to interpret responses as
+         * @param arguments Creates the arguments for each invocation, given
+         * the invocation's sequence number
+         * @return this
+         */
+        public <T> Builder call(WebCallEnum call, Class<T> type, LongFunction<Object[]> arguments) {
+            return call(call, type, 1, arguments);
+        }
+
+        /**
+         * Add a call to make.
+         *
+         * @param call The call
+         * @param type The type to interpret responses as
+         * @param weight The call's share of invocations, relative to the
+         * other calls'
+         * @param arguments Creates the arguments for each invocation, given
+         * the invocation's sequence number
+         * @return this
+         */
+        public <T> Builder call(WebCallEnum call, Class<T> type, int weight, LongFunction<Object[]> arguments) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Weight must be positive: " + weight);
+            }
+            calls.add(new CallSpec<>(call, type, weight, arguments));
+            return this;
+        }
+
+        /**
+         * Set the number of invocations to start per second, across all
+         * calls.
+         *
+         * @param perSecond The rate
+         * @return this
+         */
+        public Builder rate(double perSecond) {
+            if (perSecond <= 0) {
+                throw new IllegalArgumentException("Rate must be positive: " + perSecond);
+            }
+            this.rate = perSecond;
+            return this;
+        }
+
+        /**
+         * Set how long to run for before counting results, to let the JIT,
+         * connection limits and adaptive limits settle.
+         *
+         * @param warmup The time
+         * @return this
+         */
+        public Builder warmup(Duration warmup) {
+            this.warmup = warmup;
+            return this;
+        }
+
+        /**
+         * Set how long to run for after the warmup.
+         *
+         * @param duration The time
+         * @return this
+         */
+        public Builder duration(Duration duration) {
+            this.duration = duration;
+            return this;
+        }
+
+        /**
+         * Set how long to wait for outstanding invocations once the run is
+         * over; any still outstanding are reported as incomplete.
+         *
+         * @param drain The time
+         * @return this
+         */
+        public Builder drainTimeout(Duration drain) {
+            this.drain = drain;
+            return this;
+        }
+
+        public LoadGenerator build() {
+            if (calls.isEmpty() || rate <= 0 || duration == null) {
+                throw new IllegalStateException("Calls, rate and duration must be set");
+            }
+            return new LoadGenerator(this);
+        }
+    }
+
+    private static final class CallSpec<T> {
+
+        private final WebCallEnum call;
+        private final Class<T> type;
+        private final int weight;
+        private final LongFunction<Object[]> arguments;
+
+        CallSpec(WebCallEnum call, Class<T> type, int weight, LongFunction<Object[]> arguments) {
+            this.call = call;
+            this.type = type;
+            this.weight = weight;
+            this.arguments = arguments;
+        }
+
+        Target<T> target(LoadGenerator generator) {
+            return generator.new Target<>(call, type, weight, arguments);
+        }
+    }
+}
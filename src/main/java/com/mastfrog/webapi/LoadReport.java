@@ -0,0 +1,169 @@
+package com.mastfrog.webapi;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What happened in a run of a <code>LoadGenerator</code>, excluding its
+ * warmup.
+ *
+ * @author Tim Boudreau
+ */
+public final class LoadReport {
+
+    private final double targetRate;
+    private final Duration elapsed;
+    private final Duration maxScheduleLag;
+    private final Map<Enum<?>, CallLoad> calls;
+
+    LoadReport(double targetRate, Duration elapsed, Duration maxScheduleLag, Map<Enum<?>, CallLoad> calls) {
+        this.targetRate = targetRate;
+        this.elapsed = elapsed;
+        this.maxScheduleLag = maxScheduleLag;
+        this.calls = Collections.unmodifiableMap(calls);
+    }
+
+    public double targetRate() {
+        return targetRate;
+    }
+
+    public Duration elapsed() {
+        return elapsed;
+    }
+
+    /**
+     * The furthest the generator fell behind its schedule when starting an
+     * invocation. If this is large, the generator itself could not keep up,
+     * and the latencies include time spent waiting for it.
+     *
+     * @return A duration
+     */
+    public Duration maxScheduleLag() {
+        return maxScheduleLag;
+    }
+
+    /**
+     * The results for each call, keyed by the call's id.
+     *
+     * @return A map
+     */
+    public Map<Enum<?>, CallLoad> calls() {
+        return calls;
+    }
+
+    public CallLoad call(WebCallEnum call) {
+        return calls.get(call.get().id());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Load at ").append(targetRate).append("/s for ")
+                .append(elapsed).append(", max schedule lag ")
+                .append(TimeUnit.NANOSECONDS.toMicros(maxScheduleLag.toNanos())).append("us");
+        for (CallLoad c : calls.values()) {
+            sb.append('\n').append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The results for one call. Latency is measured from when each
+     * invocation was scheduled to start, and service time from when it
+     * actually started; both only count successful invocations.
+     */
+    public static final class CallLoad {
+
+        private final String name;
+        private final long sent;
+        private final long succeeded;
+        private final long failed;
+        private final long incomplete;
+        private final double throughput;
+        private final LatencyHistogram.Snapshot latency;
+        private final LatencyHistogram.Snapshot serviceTime;
+        private final Map<String, Long> errors;
+
+        CallLoad(String name, long sent, long succeeded, long failed, long incomplete, double throughput,
+                LatencyHistogram.Snapshot latency, LatencyHistogram.Snapshot serviceTime, Map<String, Long> errors) {
+            this.name = name;
+            this.sent = sent;
+            this.succeeded = succeeded;
+            this.failed = failed;
+            this.incomplete = incomplete;
+            this.throughput = throughput;
+            this.latency = latency;
+            this.serviceTime = serviceTime;
+            this.errors = Collections.unmodifiableMap(errors);
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public long sent() {
+            return sent;
+        }
+
+        public long succeeded() {
+            return succeeded;
+        }
+
+        public long failed() {
+            return failed;
+        }
+
+        /**
+         * The number of invocations which had not completed when the drain
+         * timeout passed.
+         *
+         * @return A count
+         */
+        public long incomplete() {
+            return incomplete;
+        }
+
+        /**
+         * Completed invocations per second over the measured period.
+         *
+         * @return A rate
+         */
+        public double throughput() {
+            return throughput;
+        }
+
+        /**
+         * Latency corrected for coordinated omission.
+         *
+         * @return A snapshot
+         */
+        public LatencyHistogram.Snapshot latency() {
+            return latency;
+        }
+
+        public LatencyHistogram.Snapshot serviceTime() {
+            return serviceTime;
+        }
+
+        /**
+         * Failures by cause - such as <code>HTTP 503</code>,
+         * <code>timeout TOTAL</code> or <code>rejected QUEUE_FULL</code>, or
+         * the exception's type.
+         *
+         * @return A map of causes to counts
+         */
+        public Map<String, Long> errors() {
+            return errors;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": sent " + sent + ", succeeded " + succeeded + ", failed " + failed
+                    + (incomplete > 0 ? ", incomplete " + incomplete : "")
+                    + String.format(", %.1f/s", throughput)
+                    + "\n  latency " + latency + "\n  service time " + serviceTime
+                    + (errors.isEmpty() ? "" : "\n  errors " + errors);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.url.Path;
+import com.mastfrog.util.preconditions.Exceptions;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A path template precompiled into literal chunks and typed slots, so that
+ * building the path for a call is a series of appends rather than a search and
+ * replace over the template. A slot is created for the first occurrence of
+ * each <code>{{type}}</code> token whose name matches the lower-cased simple
+ * name of one of the call's required types; any other text is literal.
+ *
+ * @author Tim Boudreau
+ */
+final class PathTemplate {
+
+    private final String template;
+    private final String[] literals;
+    private final String[] tokens;
+    private final Class<?>[] slotTypes;
+    private final String basePrefix;
+    private volatile PathTemplate lastMerged;
+
+    private PathTemplate(String template, String[] literals, String[] tokens, Class<?>[] slotTypes, String basePrefix) {
+        this.template = template;
+        this.literals = literals;
+        this.tokens = tokens;
+        this.slotTypes = slotTypes;
+        this.basePrefix = basePrefix;
+    }
+
+    static PathTemplate compile(String template, Class<?>... requiredTypes) {
+        List<Integer> starts = new ArrayList<>(requiredTypes.length);
+        List<Class<?>> types = new ArrayList<>(requiredTypes.length);
+        for (Class<?> type : requiredTypes) {
+            String token = token(type);
+            int ix = template.indexOf(token);
+            if (ix >= 0) {
+                // Keep slots in template order, skipping overlapping matches
+                int pos = 0;
+                while (pos < starts.size() && starts.get(pos) < ix) {
+                    pos++;
+                }
+                if (pos < starts.size() && starts.get(pos) == ix) {
+                    continue;
+                }
+                starts.add(pos, ix);
+                types.add(pos, type);
+            }
+        }
+        String[] literals = new String[types.size() + 1];
+        String[] tokens = new String[types.size()];
+        int last = 0;
+        for (int i = 0; i < types.size(); i++) {
+            int start = starts.get(i);
+            tokens[i] = token(types.get(i));
+            literals[i] = template.substring(last, start);
+            last = start + tokens[i].length();
+        }
+        literals[types.size()] = template.substring(last);
+        return new PathTemplate(template, literals, tokens,
+                types.toArray(new Class<?>[types.size()]), "");
+    }
+
+    static PathTemplate of(WebCall call) {
+        if (call instanceof WebCallBuilder.WebCallImpl) {
+            return ((WebCallBuilder.WebCallImpl) call).template();
+        }
+        return compile(call.urlTemplate(), call.requiredTypes());
+    }
+
+    private static String token(Class<?> type) {
+        return "{{" + type.getSimpleName().toLowerCase() + "}}";
+    }
+
+    static String basePrefix(Path base) {
+        if (base == null) {
+            return "";
+        }
+        String result = base.toString();
+        int start = 0;
+        while (start < result.length() && result.charAt(start) == '/') {
+            start++;
+        }
+        result = result.substring(start);
+        if (!result.isEmpty() && result.charAt(result.length() - 1) != '/') {
+            result += '/';
+        }
+        return result;
+    }
+
+    /**
+     * Get a copy of this template with the passed base path prefix merged
+     * into its first literal chunk, so the result renders the full path
+     * without leading slash.  The last result is cached, since in practice
+     * a call is used against a single base URL.
+     *
+     * @param prefix A prefix as returned by basePrefix()
+     * @return A template
+     */
+    PathTemplate withBase(String prefix) {
+        PathTemplate result = lastMerged;
+        if (result != null && result.basePrefix.equals(prefix)) {
+            return result;
+        }
+        String[] newLiterals = literals.clone();
+        String first = newLiterals[0];
+        int start = 0;
+        while (start < first.length() && first.charAt(start) == '/') {
+            start++;
+        }
+        newLiterals[0] = prefix + first.substring(start);
+        result = new PathTemplate(template, newLiterals, tokens, slotTypes, prefix);
+        lastMerged = result;
+        return result;
+    }
+
+    String template() {
+        return template;
+    }
+
+    int slotCount() {
+        return slotTypes.length;
+    }
+
+    Class<?> slotType(int slot) {
+        return slotTypes[slot];
+    }
+
+    /**
+     * Render the template, appending to the passed StringBuilder.
+     *
+     * @param into The string builder
+     * @param values The value for each slot, in slot order; if a value is
+     * null, the original token is left in place
+     */
+    void appendTo(StringBuilder into, Object[] values) {
+        for (int i = 0; i < slotTypes.length; i++) {
+            into.append(literals[i]);
+            Object val = values[i];
+            if (val == null) {
+                into.append(tokens[i]);
+            } else {
+                appendEncoded(val.toString(), into);
+            }
+        }
+        into.append(literals[slotTypes.length]);
+    }
+
+    static void appendEncoded(String value, StringBuilder into) {
+        // URLEncoder passes these through unchanged, and they are the
+        // overwhelmingly common case for ids
+        int max = value.length();
+        for (int i = 0; i < max; i++) {
+            char c = value.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9') || c == '-' || c == '_'
+                    || c == '.' || c == '*')) {
+                try {
+                    into.append(URLEncoder.encode(value, "UTF-8"));
+                } catch (UnsupportedEncodingException ex) {
+                    Exceptions.chuck(ex);
+                }
+                return;
+            }
+        }
+        into.append(value);
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+}
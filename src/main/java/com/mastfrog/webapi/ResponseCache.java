@@ -0,0 +1,424 @@
+package com.mastfrog.webapi;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.mastfrog.acteur.headers.HeaderValueType;
+import com.mastfrog.acteur.headers.Headers;
+import com.mastfrog.netty.http.client.HttpRequestBuilder;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Holds the interpreted results of GET calls marked
+ * <code>cacheable()</code>, keyed by the request URL, the Accept header,
+ * credentials and the result type. Entries are served without a request
+ * while the response's <code>Cache-Control: max-age</code> says they are
+ * fresh; after that they are revalidated with <code>If-None-Match</code> and
+ * <code>If-Modified-Since</code>, and a 304 response is answered with the
+ * cached object, without decoding anything.
+ * <p/>
+ * The cache is bounded both by its number of entries and by the total size
+ * of the response bodies they were decoded from, a rough measure of the
+ * memory the decoded objects use; a response bigger than the whole bound is
+ * not cached. Lookups do not lock: entries live in a concurrent map, and
+ * each records when it was last used. Once the cache is full, whichever
+ * thread notices evicts the least recently used eighth of it in one pass
+ * while others carry on, so the cache may briefly exceed its bounds, and
+ * recency is only as exact as the clock.
+ * <p/>
+ * Cached objects are handed to every caller of the same URL, so they should
+ * be treated as immutable. Results which are views of the response body -
+ * ByteBuf, ByteBuffer, InputStream and TextView - are never cached.
+ * Headers added by decorators are not part of the key, and the client does
+ * not expose them, so a response with a <code>Vary</code> header naming
+ * anything but <code>Accept</code>, <code>Accept-Encoding</code> or
+ * <code>Authorization</code>, which are accounted for, is not cached.
+ * <p/>
+ * Bind an instance to change the bounds; by default up to 1024 entries
+ * decoded from up to 32Mb of responses are kept.
+ *
+ * @author Tim Boudreau
+ */
+@Singleton
+public final class ResponseCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+    public static final long DEFAULT_MAX_BYTES = 32 * 1024 * 1024;
+    private static final HeaderValueType<CharSequence> IF_MODIFIED_SINCE
+            = Headers.header(HttpHeaderNames.IF_MODIFIED_SINCE);
+    private final int maxEntries;
+    private final int evictTo;
+    private final long maxBytes;
+    private final long evictBytesTo;
+    private final AtomicLong bytes = new AtomicLong();
+    private final ConcurrentHashMap<String, Entry> entries;
+    private final ReentrantLock evicting = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @Inject
+    public ResponseCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public ResponseCache(int maxEntries) {
+        this(maxEntries, DEFAULT_MAX_BYTES);
+    }
+
+    public ResponseCache(int maxEntries, long maxBytes) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries must be positive: " + maxEntries);
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Max bytes must be positive: " + maxBytes);
+        }
+        this.maxEntries = maxEntries;
+        this.evictTo = maxEntries - maxEntries / 8;
+        this.maxBytes = maxBytes;
+        this.evictBytesTo = maxBytes - maxBytes / 8;
+        entries = new ConcurrentHashMap<>(Math.min(maxEntries, 256));
+    }
+
+    /**
+     * The number of calls answered from the cache without making a request.
+     *
+     * @return A count
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * The number of calls answered from the cache after the server responded
+     * 304 Not Modified.
+     *
+     * @return A count
+     */
+    public long revalidations() {
+        return revalidations.sum();
+    }
+
+    /**
+     * The number of calls for which there was no entry, or the server sent a
+     * new response to revalidation.
+     *
+     * @return A count
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * The number of entries removed to make room for newer ones.
+     *
+     * @return A count
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * The total size of the response bodies the cached objects were decoded
+     * from.
+     *
+     * @return A number of bytes
+     */
+    public long bytes() {
+        return bytes.get();
+    }
+
+    public void clear() {
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            remove(e.getKey(), e.getValue());
+        }
+    }
+
+    private Entry get(String key) {
+        Entry result = entries.get(key);
+        if (result != null) {
+            result.lastUsed = System.nanoTime();
+        }
+        return result;
+    }
+
+    private void put(String key, Entry entry) {
+        Entry old = entries.put(key, entry);
+        long total = bytes.addAndGet(old == null ? entry.bytes : entry.bytes - old.bytes);
+        if (entries.size() > maxEntries || total > maxBytes) {
+            evict();
+        }
+    }
+
+    private boolean remove(String key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            bytes.addAndGet(-entry.bytes);
+            return true;
+        }
+        return false;
+    }
+
+    private void evict() {
+        if (!evicting.tryLock()) {
+            // Another thread is already making room
+            return;
+        }
+        try {
+            if (entries.size() <= evictTo && bytes.get() <= evictBytesTo) {
+                return;
+            }
+            // Entries are used while this runs, so sort a snapshot of when
+            List<Map.Entry<String, Entry>> all = new ArrayList<>(entries.entrySet());
+            long[] used = new long[all.size()];
+            Integer[] order = new Integer[used.length];
+            for (int i = 0; i < used.length; i++) {
+                used[i] = all.get(i).getValue().lastUsed;
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(used[a], used[b]));
+            for (int i = 0; i < order.length
+                    && (entries.size() > evictTo || bytes.get() > evictBytesTo); i++) {
+                Map.Entry<String, Entry> e = all.get(order[i]);
+                if (remove(e.getKey(), e.getValue())) {
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evicting.unlock();
+        }
+    }
+
+    static boolean isCacheable(Class<?> type) {
+        return !DefaultResponseInterceptor.isView(type);
+    }
+
+    /**
+     * Start a lookup for one request.
+     *
+     * @param key The cache key
+     * @return A lookup
+     */
+    Lookup lookup(String key) {
+        Entry entry = get(key);
+        if (entry == null) {
+            misses.increment();
+        }
+        return new Lookup(key, entry);
+    }
+
+    /**
+     * The cache state of one request.
+     */
+    final class Lookup {
+
+        private final String key;
+        private final Entry entry;
+
+        Lookup(String key, Entry entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+
+        /**
+         * Get the cached value if it is still fresh, in which case no request
+         * need be made.
+         *
+         * @return The value, or null
+         */
+        Object fresh() {
+            if (entry != null && entry.isFresh()) {
+                hits.increment();
+                return entry.value;
+            }
+            return null;
+        }
+
+        /**
+         * Add conditional headers to a request for a stale entry.
+         *
+         * @param reqb The request
+         */
+        void addValidators(HttpRequestBuilder reqb) {
+            if (entry != null) {
+                if (entry.etag != null) {
+                    reqb.addHeader(Headers.IF_NONE_MATCH, entry.etag);
+                }
+                if (entry.lastModified != null) {
+                    reqb.addHeader(IF_MODIFIED_SINCE, entry.lastModified);
+                }
+            }
+        }
+
+        /**
+         * Whether a 304 response can be answered from the cache.
+         *
+         * @return true if there is an entry
+         */
+        boolean canRevalidate() {
+            return entry != null;
+        }
+
+        /**
+         * Handle a 304 response, refreshing the entry from its headers.
+         *
+         * @param headers The 304's headers
+         * @return The cached value
+         */
+        Object revalidated(HttpHeaders headers) {
+            revalidations.increment();
+            long maxAge = maxAge(headers);
+            String etag = headers.get(HttpHeaderNames.ETAG);
+            put(key, new Entry(entry.value, etag == null ? entry.etag : etag, entry.lastModified,
+                    maxAge < 0 ? entry.maxAgeNanos : maxAge, entry.bytes));
+            return entry.value;
+        }
+
+        /**
+         * Cache the result of a 2xx response if its headers allow it.
+         *
+         * @param headers The response headers
+         * @param value The interpreted result
+         * @param bytes The size of the response body it was decoded from
+         */
+        void store(HttpHeaders headers, Object value, int bytes) {
+            if (entry != null) {
+                misses.increment();
+            }
+            String cacheControl = headers.get(HttpHeaderNames.CACHE_CONTROL);
+            if (value == null || bytes > maxBytes || !isKeyed(headers.getAll(HttpHeaderNames.VARY))
+                    || (cacheControl != null && directive(cacheControl, "no-store") != null)) {
+                if (entry != null) {
+                    remove(key, entry);
+                }
+                return;
+            }
+            long maxAge = maxAge(headers);
+            String etag = headers.get(HttpHeaderNames.ETAG);
+            String lastModified = headers.get(HttpHeaderNames.LAST_MODIFIED);
+            if (maxAge > 0 || etag != null || lastModified != null) {
+                put(key, new Entry(value, etag, lastModified, Math.max(0, maxAge), bytes));
+            } else if (entry != null) {
+                remove(key, entry);
+            }
+        }
+    }
+
+    /**
+     * Whether every header a response varies on is part of the cache key, or
+     * the same for every request the client sends.
+     *
+     * @param vary The values of the response's Vary headers
+     * @return true if the response can be cached under its key
+     */
+    static boolean isKeyed(List<String> vary) {
+        for (String value : vary) {
+            for (String name : value.split(",")) {
+                name = name.trim();
+                if (!name.isEmpty() && !HttpHeaderNames.ACCEPT.contentEqualsIgnoreCase(name)
+                        && !HttpHeaderNames.ACCEPT_ENCODING.contentEqualsIgnoreCase(name)
+                        && !HttpHeaderNames.AUTHORIZATION.contentEqualsIgnoreCase(name)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the remaining freshness lifetime of a response from its
+     * Cache-Control and Age headers.
+     *
+     * @param headers The headers
+     * @return The lifetime in nanoseconds, 0 if the response must always be
+     * revalidated, or -1 if the headers do not say
+     */
+    static long maxAge(HttpHeaders headers) {
+        String cacheControl = headers.get(HttpHeaderNames.CACHE_CONTROL);
+        if (cacheControl == null) {
+            return -1;
+        }
+        if (directive(cacheControl, "no-cache") != null) {
+            return 0;
+        }
+        String value = directive(cacheControl, "max-age");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            long seconds = Long.parseLong(value);
+            String age = headers.get(HttpHeaderNames.AGE);
+            if (age != null) {
+                seconds -= Long.parseLong(age.trim());
+            }
+            return TimeUnit.SECONDS.toNanos(Math.max(0, seconds));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Find a directive in a Cache-Control header.
+     *
+     * @param cacheControl The header value
+     * @param name The directive name
+     * @return Its value, the empty string if it has none, or null if it is
+     * not present
+     */
+    static String directive(String cacheControl, String name) {
+        for (String part : cacheControl.split(",")) {
+            part = part.trim();
+            int eq = part.indexOf('=');
+            String dirName = eq < 0 ? part : part.substring(0, eq).trim();
+            if (dirName.equalsIgnoreCase(name)) {
+                if (eq < 0) {
+                    return "";
+                }
+                String value = part.substring(eq + 1).trim();
+                if (value.length() > 1 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static final class Entry {
+
+        private final Object value;
+        private final String etag;
+        private final String lastModified;
+        private final long maxAgeNanos;
+        private final long freshUntil;
+        private final int bytes;
+        private volatile long lastUsed;
+
+        Entry(Object value, String etag, String lastModified, long maxAgeNanos, int bytes) {
+            this.value = value;
+            this.bytes = bytes;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.maxAgeNanos = maxAgeNanos;
+            this.lastUsed = System.nanoTime();
+            this.freshUntil = lastUsed + maxAgeNanos;
+        }
+
+        boolean isFresh() {
+            return maxAgeNanos > 0 && System.nanoTime() - freshUntil < 0;
+        }
+    }
+}
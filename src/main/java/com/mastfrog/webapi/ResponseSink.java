@@ -0,0 +1,95 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.netty.http.client.ResponseFuture;
+import com.mastfrog.netty.http.client.State;
+import com.mastfrog.util.thread.Receiver;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+/**
+ * Receives the outcome of one invocation of a call made through
+ * <code>callAsync()</code> or <code>invoke()</code>; AsyncListener completes
+ * it.
+ *
+ * @author Tim Boudreau
+ */
+interface ResponseSink<T> {
+
+    Class<T> type();
+
+    boolean complete(T value);
+
+    boolean completeExceptionally(Throwable thrown);
+
+    boolean isDone();
+
+    /**
+     * Called with the request once it has been sent, which may be after the
+     * call was invoked if it had to wait for the concurrency limiter.
+     *
+     * @param response The request, or null if it was not sent
+     */
+    void attach(ResponseFuture response);
+
+    /**
+     * Called if the request was cancelled by something other than this sink.
+     */
+    void cancelled();
+
+    /**
+     * Relays every event of the request to the call's shared listener; the
+     * HTTP client needs some per-request object to tell requests apart.
+     *
+     * @param listener The listener for the call
+     * @param lookup The cache state of the request, or null if it is not
+     * cacheable
+     * @param ctx The invocation's context
+     * @return A receiver
+     */
+    default Receiver<State<?>> events(AsyncListener listener, ResponseCache.Lookup lookup, CallContext ctx) {
+        return new Receiver<State<?>>() {
+            @Override
+            public void receive(State<?> state) {
+                listener.onEvent(ResponseSink.this, state, lookup, ctx);
+            }
+        };
+    }
+
+    /**
+     * Adapts this sink to a callback, for calls which stream their response.
+     *
+     * @return A callback
+     */
+    default Callback<T> asCallback() {
+        return new Callback<T>(type()) {
+            private HttpHeaders headers;
+
+            @Override
+            public void success(T object) {
+                complete(object);
+            }
+
+            @Override
+            public void fail(HttpResponseStatus status, ByteBuf bytes) {
+                completeExceptionally(new WebCallException(status, headers, bytes));
+            }
+
+            @Override
+            public void error(Throwable err) {
+                completeExceptionally(err);
+            }
+
+            @Override
+            public void responseReceived(HttpResponseStatus status, HttpHeaders headers) {
+                this.headers = headers;
+            }
+
+            @Override
+            public void notModified(HttpHeaders headers) {
+                // Nothing else will complete the sink
+                completeExceptionally(new WebCallException(HttpResponseStatus.NOT_MODIFIED, headers, null));
+            }
+        };
+    }
+}
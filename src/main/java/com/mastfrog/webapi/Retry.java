@@ -0,0 +1,222 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.netty.http.client.HttpRequestBuilder;
+import com.mastfrog.netty.http.client.ResponseFuture;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * One invocation of a call which may be retried. Each attempt reports to its
+ * own callback or sink, which passes the outcome on to the caller's unless
+ * it is a failure the policy and budget allow retrying; in that case the
+ * next attempt is scheduled on the timeout timer, after a backoff, and sent
+ * with a fresh request from a worker thread.
+ * <p/>
+ * A sink's retries are abandoned once the caller's future is done, so
+ * cancelling it stops them; a callback has no such signal, so retries of a
+ * callback are only stopped by running out of attempts or budget.
+ *
+ * @author Tim Boudreau
+ */
+final class Retry {
+
+    private final RetryPolicy policy;
+    private final RetryBudget budget;
+    private final TimeoutTimer timer;
+    private final String key;
+    private volatile int attempts = 1;
+
+    Retry(RetryPolicy policy, RetryBudget budget, TimeoutTimer timer) {
+        this.policy = policy;
+        this.budget = budget;
+        this.timer = timer;
+        this.key = policy.idempotencyHeader() == null ? null : UUID.randomUUID().toString();
+        budget.deposit();
+    }
+
+    /**
+     * Add the idempotency key, if any, to the request for an attempt.
+     *
+     * @param reqb The request
+     */
+    void decorate(HttpRequestBuilder reqb) {
+        if (key != null) {
+            reqb.addHeader(policy.idempotencyHeader(), key);
+        }
+    }
+
+    private boolean mayRetry() {
+        return attempts < policy.maxAttempts() && budget.withdraw();
+    }
+
+    private boolean retries(HttpResponseStatus status) {
+        return policy.retries(status) && mayRetry();
+    }
+
+    private boolean retries(Throwable thrown) {
+        return policy.retries(thrown) && mayRetry();
+    }
+
+    private <C> void schedule(Attempt<C> attempt, C next, BooleanSupplier abandoned, Consumer<Throwable> onError) {
+        long delay = policy.delayNanos(attempts++);
+        timer.defer(() -> {
+            if (abandoned.getAsBoolean()) {
+                return;
+            }
+            try {
+                attempt.send(next);
+            } catch (Exception | Error e) {
+                onError.accept(e);
+            }
+        }, delay);
+    }
+
+    /**
+     * Wrap a callback for the first attempt.
+     *
+     * @param target The caller's callback
+     * @param attempt Sends an attempt reporting to the callback passed to it
+     * @return A callback
+     */
+    <T> Callback<T> callback(Callback<T> target, Attempt<Callback<T>> attempt) {
+        return new AttemptCallback<>(target, attempt);
+    }
+
+    /**
+     * Wrap a sink for the first attempt.
+     *
+     * @param target The caller's sink
+     * @param attempt Sends an attempt reporting to the sink passed to it
+     * @return A sink
+     */
+    <T> ResponseSink<T> sink(ResponseSink<T> target, Attempt<ResponseSink<T>> attempt) {
+        return new AttemptSink<>(target, attempt);
+    }
+
+    interface Attempt<C> {
+
+        void send(C target) throws Exception;
+    }
+
+    private final class AttemptCallback<T> extends Callback<T> {
+
+        private final Callback<T> target;
+        private final Attempt<Callback<T>> attempt;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean retrying;
+
+        AttemptCallback(Callback<T> target, Attempt<Callback<T>> attempt) {
+            super(target.type());
+            this.target = target;
+            this.attempt = attempt;
+        }
+
+        private void retry() {
+            if (scheduled.compareAndSet(false, true)) {
+                schedule(attempt, new AttemptCallback<>(target, attempt), () -> false, target::error);
+            }
+        }
+
+        @Override
+        public void responseReceived(HttpResponseStatus status, HttpHeaders headers) {
+            if (!retrying && retries(status)) {
+                retrying = true;
+            } else if (!retrying) {
+                target.responseReceived(status, headers);
+            }
+        }
+
+        @Override
+        public void success(T object) {
+            if (!retrying) {
+                target.success(object);
+            }
+        }
+
+        @Override
+        public void fail(HttpResponseStatus status, ByteBuf bytes) {
+            if (retrying) {
+                retry();
+            } else {
+                target.fail(status, bytes);
+            }
+        }
+
+        @Override
+        public void error(Throwable err) {
+            if (retrying) {
+                retry();
+            } else if (retries(err)) {
+                retrying = true;
+                retry();
+            } else {
+                target.error(err);
+            }
+        }
+
+        @Override
+        public void notModified(HttpHeaders headers) {
+            if (!retrying) {
+                target.notModified(headers);
+            }
+        }
+    }
+
+    private final class AttemptSink<T> implements ResponseSink<T> {
+
+        private final ResponseSink<T> target;
+        private final Attempt<ResponseSink<T>> attempt;
+        private volatile boolean retrying;
+
+        AttemptSink(ResponseSink<T> target, Attempt<ResponseSink<T>> attempt) {
+            this.target = target;
+            this.attempt = attempt;
+        }
+
+        @Override
+        public Class<T> type() {
+            return target.type();
+        }
+
+        @Override
+        public boolean complete(T value) {
+            return !retrying && target.complete(value);
+        }
+
+        @Override
+        public synchronized boolean completeExceptionally(Throwable thrown) {
+            if (retrying || target.isDone()) {
+                return false;
+            }
+            if (retries(thrown)) {
+                retrying = true;
+                // The caller may cancel while the retry is pending
+                schedule(attempt, new AttemptSink<>(target, attempt), target::isDone, target::completeExceptionally);
+                return true;
+            }
+            return target.completeExceptionally(thrown);
+        }
+
+        @Override
+        public boolean isDone() {
+            return retrying || target.isDone();
+        }
+
+        @Override
+        public void attach(ResponseFuture response) {
+            target.attach(response);
+        }
+
+        @Override
+        public void cancelled() {
+            if (!retrying) {
+                target.cancelled();
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.mastfrog.webapi;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits how many retries an invoker makes, so that when an upstream is
+ * failing, retries cannot multiply the load on it. Each invocation of a call
+ * which may be retried deposits a fraction of a token, and each retry
+ * withdraws a whole one; a trickle of tokens also accrues over time, so a
+ * client which makes few calls can still retry. Tokens do not accumulate
+ * beyond a maximum, so a long quiet period cannot bank a burst of retries.
+ * <p/>
+ * One budget is shared by every call made through an invoker; bind a
+ * different one with <code>WebApiModule.withRetryBudget()</code>.
+ *
+ * @author Tim Boudreau
+ */
+@Singleton
+public final class RetryBudget {
+
+    private final long ratio;
+    private final double unitsPerNano;
+    private final Tokens tokens;
+    private final AtomicLong lastRefill = new AtomicLong(System.nanoTime());
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    /**
+     * Create a budget which allows retries of a fifth of calls, plus ten per
+     * second, accumulating at most a hundred.
+     */
+    @Inject
+    public RetryBudget() {
+        this(0.2, 10, 100);
+    }
+
+    /**
+     * Create a budget.
+     *
+     * @param ratio The number of retries each invocation earns, such as 0.1
+     * for one retry per ten invocations
+     * @param minPerSecond The number of retries allowed per second
+     * regardless of the number of invocations
+     * @param maxTokens The most retries which can be banked
+     */
+    public RetryBudget(double ratio, double minPerSecond, int maxTokens) {
+        if (ratio < 0 || minPerSecond < 0 || maxTokens < 1) {
+            throw new IllegalArgumentException("Bad budget: ratio " + ratio
+                    + " per second " + minPerSecond + " max " + maxTokens);
+        }
+        this.ratio = Tokens.units(ratio);
+        this.unitsPerNano = Tokens.units(minPerSecond) / 1_000_000_000D;
+        this.tokens = new Tokens(maxTokens, minPerSecond);
+    }
+
+    /**
+     * Called once for each invocation of a call which may be retried.
+     */
+    void deposit() {
+        tokens.deposit(ratio);
+    }
+
+    /**
+     * Take a token for a retry, if one is available.
+     *
+     * @return true if the retry may be made
+     */
+    boolean withdraw() {
+        refill();
+        if (tokens.withdraw()) {
+            retries.increment();
+            return true;
+        }
+        exhausted.increment();
+        return false;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        long last = lastRefill.get();
+        long earned = (long) ((now - last) * unitsPerNano);
+        // Only the thread which moves the refill time on credits the time
+        // since it, and a fraction of a unit is left to accrue
+        if (earned > 0 && lastRefill.compareAndSet(last, now)) {
+            tokens.deposit(earned);
+        }
+    }
+
+    /**
+     * The number of retries the budget has allowed.
+     *
+     * @return A count
+     */
+    public long retries() {
+        return retries.sum();
+    }
+
+    /**
+     * The number of retries which were not made because the budget was
+     * exhausted.
+     *
+     * @return A count
+     */
+    public long exhausted() {
+        return exhausted.sum();
+    }
+}
@@ -0,0 +1,93 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.acteur.headers.HeaderValueType;
+import com.mastfrog.acteur.headers.Headers;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Which failures of a call are retried, how many times, and how long to wait
+ * before each retry, as configured with <code>WebCallBuilder.retry()</code>.
+ *
+ * @author Tim Boudreau
+ */
+final class RetryPolicy {
+
+    private final int maxAttempts;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final int[] statuses;
+    private final Class<? extends Throwable>[] exceptions;
+    private final HeaderValueType<CharSequence> idempotencyHeader;
+
+    RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay, int[] statuses,
+            Class<? extends Throwable>[] exceptions, String idempotencyHeader) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayNanos = baseDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.statuses = statuses;
+        this.exceptions = exceptions;
+        this.idempotencyHeader = idempotencyHeader == null ? null : Headers.header(idempotencyHeader);
+    }
+
+    int maxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * The header to send a key identifying the invocation in,
+     * so the server can recognize a retry of a request it already processed.
+     *
+     * @return A header, or null
+     */
+    HeaderValueType<CharSequence> idempotencyHeader() {
+        return idempotencyHeader;
+    }
+
+    boolean retries(HttpResponseStatus status) {
+        int code = status.code();
+        for (int s : statuses) {
+            if (s == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean retries(Throwable thrown) {
+        if (thrown instanceof CallTimeoutException
+                && ((CallTimeoutException) thrown).kind() == CallTimeoutException.Kind.DEADLINE) {
+            // Another attempt would have no time either
+            return false;
+        }
+        if (thrown instanceof WebCallException) {
+            return retries(((WebCallException) thrown).status());
+        }
+        for (Class<? extends Throwable> type : exceptions) {
+            // A rejection by the concurrency limiter means the client is
+            // already overloaded, so only retry it if asked to explicitly
+            if (type.isInstance(thrown) && (type == CallRejectedException.class
+                    || !(thrown instanceof CallRejectedException))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The delay before a retry: a random time, between zero and the base
+     * delay doubled for each failed attempt, capped at the maximum delay.
+     *
+     * @param failedAttempts The number of attempts made so far
+     * @return A delay in nanoseconds
+     */
+    long delayNanos(int failedAttempts) {
+        long ceiling = baseDelayNanos;
+        for (int i = 1; i < failedAttempts && ceiling < maxDelayNanos; i++) {
+            ceiling *= 2;
+        }
+        ceiling = Math.min(ceiling, maxDelayNanos);
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+}
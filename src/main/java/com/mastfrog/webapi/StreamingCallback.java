@@ -0,0 +1,105 @@
+package com.mastfrog.webapi;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+/**
+ * Thing which is called back with each element of a response whose body is a
+ * JSON array, as the element is decoded, so that arbitrarily large arrays can
+ * be processed without holding the whole response in memory. Pass one to
+ * <code>Invoker.stream()</code>.
+ * <p/>
+ * Elements are only delivered while there is outstanding demand; by default
+ * <code>onStart()</code> requests an unbounded number of elements. A slow
+ * consumer can instead request a few elements at a time - when demand runs
+ * out, the invoker stops reading from the connection until more is requested.
+ *
+ * @author Tim Boudreau
+ */
+public abstract class StreamingCallback<T> {
+
+    private final Class<T> type;
+
+    public StreamingCallback(Class<T> type) {
+        this.type = type;
+    }
+
+    /**
+     * Called when the headers of a successful response have arrived, before
+     * any elements are delivered. The default implementation requests an
+     * unbounded number of elements.
+     *
+     * @param demand Used to request more elements, or cancel the response
+     */
+    public void onStart(Demand demand) {
+        demand.request(Long.MAX_VALUE);
+    }
+
+    /**
+     * Called with each element of the array, in order.
+     *
+     * @param element The element
+     */
+    public abstract void onElement(T element);
+
+    /**
+     * Called once all elements have been delivered.
+     */
+    public abstract void onComplete();
+
+    /**
+     * Called if there is a response code > 399, with the raw response bytes
+     *
+     * @param status The status
+     * @param bytes The bytes
+     */
+    public abstract void fail(HttpResponseStatus status, ByteBuf bytes);
+
+    /**
+     * Called if an exception is thrown at any point in processing the
+     * request, including by <code>onElement()</code>, after which no further
+     * elements are delivered
+     *
+     * @param err The exception
+     */
+    public void error(Throwable err) {
+        err.printStackTrace();
+    }
+
+    /**
+     * Called when the response headers are received, before the body arrives
+     *
+     * @param status The status
+     * @param headers The headers
+     */
+    public void responseReceived(HttpResponseStatus status, HttpHeaders headers) {
+    }
+
+    public final Class<T> type() {
+        return type;
+    }
+
+    /**
+     * Controls how many elements may be delivered to a StreamingCallback.
+     * Methods may be called from any thread, including from within
+     * <code>onElement()</code>.
+     */
+    public static abstract class Demand {
+
+        /**
+         * Allow <i>n</i> more elements to be delivered. Long.MAX_VALUE means
+         * there is no limit.
+         *
+         * @param n The number of elements, greater than zero
+         */
+        public abstract void request(long n);
+
+        /**
+         * Stop delivering elements and close the connection. Neither
+         * <code>onComplete()</code> nor <code>error()</code> will be called
+         * afterwards.
+         */
+        public abstract void cancel();
+    }
+}
@@ -0,0 +1,86 @@
+package com.mastfrog.webapi;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+/**
+ * An interpreter which consumes the response body chunk by chunk as it
+ * arrives, rather than having the whole response aggregated into memory first.
+ * Pass a subclass to <code>WebCallBuilder.interpreter()</code> to use it for a
+ * call; the invoker will then tell the HTTP client not to aggregate the
+ * response, and will call <code>start()</code> when the headers of a
+ * successful response arrive, feed each chunk to the returned
+ * <code>ContentConsumer</code>, and pass the result of <code>finish()</code>
+ * to the callback when the last chunk has been received.
+ * <p/>
+ * Bodies of unsuccessful responses are still collected and passed to
+ * <code>Callback.fail()</code> as before.
+ *
+ * @author Tim Boudreau
+ */
+public abstract class StreamingInterpreter extends Interpreter {
+
+    /**
+     * Begin interpreting a response whose headers have just arrived.
+     *
+     * @param <T> The result type
+     * @param status The response status
+     * @param headers The response headers
+     * @param as The result type
+     * @return A consumer which will be fed the response body
+     * @throws Exception If something goes wrong
+     */
+    public abstract <T> ContentConsumer<T> start(HttpResponseStatus status,
+            HttpHeaders headers, Class<T> as) throws Exception;
+
+    @Override
+    public <T> T interpret(HttpResponseStatus status, HttpHeaders headers,
+            ByteBuf contents, Class<T> as) throws Exception {
+        ContentConsumer<T> consumer = start(status, headers, as);
+        try {
+            if (contents.isReadable()) {
+                consumer.chunk(contents.duplicate());
+            }
+            return consumer.finish();
+        } catch (Exception | Error e) {
+            consumer.abort(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Consumes the chunks of one response.
+     *
+     * @param <T> The result type
+     */
+    public static abstract class ContentConsumer<T> {
+
+        /**
+         * Called with each chunk of content as it arrives. The buffer belongs
+         * to the HTTP client and is only valid for the duration of this call,
+         * so anything which needs to be kept must be copied out of it.
+         *
+         * @param chunk A chunk of the response body
+         * @throws Exception If the content cannot be processed
+         */
+        public abstract void chunk(ByteBuf chunk) throws Exception;
+
+        /**
+         * Called once the last chunk has been received, to produce the result.
+         *
+         * @return The result
+         * @throws Exception If the content cannot be interpreted
+         */
+        public abstract T finish() throws Exception;
+
+        /**
+         * Called if the request fails or an earlier call threw an exception,
+         * so any resources held can be released. The default does nothing.
+         *
+         * @param cause The cause
+         */
+        public void abort(Throwable cause) {
+        }
+    }
+}
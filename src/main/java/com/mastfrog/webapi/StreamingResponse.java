@@ -0,0 +1,230 @@
+package com.mastfrog.webapi;
+
+import com.google.inject.Provider;
+import com.mastfrog.function.misc.QuietAutoClosable;
+import com.mastfrog.netty.http.client.HttpRequestBuilder;
+import com.mastfrog.netty.http.client.State;
+import com.mastfrog.netty.http.client.StateType;
+import com.mastfrog.util.thread.Receiver;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import java.io.IOException;
+
+/**
+ * Drives a StreamingInterpreter from the events of one unaggregated request.
+ * The body is complete when its last chunk arrives; if the connection closes
+ * first, the request fails, unless the response had neither a content length
+ * nor chunked encoding, and so was delimited by the connection closing.
+ *
+ * @author Tim Boudreau
+ */
+final class StreamingResponse<T> {
+
+    private final Provider<? extends StreamingInterpreter> interpreter;
+    private final Callback<T> callback;
+    private final CallContext ctx;
+    private HttpResponse response;
+    private StreamingInterpreter.ContentConsumer<T> consumer;
+    private ByteBuf failureBody;
+    private boolean receivedContent;
+    private long contentLength = -1;
+    private boolean chunked;
+    private long received;
+    private boolean done;
+    private volatile Channel channel;
+
+    StreamingResponse(Provider<? extends StreamingInterpreter> interpreter, Callback<T> callback, CallContext ctx) {
+        this.interpreter = interpreter;
+        this.callback = callback;
+        this.ctx = ctx;
+    }
+
+    HttpRequestBuilder attach(HttpRequestBuilder reqb) {
+        reqb.dontAggregateResponse();
+        reqb.on(State.Connected.class, new Receiver<Channel>() {
+            @Override
+            public void receive(Channel object) {
+                channel = object;
+            }
+        });
+        reqb.on(State.HeadersReceived.class, new Receiver<HttpResponse>() {
+            @Override
+            public void receive(HttpResponse object) {
+                onHeaders(object);
+            }
+        });
+        reqb.on(State.ContentReceived.class, new Receiver<HttpContent>() {
+            @Override
+            public void receive(HttpContent object) {
+                if (object.decoderResult().isFailure()) {
+                    // The decoder reports a connection closed mid-body this way
+                    onTruncated(object.decoderResult().cause());
+                    return;
+                }
+                onContent(object.content());
+                if (object instanceof LastHttpContent) {
+                    onFinished(Unpooled.EMPTY_BUFFER);
+                }
+            }
+        });
+        // When not aggregating, the client does not send Finished, but
+        // check for it in case the response arrives as a single message
+        reqb.on(State.Finished.class, new Receiver<FullHttpResponse>() {
+            @Override
+            public void receive(FullHttpResponse object) {
+                onFinished(object.content());
+            }
+        });
+        reqb.on(StateType.Closed, new Receiver<Void>() {
+            @Override
+            public void receive(Void object) {
+                onClosed();
+            }
+        });
+        reqb.on(State.Error.class, new Receiver<Throwable>() {
+            @Override
+            public void receive(Throwable object) {
+                abort(object);
+            }
+        });
+        return reqb;
+    }
+
+    private static boolean isSuccess(HttpResponseStatus status) {
+        return status.code() < 299 && status.code() > 199;
+    }
+
+    private synchronized void onHeaders(HttpResponse resp) {
+        response = resp;
+        contentLength = HttpUtil.getContentLength(resp, -1L);
+        chunked = HttpUtil.isTransferEncodingChunked(resp);
+        callback.responseReceived(resp.status(), resp.headers());
+        if (HttpResponseStatus.NOT_MODIFIED.equals(resp.status())) {
+            // A 304 has no body, and this is its only outcome
+            done = true;
+            callback.notModified(resp.headers());
+            return;
+        }
+        if (isSuccess(resp.status())) {
+            try (QuietAutoClosable ac = ctx.enter()) {
+                consumer = interpreter.get().start(resp.status(), resp.headers(), callback.type());
+            } catch (Exception ex) {
+                fail(ex);
+            }
+        } else {
+            failureBody = Unpooled.buffer();
+        }
+    }
+
+    private synchronized void onContent(ByteBuf content) {
+        if (done || !content.isReadable()) {
+            return;
+        }
+        receivedContent = true;
+        received += content.readableBytes();
+        if (consumer != null) {
+            try {
+                consumer.chunk(content.duplicate());
+            } catch (Exception ex) {
+                fail(ex);
+            }
+        } else if (failureBody != null) {
+            failureBody.writeBytes(content, content.readerIndex(), content.readableBytes());
+        }
+    }
+
+    private synchronized void onFinished(ByteBuf content) {
+        if (done || response == null) {
+            return;
+        }
+        if (!receivedContent && content.isReadable()) {
+            // The response arrived as a single message
+            onContent(content);
+        }
+        done = true;
+        try (QuietAutoClosable ac = ctx.enter()) {
+            if (consumer != null) {
+                T obj;
+                try {
+                    obj = consumer.finish();
+                } catch (Exception ex) {
+                    consumer.abort(ex);
+                    callback.error(ex);
+                    return;
+                }
+                callback.success(obj);
+            } else {
+                callback.fail(response.status(), failureBody);
+            }
+        } catch (Exception e) {
+            callback.error(e);
+        } finally {
+            if (failureBody != null) {
+                failureBody.release();
+                failureBody = null;
+            }
+        }
+    }
+
+    private synchronized void onClosed() {
+        if (done || response == null) {
+            return;
+        }
+        if ((contentLength < 0 && !chunked) || (contentLength >= 0 && received >= contentLength)) {
+            // A response with no content length and no chunked encoding is
+            // terminated by the connection closing
+            onFinished(Unpooled.EMPTY_BUFFER);
+        } else {
+            onTruncated(null);
+        }
+    }
+
+    private synchronized void onTruncated(Throwable cause) {
+        if (done || response == null) {
+            return;
+        }
+        IOException ex = new IOException("Connection closed after " + received
+                + (contentLength >= 0 ? " of " + contentLength : "") + " bytes of the response body");
+        if (cause != null) {
+            ex.initCause(cause);
+        }
+        fail(ex);
+    }
+
+    private void fail(Exception ex) {
+        done = true;
+        if (consumer != null) {
+            consumer.abort(ex);
+            consumer = null;
+        }
+        if (failureBody != null) {
+            failureBody.release();
+            failureBody = null;
+        }
+        // Stop downloading a body which will not be used
+        Channel ch = channel;
+        if (ch != null) {
+            ch.close();
+        }
+        callback.error(ex);
+    }
+
+    private synchronized void abort(Throwable cause) {
+        done = true;
+        if (consumer != null) {
+            consumer.abort(cause);
+            consumer = null;
+        }
+        if (failureBody != null) {
+            failureBody.release();
+            failureBody = null;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.url.URL;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local HTTP server which answers every request with the same body after a
+ * fixed latency, failing a fixed proportion of them with a 503, for running
+ * a <code>LoadGenerator</code> against without an upstream - to find the
+ * overhead of the invoker itself, or to see how limits, breakers and retries
+ * behave against a known latency and error rate. Responses are delayed on a
+ * timer rather than by blocking a thread per request, so the stub's own
+ * latency does not grow with the load. Failures are spread evenly rather
+ * than at random, so a run of N requests fails exactly
+ * <code>N * failureRate</code> of them.
+ * <p/>
+ * Can be run standalone with a port, latency in milliseconds and failure
+ * rate as arguments.
+ *
+ * @author Tim Boudreau
+ */
+public final class StubServer implements AutoCloseable {
+
+    private static final byte[] UNAVAILABLE = "\"unavailable\"".getBytes(StandardCharsets.UTF_8);
+    private final HttpServer server;
+    private final ScheduledExecutorService timer;
+    private final long latencyNanos;
+    private final double failureRate;
+    private final byte[] body;
+    private final AtomicLong served = new AtomicLong();
+
+    private StubServer(int port, Duration latency, double failureRate, String body) throws IOException {
+        if (failureRate < 0 || failureRate > 1) {
+            throw new IllegalArgumentException("Failure rate must be from 0 to 1: " + failureRate);
+        }
+        this.latencyNanos = latency.toNanos();
+        this.failureRate = failureRate;
+        this.body = body.getBytes(StandardCharsets.UTF_8);
+        timer = Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors() / 2), r -> {
+            Thread t = new Thread(r, "stub-server");
+            t.setDaemon(true);
+            return t;
+        });
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 1024);
+        server.setExecutor(timer);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * Start a server on an unused port.
+     *
+     * @param latency How long to wait before responding
+     * @param failureRate The proportion of requests to fail, from 0 to 1
+     * @param body The JSON body of successful responses
+     * @return A running server
+     * @throws IOException If the server cannot be started
+     */
+    public static StubServer start(Duration latency, double failureRate, String body) throws IOException {
+        return new StubServer(0, latency, failureRate, body);
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public URL url() {
+        return URL.parse("http://localhost:" + port());
+    }
+
+    /**
+     * The number of requests received.
+     *
+     * @return A count
+     */
+    public long served() {
+        return served.get();
+    }
+
+    private void handle(HttpExchange exchange) {
+        long n = served.getAndIncrement();
+        // Fail request n if it brings the failures needed so far up by one
+        boolean fail = (long) ((n + 1) * failureRate) > (long) (n * failureRate);
+        timer.schedule(() -> {
+            try {
+                exchange.getRequestBody().close();
+                byte[] bytes = fail ? UNAVAILABLE : body;
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(fail ? 503 : 200, bytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            } catch (IOException ex) {
+                // Client went away
+            } finally {
+                exchange.close();
+            }
+        }, latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        timer.shutdownNow();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        long latency = args.length > 1 ? Long.parseLong(args[1]) : 5;
+        double failureRate = args.length > 2 ? Double.parseDouble(args[2]) : 0;
+        StubServer stub = new StubServer(port, Duration.ofMillis(latency), failureRate, "\"ok\"");
+        System.out.println("Stub server on " + stub.url() + " with " + latency + "ms latency, failing "
+                + (failureRate * 100) + "%");
+        Thread.currentThread().join();
+    }
+}
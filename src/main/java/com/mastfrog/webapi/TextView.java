@@ -0,0 +1,82 @@
+package com.mastfrog.webapi;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
+/**
+ * The text of a response body, for callers which want to read it without
+ * copying it. Use it as the result type of a call: if every byte of the body
+ * is 7-bit ASCII, which reads the same in any charset likely to be used,
+ * characters are read straight out of the content buffer; otherwise the body
+ * is decoded up front using the charset of the Content-Type header.
+ * <p/>
+ * Since it may share the buffer's memory, a TextView is only valid until the
+ * callback it is passed to returns; call <code>toString()</code> to keep the
+ * text for longer. Ask for a String or CharSequence instead to always get a
+ * copy.
+ *
+ * @author Tim Boudreau
+ */
+public final class TextView implements CharSequence {
+
+    private final ByteBuf buf;
+    private final int start;
+    private final int length;
+    private final String decoded;
+
+    TextView(ByteBuf buf, int start, int length) {
+        this.buf = buf;
+        this.start = start;
+        this.length = length;
+        this.decoded = null;
+    }
+
+    TextView(String decoded) {
+        this.buf = null;
+        this.start = 0;
+        this.length = decoded.length();
+        this.decoded = decoded;
+    }
+
+    /**
+     * Whether characters are read from the content buffer, rather than from
+     * a copy decoded up front.
+     *
+     * @return true if this is a view of the buffer
+     */
+    public boolean isShared() {
+        return buf != null;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (decoded != null) {
+            return decoded.charAt(index);
+        }
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index + " of " + length);
+        }
+        return (char) (buf.getByte(start + index) & 0x7F);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        if (decoded != null) {
+            return decoded.subSequence(from, to);
+        }
+        if (from < 0 || to > length || from > to) {
+            throw new IndexOutOfBoundsException(from + "-" + to + " of " + length);
+        }
+        return new TextView(buf, start + from, to - from);
+    }
+
+    @Override
+    public String toString() {
+        return decoded != null ? decoded : buf.toString(start, length, CharsetUtil.US_ASCII);
+    }
+}
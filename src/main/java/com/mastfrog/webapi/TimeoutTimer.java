@@ -0,0 +1,115 @@
+package com.mastfrog.webapi;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.mastfrog.giulius.ShutdownHookRegistry;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The timer for request timeouts, retry backoffs, hedging delays and queue
+ * timeouts. A hashed wheel holds a timeout per request
+ * in a bucket for the tick it expires on, so scheduling and cancelling one
+ * is constant time, with a single thread which wakes once per tick; nearly
+ * every timeout is cancelled long before it expires, which a scheduled
+ * executor handles less cheaply. Timeouts fire up to a tick late.
+ * <p/>
+ * The wheel's thread is only started when something is first scheduled, so
+ * an application which never needs it never starts it, and it is stopped
+ * when the injector is shut down. It only checks which timeouts are due;
+ * anything heavier is deferred to a small pool of workers owned by the
+ * timer, started and shut down with it, so that callbacks into application
+ * code neither hold up the wheel nor compete with unrelated work in the
+ * common fork-join pool.
+ *
+ * @author Tim Boudreau
+ */
+@Singleton
+final class TimeoutTimer {
+
+    private final ShutdownHookRegistry onShutdown;
+    private volatile Executor worker;
+    private volatile Timer timer;
+
+    @Inject
+    TimeoutTimer(ShutdownHookRegistry onShutdown) {
+        this.onShutdown = onShutdown;
+    }
+
+    /**
+     * Create a timer which uses the passed timer and worker, so tests can
+     * decide when timeouts fire and deferred work runs.
+     *
+     * @param timer A timer
+     * @param worker Runs deferred work
+     */
+    TimeoutTimer(Timer timer, Executor worker) {
+        this.onShutdown = null;
+        this.worker = worker;
+        this.timer = timer;
+    }
+
+    Timeout schedule(TimerTask task, long nanos) {
+        return timer().newTimeout(task, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Run work which is too heavy for the wheel's thread - such as sending a
+     * request, or anything which calls back into application code - on a
+     * worker once a delay has elapsed.
+     *
+     * @param work The work
+     * @param nanos The delay
+     * @return A timeout which can be cancelled until the delay elapses
+     */
+    Timeout defer(Runnable work, long nanos) {
+        return schedule(t -> execute(work), nanos);
+    }
+
+    /**
+     * Run work on a worker now - for a timer task which must hand the
+     * consequences of a timeout off the wheel's thread.
+     *
+     * @param work The work
+     */
+    void execute(Runnable work) {
+        Executor result = worker;
+        if (result == null) {
+            start();
+            result = worker;
+        }
+        result.execute(work);
+    }
+
+    private Timer timer() {
+        Timer result = timer;
+        if (result == null) {
+            start();
+            result = timer;
+        }
+        return result;
+    }
+
+    private synchronized void start() {
+        if (timer != null) {
+            return;
+        }
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new DefaultThreadFactory("webapi-timeouts-worker", true));
+        workers.allowCoreThreadTimeOut(true);
+        HashedWheelTimer created = new HashedWheelTimer(new DefaultThreadFactory("webapi-timeouts", true),
+                10, TimeUnit.MILLISECONDS, 512);
+        onShutdown.add((Runnable) created::stop);
+        onShutdown.add((Runnable) workers::shutdown);
+        worker = workers;
+        timer = created;
+    }
+}
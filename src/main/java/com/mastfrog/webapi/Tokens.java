@@ -0,0 +1,65 @@
+package com.mastfrog.webapi;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free count of fractional tokens, capped at a maximum, for the retry
+ * budget and hedging policy, which deposit on every invocation. Tokens are
+ * held as millionths in an AtomicLong; a deposit into a full bucket does not
+ * write at all, so the common case of a budget which is not being spent
+ * does not contend.
+ *
+ * @author Tim Boudreau
+ */
+final class Tokens {
+
+    private static final long ONE = 1_000_000;
+    private final AtomicLong units;
+    private final long max;
+
+    Tokens(double max, double initial) {
+        this.max = units(max);
+        this.units = new AtomicLong(Math.min(this.max, units(initial)));
+    }
+
+    static long units(double tokens) {
+        return (long) (tokens * ONE);
+    }
+
+    /**
+     * Add some millionths of a token, up to the maximum.
+     *
+     * @param amount The units to add
+     */
+    void deposit(long amount) {
+        if (amount <= 0) {
+            return;
+        }
+        for (;;) {
+            long current = units.get();
+            if (current >= max) {
+                return;
+            }
+            if (units.compareAndSet(current, Math.min(max, current + amount))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Take a whole token, if one is available.
+     *
+     * @return true if one was taken
+     */
+    boolean withdraw() {
+        for (;;) {
+            long current = units.get();
+            if (current < ONE) {
+                return false;
+            }
+            if (units.compareAndSet(current, current - ONE)) {
+                return true;
+            }
+        }
+    }
+}
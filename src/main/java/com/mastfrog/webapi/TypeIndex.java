@@ -0,0 +1,49 @@
+package com.mastfrog.webapi;
+
+/**
+ * Frozen lookup table from parameter types to handler types (decorators or
+ * interpolators), with results memoized per queried type in a ClassValue, so
+ * lookups are constant-time and allocation-free however many entries there
+ * are. An exact match wins; if subtypes are allowed, the first registered
+ * parameter type assignable to the queried type is used.
+ *
+ * @author Tim Boudreau
+ */
+final class TypeIndex {
+
+    private final Class<?>[] parameterTypes;
+    private final Class<?>[] handlerTypes;
+    private final boolean matchSubtypes;
+    private final ClassValue<Class<?>> cache = new ClassValue<Class<?>>() {
+        @Override
+        protected Class<?> computeValue(Class<?> type) {
+            return find(type);
+        }
+    };
+
+    TypeIndex(Class<?>[] parameterTypes, Class<?>[] handlerTypes, boolean matchSubtypes) {
+        this.parameterTypes = parameterTypes;
+        this.handlerTypes = handlerTypes;
+        this.matchSubtypes = matchSubtypes;
+    }
+
+    Class<?> get(Class<?> type) {
+        return parameterTypes.length == 0 ? null : cache.get(type);
+    }
+
+    private Class<?> find(Class<?> type) {
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (type == parameterTypes[i]) {
+                return handlerTypes[i];
+            }
+        }
+        if (matchSubtypes) {
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (type.isAssignableFrom(parameterTypes[i])) {
+                    return handlerTypes[i];
+                }
+            }
+        }
+        return null;
+    }
+}
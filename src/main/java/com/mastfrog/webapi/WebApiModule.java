@@ -1,12 +1,17 @@
 package com.mastfrog.webapi;
 
+import com.fasterxml.jackson.databind.Module;
 import com.google.inject.AbstractModule;
 import com.google.inject.name.Names;
 import com.mastfrog.acteur.header.entities.BasicCredentials;
 import com.mastfrog.giulius.scope.ReentrantScope;
 import com.mastfrog.webapi.builtin.Parameters;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -15,16 +20,119 @@ import java.util.Set;
  */
 public final class WebApiModule<T extends Enum<T> & WebCallEnum> extends AbstractModule {
     private final Class<T> type;
+    private final List<Module> jacksonModules = new ArrayList<>();
+    private int cacheSize = ResponseCache.DEFAULT_MAX_ENTRIES;
+    private long cacheBytes = ResponseCache.DEFAULT_MAX_BYTES;
+    private ConcurrencyLimiter limiter;
+    private RetryBudget retryBudget;
     public WebApiModule(Class<T> type) {
         this.type = type;
     }
 
+    /**
+     * Register a Jackson module, such as Blackbird or Afterburner, to be used
+     * when reading responses and writing request bodies. The modules are
+     * registered on a copy of the bound ObjectMapper, so its other users are
+     * unaffected.
+     *
+     * @param module A module
+     * @return this
+     */
+    public WebApiModule<T> withJacksonModule(Module module) {
+        jacksonModules.add(module);
+        return this;
+    }
+
+    /**
+     * Set the maximum number of results of cacheable calls to keep.
+     *
+     * @param maxEntries The number of entries
+     * @return this
+     */
+    public WebApiModule<T> withResponseCacheSize(int maxEntries) {
+        return withResponseCacheSize(maxEntries, cacheBytes);
+    }
+
+    /**
+     * Set the maximum number of results of cacheable calls to keep, and the
+     * maximum total size of the responses they were decoded from.
+     *
+     * @param maxEntries The number of entries
+     * @param maxBytes The number of bytes
+     * @return this
+     */
+    public WebApiModule<T> withResponseCacheSize(int maxEntries, long maxBytes) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries must be positive: " + maxEntries);
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Max bytes must be positive: " + maxBytes);
+        }
+        cacheSize = maxEntries;
+        cacheBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * Limit the number of requests the invoker has in flight at once; calls
+     * may override this with <code>WebCallBuilder.concurrencyLimit()</code>.
+     *
+     * @param maxInFlight The maximum number of requests in flight
+     * @param maxQueued The maximum number of requests waiting to be sent
+     * @param maxWait The longest a request may wait to be sent
+     * @return this
+     */
+    public WebApiModule<T> withConcurrencyLimit(int maxInFlight, int maxQueued, Duration maxWait) {
+        limiter = new ConcurrencyLimiter(maxInFlight, maxQueued, maxWait);
+        return this;
+    }
+
+    /**
+     * Limit the number of requests the invoker has in flight at once, with a
+     * limit adjusted by an algorithm as responses arrive.
+     *
+     * @param algorithm The algorithm
+     * @param maxQueued The maximum number of requests waiting to be sent
+     * @param maxWait The longest a request may wait to be sent
+     * @return this
+     */
+    public WebApiModule<T> withAdaptiveConcurrencyLimit(LimitAlgorithm algorithm, int maxQueued, Duration maxWait) {
+        limiter = new ConcurrencyLimiter(algorithm, maxQueued, maxWait);
+        return this;
+    }
+
+    /**
+     * Set how many retries the invoker may make.
+     *
+     * @param ratio The number of retries each invocation earns
+     * @param minPerSecond The number of retries allowed per second regardless
+     * of the number of invocations
+     * @param maxTokens The most retries which can be banked
+     * @return this
+     * @see RetryBudget
+     */
+    public WebApiModule<T> withRetryBudget(double ratio, double minPerSecond, int maxTokens) {
+        retryBudget = new RetryBudget(ratio, minPerSecond, maxTokens);
+        return this;
+    }
+
     @Override
     protected void configure() {
         ReentrantScope scope = new ReentrantScope();
         bind(ReentrantScope.class).annotatedWith(Names.named("webapi")).toInstance(scope);
         scope.bindTypes(binder(), WebCall.class, WebCallEnum.class);
-        scope.bindTypesAllowingNulls(binder(), Parameters.class, BasicCredentials.class);
+        scope.bindTypesAllowingNulls(binder(), Parameters.class, BasicCredentials.class, Deadline.class);
+        bind(JacksonModules.class).toInstance(new JacksonModules(
+                Collections.unmodifiableList(new ArrayList<>(jacksonModules))));
+        if (cacheSize != ResponseCache.DEFAULT_MAX_ENTRIES || cacheBytes != ResponseCache.DEFAULT_MAX_BYTES) {
+            bind(ResponseCache.class).toInstance(new ResponseCache(cacheSize, cacheBytes));
+        }
+        if (limiter != null) {
+            bind(ConcurrencyLimiter.class).toInstance(limiter);
+        }
+        if (retryBudget != null) {
+            bind(RetryBudget.class).toInstance(retryBudget);
+        }
         
         Set<Class<?>> types = new HashSet<>();
         for (T obj : type.getEnumConstants()) {
@@ -4,7 +4,15 @@ import com.mastfrog.acteur.headers.Method;
 import com.mastfrog.giulius.Dependencies;
 
 /**
- * Implemented on enum constants which represents web calls
+ * Implemented on enum constants which represents web calls.
+ * <p/>
+ * Options beyond what this interface exposes - caching, coalescing,
+ * concurrency limits, retries, circuit breakers, hedging, timeouts, codecs and
+ * streaming - are only available to calls created with
+ * <code><a href="WebCallBuilder.html">WebCallBuilder</a></code>; other
+ * implementations are invoked without them, and using a
+ * <code>StreamingInterpreter</code> from one fails with an
+ * IllegalStateException.
  *
  * @author Tim Boudreau
  */
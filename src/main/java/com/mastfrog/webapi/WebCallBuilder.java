@@ -1,11 +1,15 @@
 package com.mastfrog.webapi;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mastfrog.acteur.headers.Method;
 import com.mastfrog.giulius.Dependencies;
 import com.mastfrog.util.preconditions.ConfigurationError;
+import java.io.IOException;
+import java.time.Duration;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 /**
  * Builds one element of a web api
@@ -19,11 +23,32 @@ public class WebCallBuilder {
     private String path;
     private final Set<Class<?>> requiredTypes = new HashSet<>();
     private boolean authenticationRequired;
-    private Decorators decorators = new Decorators();
-    private Interpolators interpolators = new Interpolators();
+    private final Decorators decorators = new Decorators();
+    private final Interpolators interpolators = new Interpolators();
     private boolean stayOpen;
     private boolean hasBody = true;
     private Class<? extends Interpreter> interpreter;
+    private final Set<Class<? extends Codec>> codecs = new LinkedHashSet<>();
+    private boolean cacheable;
+    private boolean coalesce;
+    private ConcurrencyLimit limit;
+    private int maxAttempts = 1;
+    private Duration retryBaseDelay;
+    private Duration retryMaxDelay;
+    private int[] retryStatuses = {429, 502, 503, 504};
+    @SuppressWarnings("unchecked")
+    private Class<? extends Throwable>[] retryExceptions = new Class[]{IOException.class, TimeoutException.class};
+    private String idempotencyHeader;
+    private int breakerWindow;
+    private double breakerFailureRate;
+    private Duration breakerOpenDuration;
+    private int breakerTrialCalls;
+    private Duration slowCallDuration;
+    private double slowCallRate = 1;
+    private HedgeSettings hedge;
+    private Duration connectTimeout;
+    private Duration headersTimeout;
+    private Duration timeout;
 
     public WebCallBuilder() {
     }
@@ -145,6 +170,22 @@ public class WebCallBuilder {
         return this;
     }
 
+    /**
+     * Add a decorator instance which will somehow modify an HTTP request
+     * based on some object passed into the call context. The instance is
+     * used for every invocation, and is not looked up or injected.
+     *
+     * @param <T> The object type
+     * @param type The object type
+     * @param dec The decorator
+     * @return this
+     */
+    public <T> WebCallBuilder withDecorator(Class<T> type, Decorator<? super T> dec) {
+        addRequiredType(type);
+        decorators.add(type, dec.getClass(), dec);
+        return this;
+    }
+
     /**
      * This call utilizes an open HTTP connection - don't close the channel when
      * the request is completed.
@@ -170,7 +211,9 @@ public class WebCallBuilder {
     }
 
     /**
-     * Thing which interprets the response
+     * Thing which interprets the response. If the interpreter is a
+     * <code>StreamingInterpreter</code>, the response will not be aggregated,
+     * and the interpreter will be fed each chunk of content as it arrives.
      *
      * @param interp An interpreter
      * @return this
@@ -180,6 +223,350 @@ public class WebCallBuilder {
         return this;
     }
 
+    /**
+     * Add a codec the default interpreter can use to decode responses. The
+     * request's <code>Accept</code> header is generated from the media types
+     * of the codecs, in the order they were added, so add the preferred
+     * format first. If none are added, responses are decoded as JSON and no
+     * Accept header is sent.
+     *
+     * @param codec A codec type
+     * @return this
+     */
+    public WebCallBuilder codec(Class<? extends Codec> codec) {
+        codecs.add(codec);
+        return this;
+    }
+
+    /**
+     * Cache the results of this call in the <code>ResponseCache</code>,
+     * serving them while fresh and revalidating them with the response's
+     * ETag or Last-Modified date afterwards. Only GET calls can be cached,
+     * and calls with a streaming interpreter are never cached.
+     * <p/>
+     * Cached results are looked up by the request's method and URL, its
+     * Accept header and credentials, and the <code>toString()</code> of each
+     * object passed to the call's decorators, since any headers they add
+     * depend on those. So objects a decorator uses must have a
+     * <code>toString()</code> which differs whenever the headers it adds do,
+     * and a decorator must not add headers which depend on anything else.
+     *
+     * @return this
+     */
+    public WebCallBuilder cacheable() {
+        this.cacheable = true;
+        return this;
+    }
+
+    /**
+     * Make invocations of this call which are in flight at the same time and
+     * would send the same request share one request, passing its result to
+     * each of their callbacks. Only GET calls can be coalesced, and calls with
+     * a streaming interpreter never are. Nor are invocations whose result is
+     * a view of the response body - a ByteBuf, ByteBuffer, InputStream or
+     * TextView - since each caller needs its own.
+     * <p/>
+     * Since the request is shared, cancelling it cancels it for every
+     * invocation waiting on it; the futures returned by
+     * <code>callAsync()</code> are not tied to the request, so cancelling
+     * one of those only affects its caller.
+     * <p/>
+     * Requests are matched as for <code>cacheable()</code>, including the
+     * <code>toString()</code> of objects passed to decorators. An invocation
+     * which joins a request already in flight waits for it on the terms of
+     * the invocation which sent it: its own <code>Deadline</code> is
+     * ignored.
+     *
+     * @return this
+     */
+    public WebCallBuilder coalesce() {
+        this.coalesce = true;
+        return this;
+    }
+
+    /**
+     * Give this call its own concurrency limit, rather than sharing the
+     * invoker's <code>ConcurrencyLimiter</code>.
+     *
+     * @param maxInFlight The maximum number of requests in flight
+     * @param maxQueued The maximum number of requests waiting to be sent
+     * @param maxWait The longest a request may wait to be sent
+     * @return this
+     */
+    public WebCallBuilder concurrencyLimit(int maxInFlight, int maxQueued, Duration maxWait) {
+        if (maxInFlight <= 0) {
+            throw new ConfigurationError("Max in flight must be positive: " + maxInFlight);
+        }
+        checkQueue(maxQueued, maxWait);
+        this.limit = new ConcurrencyLimit(null, maxInFlight, maxQueued, maxWait);
+        return this;
+    }
+
+    /**
+     * Give this call its own concurrency limit, which is adjusted as
+     * responses arrive by an algorithm such as <code>VegasLimit</code>.
+     * Since the algorithm keeps state, a new one is needed for each invoker
+     * the call is used with.
+     *
+     * @param algorithm Creates the algorithm
+     * @param maxQueued The maximum number of requests waiting to be sent
+     * @param maxWait The longest a request may wait to be sent
+     * @return this
+     */
+    public WebCallBuilder adaptiveConcurrencyLimit(Supplier<? extends LimitAlgorithm> algorithm, int maxQueued, Duration maxWait) {
+        if (algorithm == null) {
+            throw new ConfigurationError("Null limit algorithm");
+        }
+        checkQueue(maxQueued, maxWait);
+        this.limit = new ConcurrencyLimit(algorithm, 0, maxQueued, maxWait);
+        return this;
+    }
+
+    private static void checkQueue(int maxQueued, Duration maxWait) {
+        if (maxQueued < 0) {
+            throw new ConfigurationError("Max queued may not be negative: " + maxQueued);
+        }
+        if (maxQueued > 0 && (maxWait == null || maxWait.isNegative() || maxWait.isZero())) {
+            throw new ConfigurationError("Max wait must be positive: " + maxWait);
+        }
+    }
+
+    /**
+     * Retry this call when it fails with a status or exception that is
+     * retryable, waiting a random time between zero and the base delay,
+     * doubled for each failed attempt up to the maximum, before each retry.
+     * By default, responses with status 429, 502, 503 or 504 are retried, as
+     * are IOExceptions, other than rejections by the concurrency limiter, and
+     * timeouts. Retries are also limited by the invoker's
+     * <code>RetryBudget</code>.
+     * <p/>
+     * Only calls whose method is idempotent can be retried, unless they send
+     * an idempotency key; see <code>idempotencyKey()</code>. Elements passed
+     * to a StreamingCallback cannot be taken back, so
+     * <code>Invoker.stream()</code> never retries.
+     *
+     * @param maxAttempts The maximum number of attempts, including the first
+     * @param baseDelay The delay ceiling for the first retry
+     * @param maxDelay The largest delay ceiling
+     * @return this
+     */
+    public WebCallBuilder retry(int maxAttempts, Duration baseDelay, Duration maxDelay) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Max attempts must be positive: " + maxAttempts);
+        }
+        if (baseDelay.isNegative() || maxDelay.compareTo(baseDelay) < 0) {
+            throw new IllegalArgumentException("Bad delays " + baseDelay + " and " + maxDelay);
+        }
+        this.maxAttempts = maxAttempts;
+        this.retryBaseDelay = baseDelay;
+        this.retryMaxDelay = maxDelay;
+        return this;
+    }
+
+    /**
+     * Set the response statuses which cause a call to be retried, replacing
+     * the default ones.
+     *
+     * @param statuses Status codes
+     * @return this
+     */
+    public WebCallBuilder retryOnStatus(int... statuses) {
+        this.retryStatuses = statuses.clone();
+        return this;
+    }
+
+    /**
+     * Set the types of exception which cause a call to be retried, replacing
+     * the default ones.
+     *
+     * @param types Exception types
+     * @return this
+     */
+    @SafeVarargs
+    public final WebCallBuilder retryOn(Class<? extends Throwable>... types) {
+        this.retryExceptions = types.clone();
+        return this;
+    }
+
+    /**
+     * Send a random key, the same for each attempt of an invocation, in the
+     * passed header, so that a server which supports idempotency keys can
+     * recognize a retried request it has already processed. This allows calls
+     * with non-idempotent methods such as POST to be retried.
+     *
+     * @param header The header name, such as <code>Idempotency-Key</code>
+     * @return this
+     */
+    public WebCallBuilder idempotencyKey(String header) {
+        this.idempotencyHeader = header;
+        return this;
+    }
+
+    /**
+     * Give this call a <code>CircuitBreaker</code>, which fails invocations
+     * without sending a request while the proportion of recent requests
+     * which failed is too high.
+     *
+     * @param windowSize The number of recent requests to consider
+     * @param failureRateThreshold The proportion of those which must fail,
+     * from 0 to 1, for the breaker to open
+     * @param openDuration How long to stay open before trying the upstream
+     * again
+     * @param trialCalls The number of trial requests which must succeed for
+     * the breaker to close again
+     * @return this
+     */
+    public WebCallBuilder circuitBreaker(int windowSize, double failureRateThreshold, Duration openDuration, int trialCalls) {
+        if (windowSize <= 0 || trialCalls <= 0) {
+            throw new ConfigurationError("Window size and trial calls must be positive: "
+                    + windowSize + ", " + trialCalls);
+        }
+        if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+            throw new ConfigurationError("Failure rate threshold must be greater than 0 and at most 1: "
+                    + failureRateThreshold);
+        }
+        if (openDuration == null || openDuration.isNegative() || openDuration.isZero()) {
+            throw new ConfigurationError("Open duration must be positive: " + openDuration);
+        }
+        this.breakerWindow = windowSize;
+        this.breakerFailureRate = failureRateThreshold;
+        this.breakerOpenDuration = openDuration;
+        this.breakerTrialCalls = trialCalls;
+        return this;
+    }
+
+    /**
+     * Also open this call's circuit breaker if the proportion of recent
+     * requests whose response headers took longer than the passed duration
+     * is too high.
+     *
+     * @param slowCallDuration The duration beyond which a request is slow
+     * @param slowCallRateThreshold The proportion of slow requests, from 0
+     * to 1, at which to open
+     * @return this
+     */
+    public WebCallBuilder slowCallThreshold(Duration slowCallDuration, double slowCallRateThreshold) {
+        if (slowCallRateThreshold <= 0 || slowCallRateThreshold > 1) {
+            throw new IllegalArgumentException("Threshold must be greater than 0 and at most 1: "
+                    + slowCallRateThreshold);
+        }
+        this.slowCallDuration = slowCallDuration;
+        this.slowCallRate = slowCallRateThreshold;
+        return this;
+    }
+
+    /**
+     * Fail requests for this call which have not connected within the passed
+     * time, passing a <code>CallTimeoutException</code> to the callback and
+     * closing the connection.
+     *
+     * @param timeout The timeout
+     * @return this
+     */
+    public WebCallBuilder connectTimeout(Duration timeout) {
+        this.connectTimeout = positive(timeout);
+        return this;
+    }
+
+    /**
+     * Fail requests for this call whose response headers have not arrived
+     * within the passed time of connecting.
+     *
+     * @param timeout The timeout
+     * @return this
+     */
+    public WebCallBuilder headersTimeout(Duration timeout) {
+        this.headersTimeout = positive(timeout);
+        return this;
+    }
+
+    /**
+     * Fail requests for this call whose whole response has not arrived
+     * within the passed time of being invoked, including any time spent
+     * waiting for the concurrency limiter. Each attempt of a retried call is
+     * timed separately; to bound an invocation as a whole, pass a
+     * <code>Deadline</code> with it.
+     *
+     * @param timeout The timeout
+     * @return this
+     */
+    public WebCallBuilder timeout(Duration timeout) {
+        this.timeout = positive(timeout);
+        return this;
+    }
+
+    private static Duration positive(Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("Timeout must be positive: " + timeout);
+        }
+        return timeout;
+    }
+
+    /**
+     * Hedge this call: if the response headers to a request have not arrived
+     * after the passed delay, send an identical second request, use the
+     * response to whichever receives its headers first and cancel the other.
+     * This trades a little extra load for fewer very slow calls, when the
+     * slowness is in a particular connection or upstream instance rather than
+     * the work itself. The callback or future of an invocation sees only one
+     * of the responses.
+     * <p/>
+     * Only calls whose method is idempotent can be hedged, and calls which
+     * are coalesced or streamed cannot be.
+     *
+     * @param delay How long to wait for response headers before sending the
+     * second request
+     * @param maxExtraLoad The largest proportion of invocations, from 0 to
+     * 1, which may send a second request, such as 0.05 for one in twenty
+     * @return this
+     */
+    public WebCallBuilder hedge(Duration delay, double maxExtraLoad) {
+        return hedge(0, delay, maxExtraLoad);
+    }
+
+    /**
+     * Hedge this call as with <code>hedge(delay, maxExtraLoad)</code>, with
+     * a delay which tracks a percentile of the time recent requests took to
+     * receive response headers, such as 0.95 to send a second request for
+     * the slowest twentieth of invocations.
+     *
+     * @param percentile The percentile, greater than 0 and less than 1
+     * @param initialDelay The delay to use until enough requests have been
+     * made to estimate the percentile
+     * @param maxExtraLoad The largest proportion of invocations, from 0 to
+     * 1, which may send a second request
+     * @return this
+     */
+    public WebCallBuilder hedgeAtPercentile(double percentile, Duration initialDelay, double maxExtraLoad) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 1: " + percentile);
+        }
+        return hedge(percentile, initialDelay, maxExtraLoad);
+    }
+
+    private WebCallBuilder hedge(double percentile, Duration delay, double maxExtraLoad) {
+        if (delay.isNegative() || maxExtraLoad <= 0 || maxExtraLoad > 1) {
+            throw new IllegalArgumentException("Bad hedging delay " + delay
+                    + " or extra load " + maxExtraLoad);
+        }
+        this.hedge = new HedgeSettings(percentile, delay, maxExtraLoad);
+        return this;
+    }
+
+    private static boolean isIdempotent(Method method) {
+        switch (method) {
+            case GET:
+            case HEAD:
+            case OPTIONS:
+            case PUT:
+            case DELETE:
+            case TRACE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
     /**
      * Build a web call
      *
@@ -196,35 +583,133 @@ public class WebCallBuilder {
         if (path == null) {
             throw new ConfigurationError("Path not set");
         }
+        if (cacheable && method != Method.GET) {
+            throw new ConfigurationError("Only GET calls can be cached, not " + method);
+        }
+        if (coalesce && method != Method.GET) {
+            throw new ConfigurationError("Only GET calls can be coalesced, not " + method);
+        }
+        if (slowCallDuration != null && breakerWindow == 0) {
+            throw new ConfigurationError("Slow call threshold set without a circuit breaker");
+        }
+        if (hedge != null) {
+            if (!isIdempotent(method)) {
+                throw new ConfigurationError(method + " calls cannot be hedged");
+            }
+            if (coalesce) {
+                throw new ConfigurationError("Coalesced calls cannot be hedged");
+            }
+            if (interpreter != null && StreamingInterpreter.class.isAssignableFrom(interpreter)) {
+                throw new ConfigurationError("Streamed calls cannot be hedged");
+            }
+        }
+        RetryPolicy retries = null;
+        if (maxAttempts > 1) {
+            if (idempotencyHeader == null && !isIdempotent(method)) {
+                throw new ConfigurationError(method + " calls can only be retried with an idempotency key");
+            }
+            retries = new RetryPolicy(maxAttempts, retryBaseDelay, retryMaxDelay,
+                    retryStatuses, retryExceptions, idempotencyHeader);
+        }
         return new WebCallImpl(id, method, path, requiredTypes,
-                authenticationRequired, decorators, interpolators, stayOpen,
-                /*type,*/ hasBody, interpreter);
+                authenticationRequired, decorators.freeze(), interpolators.freeze(), stayOpen,
+                /*type,*/ hasBody, interpreter, codecs, cacheable, coalesce, limit, retries,
+                breakerWindow == 0 ? null : new BreakerSettings(breakerWindow, breakerFailureRate,
+                        slowCallDuration, slowCallRate, breakerOpenDuration, breakerTrialCalls), hedge,
+                connectTimeout == null && headersTimeout == null && timeout == null ? null
+                : new CallTimeouts(connectTimeout, headersTimeout, timeout));
+    }
+
+    private static final class ConcurrencyLimit {
+
+        private final Supplier<? extends LimitAlgorithm> algorithm;
+        private final int maxInFlight;
+        private final int maxQueued;
+        private final Duration maxWait;
+
+        ConcurrencyLimit(Supplier<? extends LimitAlgorithm> algorithm, int maxInFlight, int maxQueued, Duration maxWait) {
+            this.algorithm = algorithm;
+            this.maxInFlight = maxInFlight;
+            this.maxQueued = maxQueued;
+            this.maxWait = maxWait;
+        }
+    }
+
+    private static final class BreakerSettings {
+
+        private final int windowSize;
+        private final double failureRate;
+        private final Duration slowCallDuration;
+        private final double slowCallRate;
+        private final Duration openDuration;
+        private final int trialCalls;
+
+        BreakerSettings(int windowSize, double failureRate, Duration slowCallDuration, double slowCallRate, Duration openDuration, int trialCalls) {
+            this.windowSize = windowSize;
+            this.failureRate = failureRate;
+            this.slowCallDuration = slowCallDuration;
+            this.slowCallRate = slowCallRate;
+            this.openDuration = openDuration;
+            this.trialCalls = trialCalls;
+        }
+    }
+
+    private static final class HedgeSettings {
+
+        private final double percentile;
+        private final Duration delay;
+        private final double maxExtraLoad;
+
+        HedgeSettings(double percentile, Duration delay, double maxExtraLoad) {
+            this.percentile = percentile;
+            this.delay = delay;
+            this.maxExtraLoad = maxExtraLoad;
+        }
     }
 
-    private static class WebCallImpl implements WebCall {
+    static final class WebCallImpl implements WebCall {
 
         private final Enum<?> id;
         private final Method method;
         private final String path;
-        private final Set<Class<?>> requiredTypes;
+        private final Class<?>[] requiredTypes;
+        private final PathTemplate template;
         private final boolean authenticationRequired;
         private final Decorators decorators;
         private final Interpolators interpolators;
         private final boolean stayOpen;
         private final boolean hasBody;
         private final Class<? extends Interpreter> interpreter;
+        private final Class<? extends Codec>[] codecs;
+        private final boolean cacheable;
+        private final boolean coalesce;
+        private final ConcurrencyLimit limit;
+        private final RetryPolicy retries;
+        private final BreakerSettings breaker;
+        private final HedgeSettings hedge;
+        private final CallTimeouts timeouts;
 
-        public WebCallImpl(Enum<?> id, Method method, String path, Set<Class<?>> requiredTypes, boolean authenticationRequired, Decorators decorators, Interpolators interpolators, boolean stayOpen, /*Class<?> type, */boolean hasBody, Class<? extends Interpreter> interpreter) {
+        @SuppressWarnings("unchecked")
+        public WebCallImpl(Enum<?> id, Method method, String path, Set<Class<?>> requiredTypes, boolean authenticationRequired, Decorators decorators, Interpolators interpolators, boolean stayOpen, /*Class<?> type, */boolean hasBody, Class<? extends Interpreter> interpreter, Set<Class<? extends Codec>> codecs, boolean cacheable, boolean coalesce, ConcurrencyLimit limit, RetryPolicy retries, BreakerSettings breaker, HedgeSettings hedge, CallTimeouts timeouts) {
             this.id = id;
             this.method = method;
             this.path = path;
-            this.requiredTypes = requiredTypes;
+            this.requiredTypes = requiredTypes.toArray(new Class<?>[requiredTypes.size()]);
+            this.template = PathTemplate.compile(path, this.requiredTypes);
             this.authenticationRequired = authenticationRequired;
             this.decorators = decorators;
             this.interpolators = interpolators;
             this.stayOpen = stayOpen;
             this.interpreter = interpreter;
             this.hasBody = hasBody;
+            this.codecs = codecs.toArray((Class<? extends Codec>[]) new Class<?>[codecs.size()]);
+            this.cacheable = cacheable;
+            this.coalesce = coalesce;
+            this.limit = limit;
+            this.retries = retries;
+            this.breaker = breaker;
+            this.hedge = hedge;
+            this.timeouts = timeouts;
         }
 
         @Override
@@ -249,7 +734,70 @@ public class WebCallBuilder {
 
         @Override
         public Class<?>[] requiredTypes() {
-            return requiredTypes.toArray(new Class<?>[requiredTypes.size()]);
+            return requiredTypes.clone();
+        }
+
+        PathTemplate template() {
+            return template;
+        }
+
+        Class<? extends Interpreter> interpreterType() {
+            return interpreter;
+        }
+
+        Class<? extends Codec>[] codecTypes() {
+            return codecs;
+        }
+
+        boolean isCacheable() {
+            return cacheable;
+        }
+
+        boolean isCoalesced() {
+            return coalesce;
+        }
+
+        RetryPolicy retryPolicy() {
+            return retries;
+        }
+
+        CallTimeouts timeouts() {
+            return timeouts;
+        }
+
+        /**
+         * Create the circuit breaker for this call, if it has one.
+         *
+         * @return A breaker or null
+         */
+        CircuitBreaker createCircuitBreaker() {
+            return breaker == null ? null : new CircuitBreaker(name(), breaker.windowSize,
+                    breaker.failureRate, breaker.slowCallDuration, breaker.slowCallRate,
+                    breaker.openDuration, breaker.trialCalls);
+        }
+
+        /**
+         * Create the hedging policy for this call, if it is hedged.
+         *
+         * @return A policy or null
+         */
+        HedgePolicy createHedgePolicy() {
+            return hedge == null ? null
+                    : new HedgePolicy(hedge.percentile, hedge.delay.toNanos(), hedge.maxExtraLoad);
+        }
+
+        /**
+         * Create the limiter for this call, if it has its own limit.
+         *
+         * @return A limiter or null
+         */
+        ConcurrencyLimiter createLimiter() {
+            if (limit == null) {
+                return null;
+            }
+            return limit.algorithm == null
+                    ? new ConcurrencyLimiter(limit.maxInFlight, limit.maxQueued, limit.maxWait)
+                    : new ConcurrencyLimiter(limit.algorithm.get(), limit.maxQueued, limit.maxWait);
         }
 
         @Override
@@ -272,6 +820,10 @@ public class WebCallBuilder {
             return decorators.get(type);
         }
 
+        Decorator<?> decoratorInstance(Class<?> type) {
+            return decorators.instance(type);
+        }
+
         @Override
         public <T, R extends Interpolator<T>> Class<R> interpolator(Class<T> type) {
             return interpolators.get(type);
@@ -281,7 +833,7 @@ public class WebCallBuilder {
         public Interpreter interpreter(Dependencies deps) {
             Interpreter result;
             if (interpreter == null || interpreter.equals(DefaultResponseInterceptor.class)) {
-                return new DefaultResponseInterceptor(deps.getInstance(ObjectMapper.class));
+                return new DefaultResponseInterceptor(deps.getInstance(JsonBindings.class));
             } else {
                 result = deps.getInstance(interpreter);
             }
@@ -0,0 +1,61 @@
+package com.mastfrog.webapi;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.CharsetUtil;
+import java.io.IOException;
+
+/**
+ * Thrown (or used to complete a future exceptionally) when a call gets a
+ * response whose status is not 2xx. The body is copied out of the response,
+ * since the response's buffer does not outlive the call.
+ *
+ * @author Tim Boudreau
+ */
+public final class WebCallException extends IOException {
+
+    private final HttpResponseStatus status;
+    private final HttpHeaders headers;
+    private final byte[] body;
+
+    public WebCallException(HttpResponseStatus status, HttpHeaders headers, ByteBuf body) {
+        super(status.toString());
+        this.status = status;
+        this.headers = headers == null ? EmptyHttpHeaders.INSTANCE : headers;
+        this.body = body == null ? new byte[0] : ByteBufUtil.getBytes(body);
+    }
+
+    public HttpResponseStatus status() {
+        return status;
+    }
+
+    public HttpHeaders headers() {
+        return headers;
+    }
+
+    /**
+     * The response body.
+     *
+     * @return A copy of the body
+     */
+    public byte[] body() {
+        return body.clone();
+    }
+
+    /**
+     * The response body decoded as UTF-8.
+     *
+     * @return A string
+     */
+    public String bodyAsString() {
+        return new String(body, CharsetUtil.UTF_8);
+    }
+
+    @Override
+    public String getMessage() {
+        return body.length == 0 ? super.getMessage() : super.getMessage() + ": " + bodyAsString();
+    }
+}
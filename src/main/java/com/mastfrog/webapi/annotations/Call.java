@@ -0,0 +1,46 @@
+package com.mastfrog.webapi.annotations;
+
+import com.mastfrog.acteur.headers.Method;
+import com.mastfrog.webapi.Interpreter;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Describes the call a method of a <code>&#064;WebApi</code> interface
+ * makes; the attributes correspond to methods of
+ * <code>WebCallBuilder</code>.
+ *
+ * @author Tim Boudreau
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.METHOD)
+public @interface Call {
+
+    /**
+     * The path template, which may contain <code>{{token}}</code>s to be
+     * replaced by parameters.
+     *
+     * @return A path
+     */
+    String value();
+
+    Method method() default Method.GET;
+
+    boolean authenticationRequired() default false;
+
+    boolean cacheable() default false;
+
+    boolean coalesce() default false;
+
+    /**
+     * The interpreter for responses; the default, <code>Interpreter</code>
+     * itself, means the usual JSON interpreter.
+     *
+     * @return An interpreter type
+     */
+    Class<? extends Interpreter> interpreter() default Interpreter.class;
+}
@@ -0,0 +1,24 @@
+package com.mastfrog.webapi.annotations;
+
+import com.mastfrog.webapi.Decorator;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Applies a decorator to a parameter of a method of a
+ * <code>&#064;WebApi</code> interface, as with
+ * <code>WebCallBuilder.withDecorator()</code>.
+ *
+ * @author Tim Boudreau
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.PARAMETER)
+public @interface Decorate {
+
+    @SuppressWarnings("rawtypes")
+    Class<? extends Decorator> value();
+}
@@ -0,0 +1,40 @@
+package com.mastfrog.webapi.annotations;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an interface whose methods, each annotated with <code>&#064;Call</code>,
+ * describe a web API. At compile time, an enum of the calls named
+ * <i>InterfaceName</i><code>Calls</code> is generated, along with a client
+ * named <i>InterfaceName</i><code>Client</code> which implements the
+ * interface by invoking them through an <code>Invoker</code>.
+ * <p/>
+ * Each parameter of a method is passed to the call. Its type is a required
+ * type of the call, decorated with the decorator named by a
+ * <code>&#064;Decorate</code> annotation if it has one, except for
+ * <code>Parameters</code>, <code>BasicCredentials</code> and
+ * <code>Deadline</code>, which the invoker handles itself, and, for methods
+ * returning <code>ResponseFuture</code>, the <code>Callback</code> the
+ * result is passed to. A method may return
+ * <code>CompletableFuture&lt;T&gt;</code>, to invoke the call asynchronously;
+ * <code>ResponseFuture</code>, if it takes a callback; or any other type, to
+ * block for the result. Methods which do not return
+ * <code>CompletableFuture</code> must be declared to throw
+ * <code>Exception</code>.
+ * <p/>
+ * Every <code>{{token}}</code> in a path must match the lower-cased simple
+ * name of a parameter's type, and no two parameters may have the same type,
+ * or compilation fails.
+ *
+ * @author Tim Boudreau
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface WebApi {
+
+}
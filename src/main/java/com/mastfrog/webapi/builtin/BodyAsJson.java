@@ -0,0 +1,40 @@
+package com.mastfrog.webapi.builtin;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.mastfrog.mime.MimeType;
+import com.mastfrog.webapi.BodyDecorator;
+import com.mastfrog.webapi.JsonBindings;
+import com.mastfrog.webapi.WebCall;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.io.IOException;
+
+/**
+ * Sends an object of any type from the context as the JSON body of a
+ * request, using the cached ObjectWriter for the type it was registered
+ * under, serialized straight into a pooled buffer. For example,
+ * <code>withDecorator(Person.class, BodyAsJson.class)</code>.
+ *
+ * @author Tim Boudreau
+ */
+@Singleton
+public final class BodyAsJson<T> implements BodyDecorator<T> {
+
+    private final JsonBindings bindings;
+
+    @Inject
+    public BodyAsJson(JsonBindings bindings) {
+        this.bindings = bindings;
+    }
+
+    @Override
+    public ByteBuf body(WebCall call, T obj, Class<T> type, ByteBufAllocator alloc) throws IOException {
+        return bindings.toByteBuf(obj, type, alloc);
+    }
+
+    @Override
+    public MimeType contentType() {
+        return MimeType.JSON_UTF_8;
+    }
+}
@@ -24,21 +24,54 @@
 
 package com.mastfrog.webapi.builtin;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
 import com.mastfrog.mime.MimeType;
-import com.mastfrog.netty.http.client.HttpRequestBuilder;
-import com.mastfrog.webapi.Decorator;
+import com.mastfrog.webapi.BodyDecorator;
+import com.mastfrog.webapi.JsonBindings;
 import com.mastfrog.webapi.WebCall;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import java.io.IOException;
 import java.util.Map;
 
 /**
+ * Sends a Map from the context as the JSON body of a request, serialized
+ * straight into a pooled buffer.
  *
  * @author Tim Boudreau
  */
-public class BodyFromMap implements Decorator<Map> {
+@Singleton
+public class BodyFromMap implements BodyDecorator<Map> {
+
+    private static final ObjectMapper DEFAULT_MAPPER = new ObjectMapper();
+    private final JsonBindings bindings;
+
+    /**
+     * Create an instance which serializes the map with a default
+     * ObjectMapper.
+     */
+    public BodyFromMap() {
+        this(null);
+    }
+
+    @Inject
+    public BodyFromMap(JsonBindings bindings) {
+        this.bindings = bindings;
+    }
+
+    @Override
+    public ByteBuf body(WebCall call, Map obj, Class<Map> type, ByteBufAllocator alloc) throws IOException {
+        if (bindings == null) {
+            byte[] bytes = DEFAULT_MAPPER.writeValueAsBytes(obj);
+            return alloc.buffer(bytes.length).writeBytes(bytes);
+        }
+        return bindings.toByteBuf(obj, type, alloc);
+    }
 
     @Override
-    public void decorate(WebCall call, HttpRequestBuilder builder, Map obj, Class<Map> type) throws IOException {
-        builder.setBody(obj, MimeType.JSON_UTF_8);
+    public MimeType contentType() {
+        return MimeType.JSON_UTF_8;
     }
 }
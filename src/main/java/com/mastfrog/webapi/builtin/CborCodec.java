@@ -0,0 +1,22 @@
+package com.mastfrog.webapi.builtin;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.mastfrog.webapi.JsonBindings;
+
+/**
+ * Decodes CBOR (RFC 8949) with a copy of the JsonBindings ObjectMapper so
+ * it shares its configuration. Requires <code>jackson-dataformat-cbor</code> on the
+ * classpath.
+ *
+ * @author Tim Boudreau
+ */
+@Singleton
+public final class CborCodec extends JacksonCodec {
+
+    @Inject
+    public CborCodec(JsonBindings bindings) {
+        super(bindings.withFactory(new CBORFactory()), "application/cbor");
+    }
+}
@@ -0,0 +1,62 @@
+package com.mastfrog.webapi.builtin;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.mastfrog.webapi.Codec;
+import com.mastfrog.webapi.JsonBindings;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.handler.codec.http.HttpHeaders;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Base class for codecs for the formats Jackson supports. Readers come from
+ * the codec's JsonBindings, which caches one per result type, and are handed
+ * the content's backing array where there is one, so the content is not
+ * copied.
+ *
+ * @author Tim Boudreau
+ */
+public abstract class JacksonCodec extends Codec {
+
+    private final JsonBindings bindings;
+
+    protected JacksonCodec(JsonBindings bindings, String... mediaTypes) {
+        super(mediaTypes);
+        this.bindings = bindings;
+    }
+
+    protected final ObjectMapper mapper() {
+        return bindings.mapper();
+    }
+
+    @Override
+    public <T> T decode(HttpHeaders headers, ByteBuf content, Class<T> as) throws Exception {
+        ObjectReader reader = bindings.reader(as);
+        try {
+            if (content.hasArray()) {
+                return reader.readValue(content.array(),
+                        content.arrayOffset() + content.readerIndex(),
+                        content.readableBytes());
+            }
+            return reader.readValue((InputStream) new ByteBufInputStream(content.duplicate()));
+        } catch (JsonProcessingException ex) {
+            throw badContent(content, as, ex);
+        }
+    }
+
+    /**
+     * Create the exception thrown when the content cannot be decoded.
+     *
+     * @param content The content
+     * @param as The type that was wanted
+     * @param ex The exception Jackson threw
+     * @return An exception
+     */
+    protected IOException badContent(ByteBuf content, Class<?> as, JsonProcessingException ex) {
+        return new IOException("Bad " + mediaTypes()[0] + " trying to deserialize "
+                + as + " from " + content.readableBytes() + " bytes", ex);
+    }
+}
@@ -0,0 +1,37 @@
+package com.mastfrog.webapi.builtin;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.mastfrog.webapi.JsonBindings;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+import java.io.IOException;
+
+/**
+ * Decodes JSON using the ObjectMapper from JsonBindings. This is what calls
+ * use if they register no codecs. Besides the types listed, it decodes any
+ * <code>+json</code> media type.
+ *
+ * @author Tim Boudreau
+ */
+@Singleton
+public final class JsonCodec extends JacksonCodec {
+
+    @Inject
+    public JsonCodec(JsonBindings bindings) {
+        super(bindings, "application/json", "text/json");
+    }
+
+    @Override
+    public boolean decodes(String mediaType) {
+        return super.decodes(mediaType) || mediaType.regionMatches(true,
+                mediaType.length() - 5, "+json", 0, 5);
+    }
+
+    @Override
+    protected IOException badContent(ByteBuf content, Class<?> as, JsonProcessingException ex) {
+        String s = content.toString(content.readerIndex(), content.readableBytes(), CharsetUtil.UTF_8);
+        return new IOException("Bad JSON trying to deserialize " + as + " '" + s + "'", ex);
+    }
+}
@@ -0,0 +1,22 @@
+package com.mastfrog.webapi.builtin;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.mastfrog.webapi.JsonBindings;
+
+/**
+ * Decodes Jackson's binary JSON format, Smile, with a copy of the
+ * JsonBindings ObjectMapper so it shares its configuration. Requires
+ * <code>jackson-dataformat-smile</code> on the classpath.
+ *
+ * @author Tim Boudreau
+ */
+@Singleton
+public final class SmileCodec extends JacksonCodec {
+
+    @Inject
+    public SmileCodec(JsonBindings bindings) {
+        super(bindings.withFactory(new SmileFactory()), "application/x-jackson-smile");
+    }
+}
@@ -0,0 +1,103 @@
+package com.mastfrog.webapi.builtin;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.mastfrog.webapi.JsonBindings;
+import com.mastfrog.webapi.StreamingInterpreter;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.io.IOException;
+
+/**
+ * A streaming interpreter which tokenizes JSON with Jackson's non-blocking
+ * parser as each chunk arrives, so decoding overlaps the transfer and the raw
+ * response bytes are never aggregated; the buffered tokens are bound to the
+ * result type when the last chunk lands. Use it with
+ * <code>WebCallBuilder.interpreter(StreamingJsonInterpreter.class)</code>.
+ * <p/>
+ * This only moves parsing off the aggregated copy of the body - it does
+ * <i>not</i> reduce peak memory use, since every token of the document is
+ * buffered until it can be bound, and the buffered tokens take about as much
+ * memory as the bytes they came from. To process a large JSON array without
+ * holding all of it, use <code>Invoker.stream()</code> with a
+ * <code>StreamingCallback</code>, which binds and hands off each element as
+ * it arrives.
+ *
+ * @author Tim Boudreau
+ */
+@Singleton
+public final class StreamingJsonInterpreter extends StreamingInterpreter {
+
+    private final JsonBindings bindings;
+
+    @Inject
+    public StreamingJsonInterpreter(JsonBindings bindings) {
+        this.bindings = bindings;
+    }
+
+    @Override
+    public <T> ContentConsumer<T> start(HttpResponseStatus status, HttpHeaders headers, Class<T> as) throws IOException {
+        return new JsonConsumer<>(bindings.mapper(), bindings.reader(as), as);
+    }
+
+    private static final class JsonConsumer<T> extends ContentConsumer<T> {
+
+        private final ObjectMapper mapper;
+        private final ObjectReader reader;
+        private final Class<T> type;
+        private final JsonParser parser;
+        private final TokenBuffer tokens;
+
+        JsonConsumer(ObjectMapper mapper, ObjectReader reader, Class<T> type) throws IOException {
+            this.mapper = mapper;
+            this.reader = reader;
+            this.type = type;
+            parser = mapper.getFactory().createNonBlockingByteBufferParser();
+            tokens = new TokenBuffer(mapper, false);
+        }
+
+        @Override
+        public void chunk(ByteBuf chunk) throws IOException {
+            ((ByteBufferFeeder) parser.getNonBlockingInputFeeder()).feedInput(chunk.nioBuffer());
+            // The feeder holds onto the buffer, so everything in it must be
+            // consumed before the chunk is released
+            drain();
+        }
+
+        private void drain() throws IOException {
+            JsonToken tok;
+            while ((tok = parser.nextToken()) != null && tok != JsonToken.NOT_AVAILABLE) {
+                tokens.copyCurrentEvent(parser);
+            }
+        }
+
+        @Override
+        public T finish() throws IOException {
+            parser.getNonBlockingInputFeeder().endOfInput();
+            drain();
+            parser.close();
+            if (type == Void.class) {
+                return null;
+            }
+            try (JsonParser p = tokens.asParser(mapper)) {
+                return reader.readValue(p);
+            }
+        }
+
+        @Override
+        public void abort(Throwable cause) {
+            try {
+                parser.close();
+            } catch (IOException ex) {
+                cause.addSuppressed(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.mastfrog.webapi.builtin;
+
+import com.mastfrog.webapi.LimitAlgorithm;
+
+/**
+ * Adjusts a concurrency limit in the manner of TCP Vegas. The lowest round
+ * trip time seen is taken as the latency of the upstream when nothing is
+ * queued; the amount by which a response's round trip exceeds it estimates how
+ * many requests are queued upstream. The limit grows while that queue is
+ * small and shrinks when it gets long, and is cut by a tenth when a request
+ * fails or the upstream reports overload.
+ *
+ * @author Tim Boudreau
+ */
+public class VegasLimit extends LimitAlgorithm {
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private long minRtt = Long.MAX_VALUE;
+
+    /**
+     * Create a limit which starts at 20 and may range from 1 to 1000.
+     */
+    public VegasLimit() {
+        this(20, 1, 1000);
+    }
+
+    public VegasLimit(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit <= 0 || initialLimit < minLimit || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("Bad limits " + minLimit + " <= "
+                    + initialLimit + " <= " + maxLimit);
+        }
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    @Override
+    public int initialLimit() {
+        return initialLimit;
+    }
+
+    private static int log10(int limit) {
+        return Math.max(1, (int) Math.log10(limit));
+    }
+
+    @Override
+    public int update(int limit, long rttNanos, int inFlight, boolean dropped) {
+        if (dropped) {
+            return Math.max(minLimit, (int) (limit * 0.9));
+        }
+        if (rttNanos <= 0) {
+            return limit;
+        }
+        minRtt = Math.min(minRtt, rttNanos);
+        // Only grow if the limit is actually being used
+        if (inFlight * 2 < limit) {
+            return limit;
+        }
+        int log = log10(limit);
+        double queued = limit * (1D - (double) minRtt / rttNanos);
+        int result;
+        if (queued <= log) {
+            result = limit + 6 * log;
+        } else if (queued < 3 * log) {
+            result = limit + log;
+        } else if (queued > 6 * log) {
+            result = limit - log;
+        } else {
+            result = limit;
+        }
+        return Math.max(minLimit, Math.min(maxLimit, result));
+    }
+}
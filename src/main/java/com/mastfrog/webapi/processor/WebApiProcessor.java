@@ -0,0 +1,503 @@
+package com.mastfrog.webapi.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates an enum of calls and a client for each interface annotated with
+ * <code>&#064;WebApi</code>, checking at compile time what would otherwise
+ * only show up as a malformed request: that every token in a path template
+ * matches a parameter type, and that no two parameters have the same type.
+ * Path templates are matched against parameter types the same way the
+ * invoker matches them against required types.
+ * <p/>
+ * Decorators which the injector would create with their public no-argument
+ * constructor are instantiated by the generated enum, and the generated
+ * client prepares every call's plan - template, decorators and interpreter -
+ * when it is created rather than on first use. Decorators with injected
+ * dependencies (such as <code>BodyAsJson</code>, which needs the application's
+ * <code>JsonBindings</code>), custom interpreters and the invoker itself are
+ * still obtained from the injector, since only the application's modules
+ * know how to satisfy them.
+ *
+ * @author Tim Boudreau
+ */
+@SupportedAnnotationTypes(WebApiProcessor.WEB_API)
+public final class WebApiProcessor extends AbstractProcessor {
+
+    static final String WEB_API = "com.mastfrog.webapi.annotations.WebApi";
+    private static final String CALL = "com.mastfrog.webapi.annotations.Call";
+    private static final String DECORATE = "com.mastfrog.webapi.annotations.Decorate";
+    private static final String INTERPRETER = "com.mastfrog.webapi.Interpreter";
+    private static final String CALLBACK = "com.mastfrog.webapi.Callback";
+    private static final String RESPONSE_FUTURE = "com.mastfrog.netty.http.client.ResponseFuture";
+    private static final String COMPLETABLE_FUTURE = "java.util.concurrent.CompletableFuture";
+    private static final String GUICE_INJECT = "com.google.inject.Inject";
+    private static final String JSR_330_INJECT = "javax.inject.Inject";
+    private static final Set<String> HANDLED_BY_INVOKER = new HashSet<>();
+    private static final Pattern TOKEN = Pattern.compile("\\{\\{(.*?)\\}\\}");
+
+    static {
+        HANDLED_BY_INVOKER.add("com.mastfrog.webapi.builtin.Parameters");
+        HANDLED_BY_INVOKER.add("com.mastfrog.acteur.header.entities.BasicCredentials");
+        HANDLED_BY_INVOKER.add("com.mastfrog.webapi.Deadline");
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement webApi = processingEnv.getElementUtils().getTypeElement(WEB_API);
+        if (webApi == null) {
+            return false;
+        }
+        for (Element e : roundEnv.getElementsAnnotatedWith(webApi)) {
+            if (e.getKind() != ElementKind.INTERFACE) {
+                error(e, "@WebApi can only be applied to interfaces");
+                continue;
+            }
+            Api api = read((TypeElement) e);
+            if (api != null) {
+                try {
+                    write(api);
+                } catch (IOException ex) {
+                    error(e, "Could not write classes for " + e + ": " + ex);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void error(Element e, String msg) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, msg, e);
+    }
+
+    private Api read(TypeElement type) {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        Api api = new Api(pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString(),
+                type.getSimpleName().toString(), type.getQualifiedName().toString());
+        boolean ok = true;
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            if (!method.getModifiers().contains(Modifier.ABSTRACT)) {
+                continue;
+            }
+            AnnotationMirror call = annotation(method, CALL);
+            if (call == null) {
+                error(method, "Methods of a @WebApi interface must be annotated with @Call");
+                ok = false;
+                continue;
+            }
+            Method m = readMethod(method, call);
+            if (m == null) {
+                ok = false;
+            } else {
+                api.methods.add(m);
+            }
+        }
+        return ok ? api : null;
+    }
+
+    private Method readMethod(ExecutableElement method, AnnotationMirror call) {
+        Method m = new Method(method.getSimpleName().toString());
+        boolean ok = true;
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e
+                : processingEnv.getElementUtils().getElementValuesWithDefaults(call).entrySet()) {
+            String name = e.getKey().getSimpleName().toString();
+            Object value = e.getValue().getValue();
+            switch (name) {
+                case "value":
+                    m.path = (String) value;
+                    break;
+                case "method":
+                    m.httpMethod = ((VariableElement) value).getSimpleName().toString();
+                    break;
+                case "authenticationRequired":
+                    m.authenticationRequired = (Boolean) value;
+                    break;
+                case "cacheable":
+                    m.cacheable = (Boolean) value;
+                    break;
+                case "coalesce":
+                    m.coalesce = (Boolean) value;
+                    break;
+                case "interpreter":
+                    String interp = erasure((TypeMirror) value);
+                    m.interpreter = INTERPRETER.equals(interp) ? null : interp;
+                    break;
+                default:
+                    break;
+            }
+        }
+        TypeMirror returnType = method.getReturnType();
+        String returned = erasure(returnType);
+        Set<String> types = new HashSet<>();
+        for (VariableElement param : method.getParameters()) {
+            TypeMirror pt = param.asType();
+            if (pt.getKind() != TypeKind.DECLARED) {
+                error(param, "Parameters of web calls must be objects, not " + pt);
+                ok = false;
+                continue;
+            }
+            String erased = erasure(pt);
+            Param p = new Param(param.getSimpleName().toString(), pt.toString(), erased);
+            m.signature.add(p);
+            if (CALLBACK.equals(erased)) {
+                if (m.callback != null || !RESPONSE_FUTURE.equals(returned)) {
+                    error(param, "A method may take one Callback, and must then return ResponseFuture");
+                    ok = false;
+                }
+                m.callback = p;
+                continue;
+            }
+            if (!types.add(erased)) {
+                error(param, "More than one parameter of type " + erased
+                        + " - the call could only see one of them");
+                ok = false;
+            }
+            AnnotationMirror decorate = annotation(param, DECORATE);
+            if (decorate != null) {
+                for (AnnotationValue v : decorate.getElementValues().values()) {
+                    TypeMirror dec = (TypeMirror) v.getValue();
+                    p.decorator = erasure(dec);
+                    if (dec.getKind() == TypeKind.DECLARED) {
+                        TypeElement decType = (TypeElement) ((DeclaredType) dec).asElement();
+                        p.construct = isConstructible(decType);
+                        p.genericDecorator = !decType.getTypeParameters().isEmpty();
+                    }
+                }
+            }
+            p.required = !HANDLED_BY_INVOKER.contains(erased);
+            m.params.add(p);
+        }
+        Matcher tokens = TOKEN.matcher(m.path);
+        while (tokens.find()) {
+            String token = tokens.group(1);
+            boolean matched = false;
+            for (Param p : m.params) {
+                matched |= p.required && simpleName(p.erasedType).toLowerCase().equals(token);
+            }
+            if (!matched) {
+                error(method, "No parameter for {{" + token + "}} in " + m.path
+                        + " - expected a parameter whose type's simple name is " + token);
+                ok = false;
+            }
+        }
+        if (RESPONSE_FUTURE.equals(returned)) {
+            if (m.callback == null) {
+                error(method, "A method returning ResponseFuture must take a Callback");
+                ok = false;
+            }
+            m.style = Style.CALLBACK;
+        } else if (COMPLETABLE_FUTURE.equals(returned)) {
+            List<? extends TypeMirror> args = ((DeclaredType) returnType).getTypeArguments();
+            if (args.isEmpty()) {
+                error(method, "CompletableFuture must be parameterized with the result type");
+                ok = false;
+            } else {
+                m.resultType = erasure(args.get(0));
+                m.generic = args.get(0).getKind() != TypeKind.DECLARED
+                        || !((DeclaredType) args.get(0)).getTypeArguments().isEmpty();
+            }
+            m.style = Style.ASYNC;
+        } else if (returnType.getKind() == TypeKind.DECLARED) {
+            m.resultType = returned;
+            m.generic = !((DeclaredType) returnType).getTypeArguments().isEmpty();
+            m.style = Style.BLOCKING;
+        } else {
+            error(method, "Web call methods must return CompletableFuture, ResponseFuture or an object, not "
+                    + returnType);
+            ok = false;
+        }
+        boolean throwsException = false;
+        for (TypeMirror thrown : method.getThrownTypes()) {
+            String t = erasure(thrown);
+            throwsException |= "java.lang.Exception".equals(t) || "java.lang.Throwable".equals(t);
+            m.thrown.add(thrown.toString());
+        }
+        if (m.style != Style.ASYNC && !throwsException) {
+            error(method, "A method which blocks for its result or takes a Callback must be declared to throw Exception");
+            ok = false;
+        }
+        m.returnType = returnType.toString();
+        return ok ? m : null;
+    }
+
+    /**
+     * Whether generated code can create a decorator itself, because the
+     * injector would do no more than call its public no-argument
+     * constructor.
+     */
+    private boolean isConstructible(TypeElement type) {
+        Set<Modifier> mods = type.getModifiers();
+        if (type.getKind() != ElementKind.CLASS || !mods.contains(Modifier.PUBLIC)
+                || mods.contains(Modifier.ABSTRACT)
+                || (type.getNestingKind().isNested() && !mods.contains(Modifier.STATIC))) {
+            return false;
+        }
+        boolean noArg = false;
+        for (Element member : type.getEnclosedElements()) {
+            if (isInjected(member)) {
+                return false;
+            }
+            if (member.getKind() == ElementKind.CONSTRUCTOR) {
+                noArg |= ((ExecutableElement) member).getParameters().isEmpty()
+                        && member.getModifiers().contains(Modifier.PUBLIC);
+            }
+        }
+        if (!noArg) {
+            return false;
+        }
+        // Members injected into a superclass would be skipped too
+        TypeMirror sup = type.getSuperclass();
+        while (sup.getKind() == TypeKind.DECLARED) {
+            TypeElement superType = (TypeElement) ((DeclaredType) sup).asElement();
+            for (Element member : superType.getEnclosedElements()) {
+                if (member.getKind() != ElementKind.CONSTRUCTOR && isInjected(member)) {
+                    return false;
+                }
+            }
+            sup = superType.getSuperclass();
+        }
+        return true;
+    }
+
+    private boolean isInjected(Element e) {
+        return annotation(e, GUICE_INJECT) != null || annotation(e, JSR_330_INJECT) != null;
+    }
+
+    private AnnotationMirror annotation(Element e, String type) {
+        for (AnnotationMirror am : e.getAnnotationMirrors()) {
+            if (type.equals(erasure(am.getAnnotationType()))) {
+                return am;
+            }
+        }
+        return null;
+    }
+
+    private String erasure(TypeMirror type) {
+        TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+        if (erased.getKind() == TypeKind.DECLARED) {
+            return ((TypeElement) ((DeclaredType) erased).asElement()).getQualifiedName().toString();
+        }
+        return erased.toString();
+    }
+
+    private static String simpleName(String qualified) {
+        return qualified.substring(qualified.lastIndexOf('.') + 1);
+    }
+
+    private static String constantName(String method) {
+        StringBuilder sb = new StringBuilder(method.length() + 4);
+        for (int i = 0; i < method.length(); i++) {
+            char c = method.charAt(i);
+            if (Character.isUpperCase(c) && i > 0) {
+                sb.append('_');
+            }
+            sb.append(Character.toUpperCase(c));
+        }
+        return sb.toString();
+    }
+
+    private static String literal(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+
+    private void write(Api api) throws IOException {
+        String pkg = api.pkg.isEmpty() ? "" : "package " + api.pkg + ";\n\n";
+        String calls = api.simpleName + "Calls";
+        String client = api.simpleName + "Client";
+        String prefix = api.pkg.isEmpty() ? "" : api.pkg + ".";
+
+        StringBuilder sb = new StringBuilder(pkg)
+                .append("/**\n * The calls of {@link ").append(api.qualifiedName)
+                .append("}, generated from its annotations.\n */\n")
+                .append("public enum ").append(calls).append(" implements com.mastfrog.webapi.WebCallEnum {\n\n");
+        for (int i = 0; i < api.methods.size(); i++) {
+            Method m = api.methods.get(i);
+            sb.append("    ").append(constantName(m.name)).append("(new com.mastfrog.webapi.WebCallBuilder()\n")
+                    .append("            .method(com.mastfrog.acteur.headers.Method.").append(m.httpMethod).append(")\n")
+                    .append("            .path(").append(literal(m.path)).append(")");
+            for (Param p : m.params) {
+                if (p.decorator != null && p.construct) {
+                    sb.append("\n            .withDecorator(").append(p.erasedType).append(".class, new ")
+                            .append(p.decorator).append(p.genericDecorator ? "<>())" : "())");
+                } else if (p.decorator != null) {
+                    sb.append("\n            .withDecorator(").append(p.erasedType).append(".class, ")
+                            .append(p.decorator).append(".class)");
+                } else if (p.required) {
+                    sb.append("\n            .addRequiredType(").append(p.erasedType).append(".class)");
+                }
+            }
+            if (m.authenticationRequired) {
+                sb.append("\n            .authenticationRequired()");
+            }
+            if (m.cacheable) {
+                sb.append("\n            .cacheable()");
+            }
+            if (m.coalesce) {
+                sb.append("\n            .coalesce()");
+            }
+            if (m.interpreter != null) {
+                sb.append("\n            .interpreter(").append(m.interpreter).append(".class)");
+            }
+            sb.append(i == api.methods.size() - 1 ? ");\n\n" : "),\n");
+        }
+        if (api.methods.isEmpty()) {
+            sb.append("    ;\n\n");
+        }
+        sb.append("    private final com.mastfrog.webapi.WebCall call;\n\n")
+                .append("    ").append(calls).append("(com.mastfrog.webapi.WebCallBuilder bldr) {\n")
+                .append("        call = bldr.id(this).build();\n    }\n\n")
+                .append("    @Override\n    public com.mastfrog.webapi.WebCall get() {\n        return call;\n    }\n}\n");
+        try (Writer w = processingEnv.getFiler().createSourceFile(prefix + calls).openWriter()) {
+            w.write(sb.toString());
+        }
+
+        String invoker = "com.mastfrog.webapi.Invoker<" + calls + ">";
+        sb = new StringBuilder(pkg)
+                .append("/**\n * Implements {@link ").append(api.qualifiedName)
+                .append("} by invoking its calls; generated from its annotations.\n */\n")
+                .append("public final class ").append(client).append(" implements ").append(api.qualifiedName).append(" {\n\n")
+                .append("    private final ").append(invoker).append(" invoker;\n\n")
+                .append("    public ").append(client).append("(").append(invoker).append(" invoker) {\n")
+                .append("        this.invoker = invoker.prepare(").append(calls).append(".values());\n    }\n\n")
+                .append("    public static ").append(client).append(" create(com.mastfrog.url.URL base) throws java.io.IOException {\n")
+                .append("        return new ").append(client).append("(com.mastfrog.webapi.Invoker.create(base, ")
+                .append(calls).append(".class));\n    }\n\n")
+                .append("    public ").append(invoker).append(" invoker() {\n        return invoker;\n    }\n");
+        for (Method m : api.methods) {
+            sb.append("\n    @Override\n");
+            if (m.generic) {
+                sb.append("    @SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+            }
+            sb.append("    public ").append(m.returnType).append(' ').append(m.name).append('(');
+            List<Param> all = m.signature;
+            for (int i = 0; i < all.size(); i++) {
+                sb.append(i == 0 ? "" : ", ").append(all.get(i).type).append(' ').append(all.get(i).name);
+            }
+            sb.append(')');
+            for (int i = 0; i < m.thrown.size(); i++) {
+                sb.append(i == 0 ? " throws " : ", ").append(m.thrown.get(i));
+            }
+            sb.append(" {\n        return ");
+            String constant = calls + "." + constantName(m.name);
+            switch (m.style) {
+                case ASYNC:
+                    sb.append(m.generic ? "(java.util.concurrent.CompletableFuture) " : "")
+                            .append("invoker.callAsync(").append(constant).append(", ")
+                            .append(m.resultType).append(".class");
+                    break;
+                case BLOCKING:
+                    sb.append(m.generic ? "(" + m.returnType + ") " : "")
+                            .append("invoker.invoke(").append(constant).append(", ")
+                            .append(m.resultType).append(".class");
+                    break;
+                default:
+                    sb.append("invoker.call(").append(constant).append(", ").append(m.callback.name);
+                    break;
+            }
+            for (Param p : m.params) {
+                sb.append(", ").append(p.name);
+            }
+            sb.append(");\n    }\n");
+        }
+        sb.append("}\n");
+        try (Writer w = processingEnv.getFiler().createSourceFile(prefix + client).openWriter()) {
+            w.write(sb.toString());
+        }
+    }
+
+    private enum Style {
+        ASYNC, BLOCKING, CALLBACK
+    }
+
+    private static final class Api {
+
+        private final String pkg;
+        private final String simpleName;
+        private final String qualifiedName;
+        private final List<Method> methods = new ArrayList<>();
+
+        Api(String pkg, String simpleName, String qualifiedName) {
+            this.pkg = pkg;
+            this.simpleName = simpleName;
+            this.qualifiedName = qualifiedName;
+        }
+    }
+
+    private static final class Method {
+
+        private final String name;
+        private final List<Param> signature = new ArrayList<>();
+        private final List<Param> params = new ArrayList<>();
+        private final List<String> thrown = new ArrayList<>();
+        private String path;
+        private String httpMethod;
+        private boolean authenticationRequired;
+        private boolean cacheable;
+        private boolean coalesce;
+        private String interpreter;
+        private Param callback;
+        private Style style;
+        private String returnType;
+        private String resultType;
+        private boolean generic;
+
+        Method(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final class Param {
+
+        private final String name;
+        private final String type;
+        private final String erasedType;
+        private String decorator;
+        private boolean construct;
+        private boolean genericDecorator;
+        private boolean required;
+
+        Param(String name, String type, String erasedType) {
+            this.name = name;
+            this.type = type;
+            this.erasedType = erasedType;
+        }
+    }
+}
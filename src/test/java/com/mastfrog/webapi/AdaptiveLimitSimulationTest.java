@@ -0,0 +1,128 @@
+package com.mastfrog.webapi;
+
+import com.google.inject.AbstractModule;
+import com.mastfrog.giulius.Dependencies;
+import com.mastfrog.netty.http.client.HttpClient;
+import com.mastfrog.url.URL;
+import com.mastfrog.webapi.builtin.VegasLimit;
+import com.sun.net.httpserver.HttpServer;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Drives an adaptively limited call much harder than a stub upstream can
+ * handle. The stub serves CAPACITY requests at its base latency; each request
+ * beyond that adds to the latency of all of them, as a saturated server's
+ * queue would. The limit should settle near the capacity rather than near
+ * the offered concurrency.
+ *
+ * @author Tim Boudreau
+ */
+public class AdaptiveLimitSimulationTest {
+
+    private static final int CAPACITY = 8;
+    private static final int OFFERED = 64;
+    private static final int REQUESTS = 1500;
+    private static final long BASE_LATENCY_MS = 10;
+    private static final long LATENCY_PER_EXCESS_MS = 4;
+
+    @Test
+    public void testLimitTracksCapacity() throws Exception {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        AtomicInteger served = new AtomicInteger();
+        ExecutorService serverThreads = Executors.newCachedThreadPool();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 128);
+        server.setExecutor(serverThreads);
+        server.createContext("/sim", exchange -> {
+            int now = active.incrementAndGet();
+            try {
+                // Only count the second half, once the limit has had a
+                // chance to find the capacity
+                if (served.get() > REQUESTS / 2) {
+                    peak.accumulateAndGet(now, Math::max);
+                }
+                long latency = BASE_LATENCY_MS + LATENCY_PER_EXCESS_MS * Math.max(0, now - CAPACITY);
+                Thread.sleep(latency);
+                byte[] body = "\"ok\"".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException ex) {
+                exchange.sendResponseHeaders(503, -1);
+            } finally {
+                served.incrementAndGet();
+                active.decrementAndGet();
+                exchange.close();
+            }
+        });
+        server.start();
+        int port = server.getAddress().getPort();
+        Dependencies deps = new Dependencies(new AbstractModule() {
+            @Override
+            protected void configure() {
+                install(new WebApiModule<>(SimAPI.class));
+                bind(URL.class).toInstance(URL.parse("http://localhost:" + port));
+                bind(HttpClient.class).toInstance(HttpClient.builder().noCompression().build());
+            }
+        });
+        try {
+            @SuppressWarnings("unchecked")
+            Invoker<SimAPI> invoker = deps.getInstance(Invoker.class);
+            List<Object[]> args = new ArrayList<>(REQUESTS);
+            for (int i = 0; i < REQUESTS; i++) {
+                args.add(new Object[0]);
+            }
+            ConcurrencyLimiter limiter = invoker.limiter(SimAPI.SIM);
+            AtomicInteger highestLimit = new AtomicInteger();
+            BulkSummary summary = invoker.callAll(SimAPI.SIM, args, OFFERED, new BulkCallback<String>(String.class) {
+                @Override
+                public void onResult(long index, Object[] args, String result) {
+                    highestLimit.accumulateAndGet(limiter.maxInFlight(), Math::max);
+                }
+            }).get(2, TimeUnit.MINUTES);
+            int limit = limiter.maxInFlight();
+            String msg = summary + " final limit " + limit + " highest " + highestLimit.get()
+                    + " peak upstream concurrency " + peak.get();
+            assertEquals(msg, REQUESTS, summary.succeeded());
+            assertTrue(msg, highestLimit.get() >= CAPACITY);
+            assertTrue(msg, limit >= CAPACITY / 2 && limit <= CAPACITY * 4);
+            assertTrue(msg, peak.get() < OFFERED / 2);
+        } finally {
+            deps.getInstance(HttpClient.class).shutdown();
+            deps.shutdown();
+            server.stop(0);
+            serverThreads.shutdownNow();
+        }
+    }
+
+    enum SimAPI implements WebCallEnum {
+        SIM(new WebCallBuilder()
+                .path("/sim")
+                .adaptiveConcurrencyLimit(() -> new VegasLimit(2, 1, 200), REQUESTS, Duration.ofMinutes(1)));
+
+        private final WebCall call;
+
+        SimAPI(WebCallBuilder bldr) {
+            call = bldr.id(this).build();
+        }
+
+        @Override
+        public WebCall get() {
+            return call;
+        }
+    }
+}
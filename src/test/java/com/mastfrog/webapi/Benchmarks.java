@@ -0,0 +1,40 @@
+package com.mastfrog.webapi;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs every benchmark with the GC profiler, so each result comes with its
+ * allocation rate. Needs nothing but the test classpath and the loopback
+ * interface:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/classes:target/test-classes:$(cat cp.txt) com.mastfrog.webapi.Benchmarks
+ * </pre> Any JMH options may be passed, such as a regular expression to pick
+ * benchmarks, <code>-p rows=100</code> to fix a parameter, or
+ * <code>-rf json</code> to keep results for comparison.
+ *
+ * @author Tim Boudreau
+ */
+public final class Benchmarks {
+
+    private Benchmarks() {
+        throw new AssertionError();
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions options = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(options).addProfiler(GCProfiler.class);
+        if (options.getIncludes().isEmpty()) {
+            builder.include(InvokerBenchmark.class.getSimpleName())
+                    .include(InterpreterBenchmark.class.getSimpleName())
+                    .include(RoundTripBenchmark.class.getSimpleName());
+        }
+        new Runner(builder.build()).run();
+    }
+}
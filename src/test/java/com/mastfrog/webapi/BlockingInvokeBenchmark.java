@@ -0,0 +1,140 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.acteur.util.Server;
+import com.mastfrog.giulius.Dependencies;
+import com.mastfrog.netty.http.client.HttpClient;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares Invoker.invoke() with the callback API plus a latch - what
+ * callers had to write before - with many concurrent tasks each making calls
+ * against the test server. Tasks run on virtual threads when the JDK has
+ * them, and on a platform thread per task otherwise. Run with
+ * <code>java -cp ... com.mastfrog.webapi.BlockingInvokeBenchmark [tasks]
+ * [callsPerTask] [rounds]</code>; the defaults are 10000, 5 and 3.
+ *
+ * @author Tim Boudreau
+ */
+public class BlockingInvokeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int calls = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        Dependencies serverDeps = new Dependencies(new TestApiApplication.Module());
+        Server server = serverDeps.getInstance(Server.class);
+        server.start(3729);
+        Dependencies deps = new Dependencies(new WebCallTest.M());
+        @SuppressWarnings("unchecked")
+        Invoker<TestAPI> invoker = deps.getInstance(Invoker.class);
+        try {
+            boolean virtual = virtualThreads() != null;
+            System.out.println((virtual ? "Virtual" : "Platform") + " threads, "
+                    + tasks + " tasks x " + calls + " calls");
+            for (int i = 0; i < rounds; i++) {
+                report("invoke  ", run(tasks, calls, () -> {
+                    Map<?, ?> m = invoker.invoke(TestAPI.HELLO_WORLD, Map.class,
+                            new DisplayName("Tim"), new UserId("tim"));
+                    return m != null;
+                }), tasks * calls);
+                report("callback", run(tasks, calls, () -> {
+                    LatchCallback cb = new LatchCallback();
+                    invoker.call(TestAPI.HELLO_WORLD, cb, new DisplayName("Tim"), new UserId("tim"));
+                    cb.latch.await();
+                    return cb.ok;
+                }), tasks * calls);
+            }
+        } finally {
+            deps.getInstance(HttpClient.class).shutdown();
+            deps.shutdown();
+            serverDeps.shutdown();
+        }
+    }
+
+    private static void report(String name, long[] result, int total) {
+        double seconds = result[0] / 1_000_000_000D;
+        System.out.printf("%s %6d ms  %9.0f calls/s  %d failed%n", name,
+                TimeUnit.NANOSECONDS.toMillis(result[0]), total / seconds, result[1]);
+    }
+
+    interface OneCall {
+
+        boolean call() throws Exception;
+    }
+
+    private static long[] run(int tasks, int calls, OneCall call) throws Exception {
+        ExecutorService svc = virtualThreads();
+        if (svc == null) {
+            svc = Executors.newCachedThreadPool();
+        }
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(tasks);
+        for (int i = 0; i < tasks; i++) {
+            svc.submit(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < calls; j++) {
+                        if (!call.call()) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                } catch (Exception ex) {
+                    failures.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+                return null;
+            });
+        }
+        long then = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - then;
+        svc.shutdown();
+        return new long[]{elapsed, failures.get()};
+    }
+
+    private static ExecutorService virtualThreads() {
+        // Compiled for Java 8, so look the factory up reflectively
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+
+    private static final class LatchCallback extends Callback<Map> {
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile boolean ok;
+
+        LatchCallback() {
+            super(Map.class);
+        }
+
+        @Override
+        public void success(Map object) {
+            ok = object != null;
+            latch.countDown();
+        }
+
+        @Override
+        public void fail(HttpResponseStatus status, ByteBuf bytes) {
+            latch.countDown();
+        }
+
+        @Override
+        public void error(Throwable err) {
+            latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.mastfrog.webapi;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+import com.mastfrog.acteur.Acteur;
+import com.mastfrog.acteur.ActeurFactory;
+import com.mastfrog.acteur.HttpEvent;
+import com.mastfrog.acteur.Page;
+import com.mastfrog.acteur.headers.Headers;
+import com.mastfrog.acteur.headers.Method;
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_MODIFIED;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends an ETag with a response which must be revalidated (/users/x/cached)
+ * or which is fresh for a minute (/users/x/fresh), and a 304 if the request's
+ * If-None-Match matches it. The body includes the number of full responses
+ * sent so far.
+ *
+ * @author tim
+ */
+public class CachedPage extends Page {
+
+    static final AtomicInteger SERVED = new AtomicInteger();
+    private static final String ETAG = "\"v1\"";
+
+    @Inject
+    CachedPage(ActeurFactory af) {
+        add(af.matchPath("^users/.*?/(cached|fresh)$"));
+        add(af.matchMethods(Method.GET));
+        add(CachedActeur.class);
+    }
+
+    private static final class CachedActeur extends Acteur {
+
+        @Inject
+        CachedActeur(HttpEvent evt) throws Exception {
+            boolean fresh = "fresh".equals(evt.path().getElement(2).toString());
+            add(Headers.ETAG, ETAG);
+            add(Headers.header("Cache-Control"), fresh ? "max-age=60" : "no-cache");
+            if (ETAG.equals(evt.header("If-None-Match"))) {
+                setState(new RespondWith(NOT_MODIFIED));
+                return;
+            }
+            setState(new RespondWith(OK, ImmutableMap.of(
+                    "name", evt.path().getElement(1).toString(),
+                    "served", SERVED.incrementAndGet())));
+        }
+    }
+}
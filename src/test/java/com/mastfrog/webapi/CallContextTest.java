@@ -0,0 +1,105 @@
+package com.mastfrog.webapi;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
+import com.mastfrog.giulius.Dependencies;
+import com.mastfrog.giulius.scope.ReentrantScope;
+import com.mastfrog.netty.http.client.HttpClient;
+import com.mastfrog.netty.http.client.HttpRequestBuilder;
+import com.mastfrog.url.URL;
+import com.mastfrog.webapi.builtin.ParameterFromClassNameAndToStringCamelCase;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class CallContextTest {
+
+    private static final AtomicReference<UserId> INJECTED = new AtomicReference<>();
+
+    @Test
+    public void testContext() throws Exception {
+        HttpClient client = HttpClient.builder().build();
+        Dependencies deps = new Dependencies(new AbstractModule() {
+            @Override
+            protected void configure() {
+                install(new WebApiModule<>(ContextAPI.class));
+                bind(URL.class).toInstance(URL.parse("http://localhost:3729"));
+                bind(HttpClient.class).toInstance(client);
+            }
+        });
+        try {
+            ReentrantScope scope = new ReentrantScope();
+            CallPlan plain = new CallPlan(ContextAPI.PLAIN.get(), deps, PathTemplate.basePrefix(null), deps.getInstance(JsonBindings.class));
+            CallPlan injecting = new CallPlan(ContextAPI.INJECTING.get(), deps, PathTemplate.basePrefix(null), deps.getInstance(JsonBindings.class));
+            assertFalse(plain.isScoped());
+            assertTrue(injecting.isScoped());
+
+            // As in the scope, the last matching argument wins
+            Deadline deadline = Deadline.after(Duration.ofMinutes(1));
+            CallContext ctx = plain.context(ContextAPI.PLAIN, new Object[]{new UserId("a"), deadline,
+                new DisplayName("Joe Blow"), new UserId("b")}, scope);
+            assertSame(deadline, ctx.deadline());
+            HttpRequestBuilder reqb = plain.populate(client.request(ContextAPI.PLAIN.get().method()),
+                    URL.parse("http://localhost:3729"), ctx);
+            assertTrue(reqb.toURL().toString(), reqb.toURL().toString().endsWith("/users/b/hello?displayName=Joe%20Blow"));
+            assertFalse(scope.inScope());
+
+            // A decorator created per invocation can still inject from the scope
+            UserId user = new UserId("c");
+            ctx = injecting.context(ContextAPI.INJECTING, new Object[]{user, new DisplayName("x")},
+                    deps.getInstance(Key.get(ReentrantScope.class, Names.named("webapi"))));
+            injecting.populate(client.request(ContextAPI.INJECTING.get().method()),
+                    URL.parse("http://localhost:3729"), ctx);
+            assertSame(user, INJECTED.get());
+        } finally {
+            client.shutdown();
+            deps.shutdown();
+        }
+    }
+
+    static final class InjectingDecorator implements Decorator<DisplayName> {
+
+        private final UserId user;
+
+        @Inject
+        InjectingDecorator(UserId user) {
+            this.user = user;
+        }
+
+        @Override
+        public void decorate(WebCall call, HttpRequestBuilder builder, DisplayName obj, Class<DisplayName> type) {
+            INJECTED.set(user);
+        }
+    }
+
+    enum ContextAPI implements WebCallEnum {
+        PLAIN(new WebCallBuilder()
+                .addRequiredType(UserId.class)
+                .withDecorator(DisplayName.class, ParameterFromClassNameAndToStringCamelCase.class)
+                .path("/users/{{userid}}/hello")),
+        INJECTING(new WebCallBuilder()
+                .addRequiredType(UserId.class)
+                .withDecorator(DisplayName.class, InjectingDecorator.class)
+                .path("/users/{{userid}}/hello"));
+
+        private final WebCall call;
+
+        ContextAPI(WebCallBuilder bldr) {
+            call = bldr.id(this).build();
+        }
+
+        @Override
+        public WebCall get() {
+            return call;
+        }
+    }
+}
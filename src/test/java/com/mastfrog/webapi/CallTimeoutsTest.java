@@ -0,0 +1,184 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.netty.http.client.HttpClient;
+import com.mastfrog.netty.http.client.HttpRequestBuilder;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Fires timeouts by hand while a response is in flight, to check that a
+ * call gets exactly one outcome whichever way the race goes.
+ *
+ * @author Tim Boudreau
+ */
+public class CallTimeoutsTest {
+
+    private HttpClient client;
+    private final ManualTimer wheel = new ManualTimer();
+    private final List<Runnable> deferred = new ArrayList<>();
+    private final TimeoutTimer timer = new TimeoutTimer(wheel, deferred::add);
+    private final Outcomes outcomes = new Outcomes();
+
+    @Before
+    public void setUp() {
+        client = HttpClient.builder().build();
+    }
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+    }
+
+    private Callback<Map> watched() {
+        Callback<Map> callback = CallTimeouts.once(outcomes);
+        HttpRequestBuilder reqb = client.get().setURL("http://localhost:1/");
+        CallTimeouts.watch(new CallTimeouts(null, null, Duration.ofSeconds(1)), null, reqb,
+                "test", timer, callback::error);
+        return callback;
+    }
+
+    private void runDeferred() {
+        List<Runnable> work = new ArrayList<>(deferred);
+        deferred.clear();
+        work.forEach(Runnable::run);
+    }
+
+    @Test
+    public void testResponseFinishingAfterTickWins() throws Exception {
+        Callback<Map> callback = watched();
+        wheel.fire();
+        assertEquals(1, deferred.size());
+        // The response finishes before the timeout's work runs
+        callback.success(Collections.singletonMap("result", 1));
+        runDeferred();
+        assertEquals(Arrays.asList("success {result=1}"), outcomes.list);
+    }
+
+    @Test
+    public void testResponseAfterTimeoutIsDropped() throws Exception {
+        Callback<Map> callback = watched();
+        wheel.fire();
+        runDeferred();
+        callback.success(Collections.singletonMap("result", 1));
+        callback.fail(HttpResponseStatus.BAD_GATEWAY, null);
+        assertEquals(1, outcomes.list.size());
+        assertTrue(outcomes.list.get(0), outcomes.list.get(0).startsWith("error "));
+    }
+
+    private static final class ManualTimer implements Timer {
+
+        private final List<ManualTimeout> pending = new ArrayList<>();
+
+        @Override
+        public synchronized Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+            ManualTimeout result = new ManualTimeout(this, task);
+            pending.add(result);
+            return result;
+        }
+
+        void fire() throws Exception {
+            List<ManualTimeout> all;
+            synchronized (this) {
+                all = new ArrayList<>(pending);
+                pending.clear();
+            }
+            assertEquals(1, all.size());
+            for (ManualTimeout t : all) {
+                if (!t.isCancelled()) {
+                    t.expired = true;
+                    t.task.run(t);
+                }
+            }
+        }
+
+        @Override
+        public synchronized Set<Timeout> stop() {
+            Set<Timeout> result = new HashSet<>(pending);
+            pending.clear();
+            return result;
+        }
+    }
+
+    private static final class ManualTimeout implements Timeout {
+
+        private final Timer timer;
+        private final TimerTask task;
+        private volatile boolean expired;
+        private volatile boolean cancelled;
+
+        ManualTimeout(Timer timer, TimerTask task) {
+            this.timer = timer;
+            this.task = task;
+        }
+
+        @Override
+        public Timer timer() {
+            return timer;
+        }
+
+        @Override
+        public TimerTask task() {
+            return task;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return expired;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (expired || cancelled) {
+                return false;
+            }
+            cancelled = true;
+            return true;
+        }
+    }
+
+    private static final class Outcomes extends Callback<Map> {
+
+        private final List<String> list = new ArrayList<>();
+
+        Outcomes() {
+            super(Map.class);
+        }
+
+        @Override
+        public void success(Map object) {
+            list.add("success " + object);
+        }
+
+        @Override
+        public void fail(HttpResponseStatus status, ByteBuf bytes) {
+            list.add("fail " + status.code());
+        }
+
+        @Override
+        public void error(Throwable err) {
+            list.add("error " + err.getMessage());
+        }
+    }
+}
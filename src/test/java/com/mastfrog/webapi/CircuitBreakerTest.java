@@ -0,0 +1,99 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.webapi.CircuitBreaker.CircuitState;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class CircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    public void testSlowCallsOpen() {
+        CircuitBreaker breaker = new CircuitBreaker("slow", 4, 0.5, Duration.ofMillis(100), 0.75, Duration.ofSeconds(10), 1);
+        for (int i = 0; i < 3; i++) {
+            breaker.record(breaker.acquire(), false, SLOW);
+        }
+        // The window is not full yet
+        assertEquals(CircuitState.CLOSED, breaker.state());
+        assertEquals(1, breaker.slowCallRate(), 0.001);
+        breaker.record(breaker.acquire(), false, FAST);
+        assertEquals(CircuitState.OPEN, breaker.state());
+        assertNull(breaker.acquire());
+        assertEquals(1, breaker.rejected());
+    }
+
+    @Test
+    public void testWindowSlides() {
+        CircuitBreaker breaker = new CircuitBreaker("sliding", 4, 0.5, Duration.ofSeconds(10), 1);
+        breaker.record(breaker.acquire(), true, FAST);
+        for (int i = 0; i < 6; i++) {
+            breaker.record(breaker.acquire(), false, FAST);
+        }
+        assertEquals(0, breaker.failureRate(), 0.001);
+        breaker.record(breaker.acquire(), true, FAST);
+        assertEquals(0.25, breaker.failureRate(), 0.001);
+        assertEquals(CircuitState.CLOSED, breaker.state());
+        breaker.record(breaker.acquire(), true, FAST);
+        assertEquals(CircuitState.OPEN, breaker.state());
+    }
+
+    @Test
+    public void testHalfOpenLimitsTrialCalls() {
+        CircuitBreaker breaker = new CircuitBreaker("trial", 1, 1, null, 1, Duration.ofMillis(20), 2, now::get);
+        breaker.record(breaker.acquire(), true, FAST);
+        assertEquals(CircuitState.OPEN, breaker.state());
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(20));
+        CircuitBreaker.Phase first = breaker.acquire();
+        CircuitBreaker.Phase second = breaker.acquire();
+        assertNotNull(first);
+        assertNotNull(second);
+        assertEquals(CircuitState.HALF_OPEN, breaker.state());
+        assertNull(breaker.acquire());
+        // A trial which never completes gives its permit back
+        breaker.release(second);
+        second = breaker.acquire();
+        assertNotNull(second);
+        breaker.record(first, false, FAST);
+        assertEquals(CircuitState.HALF_OPEN, breaker.state());
+        breaker.record(second, false, FAST);
+        assertEquals(CircuitState.CLOSED, breaker.state());
+    }
+
+    @Test
+    public void testReopensUntilTrialSucceeds() {
+        CircuitBreaker breaker = new CircuitBreaker("cycle", 2, 0.5, null, 1, Duration.ofMillis(200), 1, now::get);
+        List<String> transitions = new ArrayList<>();
+        breaker.addListener((b, from, to) -> transitions.add(from + ">" + to));
+        for (int i = 0; i < 2; i++) {
+            breaker.record(breaker.acquire(), true, FAST);
+        }
+        assertEquals(CircuitState.OPEN, breaker.state());
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(199));
+        assertNull("Still open until the open duration has elapsed", breaker.acquire());
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        breaker.record(breaker.acquire(), true, FAST);
+        assertEquals(CircuitState.OPEN, breaker.state());
+        assertNull(breaker.acquire());
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+        breaker.record(breaker.acquire(), false, FAST);
+        assertEquals(CircuitState.CLOSED, breaker.state());
+        assertEquals(2, breaker.rejected());
+        assertEquals(Arrays.asList("CLOSED>OPEN", "OPEN>HALF_OPEN", "HALF_OPEN>OPEN",
+                "OPEN>HALF_OPEN", "HALF_OPEN>CLOSED"), transitions);
+    }
+}
@@ -0,0 +1,91 @@
+package com.mastfrog.webapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.mastfrog.webapi.builtin.CborCodec;
+import com.mastfrog.webapi.builtin.JsonCodec;
+import com.mastfrog.webapi.builtin.SmileCodec;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import java.util.Collections;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class CodecsTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonBindings bindings = new JsonBindings(mapper);
+    private final SmileCodec smile = new SmileCodec(bindings);
+    private final CborCodec cbor = new CborCodec(bindings);
+    private final JsonCodec json = new JsonCodec(bindings);
+
+    private static HttpHeaders contentType(String type) {
+        HttpHeaders result = new DefaultHttpHeaders();
+        if (type != null) {
+            result.add(HttpHeaderNames.CONTENT_TYPE, type);
+        }
+        return result;
+    }
+
+    @Test
+    public void testSelectionByContentType() {
+        Codecs codecs = new Codecs(smile, cbor, json);
+        assertSame(cbor, codecs.find(contentType("application/CBOR"), Map.class));
+        assertSame(json, codecs.find(contentType("application/json; charset=utf-8"), Map.class));
+        assertSame(json, codecs.find(contentType("application/problem+json"), Map.class));
+        assertSame(smile, codecs.find(contentType("application/x-jackson-smile"), Map.class));
+        // Unknown or missing content types fall back to the first codec
+        assertSame(smile, codecs.find(contentType("text/plain"), Map.class));
+        assertSame(smile, codecs.find(contentType(null), Map.class));
+    }
+
+    @Test
+    public void testSelectionByType() {
+        Codec onlyThings = new Codec("text/x-thing") {
+            @Override
+            public boolean produces(Class<?> type) {
+                return type == Thing.class;
+            }
+
+            @Override
+            public <T> T decode(HttpHeaders headers, ByteBuf content, Class<T> as) {
+                return null;
+            }
+        };
+        Codecs codecs = new Codecs(onlyThings, json);
+        assertSame(json, codecs.find(contentType("text/x-thing"), Map.class));
+        assertSame(onlyThings, codecs.find(contentType("text/x-thing"), Thing.class));
+        assertNull(new Codecs(onlyThings).find(contentType("text/x-thing"), Map.class));
+    }
+
+    @Test
+    public void testAccept() {
+        assertEquals("application/x-jackson-smile, application/cbor;q=0.9, application/json;q=0.8, text/json;q=0.8",
+                new Codecs(smile, cbor, json).accept());
+        assertEquals("application/json, text/json", new Codecs(json).accept());
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+        byte[] bytes = new ObjectMapper(new SmileFactory())
+                .writeValueAsBytes(Collections.singletonMap("a", 1));
+        Map<?, ?> m = smile.decode(contentType("application/x-jackson-smile"),
+                Unpooled.wrappedBuffer(bytes), Map.class);
+        assertEquals(1, m.get("a"));
+        assertTrue(smile.decodes("APPLICATION/X-JACKSON-SMILE"));
+    }
+
+    static final class Thing {
+    }
+}
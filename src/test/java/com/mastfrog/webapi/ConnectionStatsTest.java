@@ -0,0 +1,41 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.webapi.LoadGeneratorTest.StubAPI;
+import io.netty.channel.ChannelOption;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Warms up a standalone invoker against a stub server and checks the
+ * connections it reports.
+ *
+ * @author Tim Boudreau
+ */
+public class ConnectionStatsTest {
+
+    @Test
+    public void testWarmUp() throws Exception {
+        try (StubServer stub = StubServer.start(Duration.ofMillis(20), 0, "\"ok\"")) {
+            Invoker<StubAPI> invoker = Invoker.create(stub.url(), StubAPI.class,
+                    b -> b.threadCount(2).setChannelOption(ChannelOption.TCP_NODELAY, true));
+            BulkSummary summary = invoker.warmUp(StubAPI.STUB, String.class, 20, 4)
+                    .get(30, TimeUnit.SECONDS);
+            ConnectionStats connections = invoker.connections();
+            String msg = summary + " " + connections;
+            assertEquals(msg, 20, summary.succeeded());
+            assertEquals(msg, 20, connections.opened());
+            assertEquals(msg, 20, connections.connectTime().snapshot().count());
+            // A finished request's channel may close just after the next
+            // one connects, so the peak can exceed the concurrency a little
+            assertTrue(msg, connections.peakOpen() >= 1 && connections.peakOpen() <= 20);
+            long until = System.currentTimeMillis() + 5000;
+            while (connections.open() > 0 && System.currentTimeMillis() < until) {
+                Thread.sleep(10);
+            }
+            assertEquals(msg, 0, connections.open());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.webapi.builtin.BodyFromMap;
+import com.mastfrog.webapi.builtin.BodyFromString;
+import com.mastfrog.webapi.builtin.ParameterFromClassNameAndToStringCamelCase;
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class DecoratorsTest {
+
+    @Test
+    public void testExactMatchWinsOverSubtype() {
+        Decorators d = new Decorators();
+        d.add(HashMap.class, ParameterFromClassNameAndToStringCamelCase.class);
+        d.add(Map.class, BodyFromMap.class);
+        d.add(String.class, BodyFromString.class);
+        Decorators frozen = d.freeze();
+        assertEquals(BodyFromMap.class, frozen.get(Map.class));
+        assertEquals(ParameterFromClassNameAndToStringCamelCase.class, frozen.get(HashMap.class));
+        assertEquals(BodyFromString.class, frozen.get(String.class));
+        // A registered subtype of the requested type matches
+        assertEquals(BodyFromString.class, frozen.get(CharSequence.class));
+        assertNull(frozen.get(Integer.class));
+        assertEquals(frozen.get(Map.class), frozen.get(Map.class));
+    }
+
+    @Test
+    public void testInstancesAreUsedAsIs() {
+        BodyFromString body = new BodyFromString();
+        Decorators d = new Decorators();
+        d.add(String.class, BodyFromString.class, body);
+        d.add(Map.class, BodyFromMap.class);
+        Decorators frozen = d.freeze();
+        assertEquals(BodyFromString.class, frozen.get(String.class));
+        assertSame(body, frozen.instance(String.class));
+        assertSame(body, frozen.instance(CharSequence.class));
+        assertNull(frozen.instance(Map.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnfrozenCannotBeQueried() {
+        Decorators d = new Decorators();
+        d.add(String.class, BodyFromString.class);
+        d.get(String.class);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFrozenCannotBeModified() {
+        new Decorators().freeze().add(String.class, BodyFromString.class);
+    }
+}
@@ -0,0 +1,101 @@
+package com.mastfrog.webapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import io.netty.util.CharsetUtil;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class DefaultResponseInterceptorTest {
+
+    private final DefaultResponseInterceptor interp = new DefaultResponseInterceptor(new JsonBindings(new ObjectMapper()));
+    private final HttpHeaders headers = new DefaultHttpHeaders();
+
+    private static ByteBuf direct(String s) {
+        byte[] bytes = s.getBytes(CharsetUtil.UTF_8);
+        return Unpooled.directBuffer(bytes.length).writeBytes(bytes);
+    }
+
+    @Test
+    public void testStringsDoNotMoveReaderIndex() throws Exception {
+        ByteBuf buf = direct("Hello wörld");
+        assertEquals("Hello wörld", interp.interpret(OK, headers, buf, String.class));
+        assertEquals(0, buf.readerIndex());
+        CharSequence seq = interp.interpret(OK, headers, buf, CharSequence.class);
+        assertEquals("Hello wörld", seq.toString());
+        TextView view = interp.interpret(OK, headers, buf, TextView.class);
+        assertFalse(view.isShared());
+        assertEquals("Hello wörld", view.toString());
+        assertEquals('ö', view.charAt(7));
+
+        HttpHeaders latin = new DefaultHttpHeaders().add(HttpHeaderNames.CONTENT_TYPE, "text/plain; charset=ISO-8859-1");
+        ByteBuf latinBuf = Unpooled.wrappedBuffer("wörld".getBytes(CharsetUtil.ISO_8859_1));
+        assertEquals("wörld", interp.interpret(OK, latin, latinBuf, String.class));
+        buf.release();
+    }
+
+    @Test
+    public void testCharSequenceIsACopy() throws Exception {
+        ByteBuf buf = direct("Hello world");
+        CharSequence seq = interp.interpret(OK, headers, buf, CharSequence.class);
+        assertTrue(seq instanceof String);
+        buf.setByte(0, 'J');
+        assertEquals("Hello world", seq);
+        buf.release();
+    }
+
+    @Test
+    public void testAsciiTextViewIsAView() throws Exception {
+        ByteBuf buf = direct("xxHello world");
+        buf.readerIndex(2);
+        TextView seq = interp.interpret(OK, headers, buf, TextView.class);
+        assertTrue(seq.isShared());
+        assertEquals(11, seq.length());
+        assertEquals('H', seq.charAt(0));
+        assertEquals("world", seq.subSequence(6, 11).toString());
+        assertEquals("Hello world", seq.toString());
+        buf.setByte(2, 'J');
+        assertEquals('J', seq.charAt(0));
+        buf.release();
+    }
+
+    @Test
+    public void testByteBufferSharesContent() throws Exception {
+        ByteBuf buf = Unpooled.wrappedBuffer("abcdef".getBytes(CharsetUtil.US_ASCII));
+        ByteBuffer bb = interp.interpret(OK, headers, buf, ByteBuffer.class);
+        assertTrue(bb.isReadOnly());
+        assertEquals(6, bb.remaining());
+        buf.setByte(0, 'z');
+        assertEquals('z', bb.get(0));
+        assertEquals(0, buf.readerIndex());
+    }
+
+    @Test
+    public void testJsonFromHeapAndDirectBuffers() throws Exception {
+        String json = "{\"name\":\"tim\",\"count\":3}";
+        ByteBuf heap = Unpooled.wrappedBuffer(("[]" + json).getBytes(CharsetUtil.UTF_8));
+        heap.readerIndex(2);
+        Map<?, ?> m = interp.interpret(OK, headers, heap, Map.class);
+        assertEquals("tim", m.get("name"));
+        assertEquals(2, heap.readerIndex());
+
+        ByteBuf direct = direct(json);
+        m = interp.interpret(OK, headers, direct, Map.class);
+        assertEquals(3, m.get("count"));
+        assertEquals(0, direct.readerIndex());
+        direct.release();
+    }
+}
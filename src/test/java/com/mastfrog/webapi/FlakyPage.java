@@ -0,0 +1,52 @@
+package com.mastfrog.webapi;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+import com.mastfrog.acteur.Acteur;
+import com.mastfrog.acteur.ActeurFactory;
+import com.mastfrog.acteur.HttpEvent;
+import com.mastfrog.acteur.Page;
+import com.mastfrog.acteur.headers.Method;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Answers 503 to the first few requests for a user id and then succeeds; the
+ * number of failures is the digits at the end of the id, so /users/x2/flaky
+ * fails twice. The body includes the number of attempts and the
+ * Idempotency-Key header sent with the last one.
+ *
+ * @author tim
+ */
+public class FlakyPage extends Page {
+
+    static final ConcurrentHashMap<String, AtomicInteger> ATTEMPTS = new ConcurrentHashMap<>();
+
+    @Inject
+    FlakyPage(ActeurFactory af) {
+        add(af.matchPath("^users/.*?/flaky$"));
+        add(af.matchMethods(Method.GET, Method.POST));
+        add(FlakyActeur.class);
+    }
+
+    private static final class FlakyActeur extends Acteur {
+
+        @Inject
+        FlakyActeur(HttpEvent evt) throws Exception {
+            String user = evt.path().getElement(1).toString();
+            int failures = Integer.parseInt(user.replaceAll("^.*?(\\d+)$", "$1"));
+            int attempt = ATTEMPTS.computeIfAbsent(user, u -> new AtomicInteger()).incrementAndGet();
+            if (attempt <= failures) {
+                setState(new RespondWith(SERVICE_UNAVAILABLE, "Try again\n"));
+                return;
+            }
+            String key = evt.header("Idempotency-Key");
+            setState(new RespondWith(OK, ImmutableMap.of(
+                    "name", user,
+                    "attempts", attempt,
+                    "key", key == null ? "" : key)));
+        }
+    }
+}
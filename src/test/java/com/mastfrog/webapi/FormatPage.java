@@ -0,0 +1,80 @@
+package com.mastfrog.webapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+import com.mastfrog.acteur.Acteur;
+import com.mastfrog.acteur.ActeurFactory;
+import com.mastfrog.acteur.Event;
+import com.mastfrog.acteur.HttpEvent;
+import com.mastfrog.acteur.Page;
+import com.mastfrog.acteur.ResponseWriter;
+import com.mastfrog.acteur.headers.Headers;
+import com.mastfrog.acteur.headers.Method;
+import com.mastfrog.mime.MimeType;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import java.util.Map;
+
+/**
+ * Responds in whichever of Smile, CBOR or JSON the Accept header lists first,
+ * echoing the Accept header.
+ *
+ * @author tim
+ */
+public class FormatPage extends Page {
+
+    @Inject
+    FormatPage(ActeurFactory af) {
+        add(af.matchPath("^users/.*?/format$"));
+        add(af.matchMethods(Method.GET));
+        add(FormatActeur.class);
+    }
+
+    private static final class FormatActeur extends Acteur {
+
+        @Inject
+        FormatActeur(HttpEvent evt) throws Exception {
+            String accept = evt.header("Accept");
+            String first = accept == null ? "" : accept.split("[,;]")[0].trim();
+            ObjectMapper mapper;
+            String format;
+            switch (first) {
+                case "application/x-jackson-smile":
+                    mapper = new ObjectMapper(new SmileFactory());
+                    format = "smile";
+                    break;
+                case "application/cbor":
+                    mapper = new ObjectMapper(new CBORFactory());
+                    format = "cbor";
+                    break;
+                default:
+                    mapper = new ObjectMapper();
+                    format = "json";
+                    first = "application/json";
+            }
+            Map<String, Object> m = ImmutableMap.of("format", format, "accept", accept == null ? "" : accept,
+                    "name", evt.path().getElement(1).toString());
+            byte[] body = mapper.writeValueAsBytes(m);
+            add(Headers.CONTENT_TYPE, MimeType.parse(first));
+            setState(new RespondWith(OK));
+            setResponseWriter(new BytesWriter(body));
+        }
+    }
+
+    private static final class BytesWriter extends ResponseWriter {
+
+        private final byte[] body;
+
+        BytesWriter(byte[] body) {
+            this.body = body;
+        }
+
+        @Override
+        public Status write(Event<?> evt, Output out, int iteration) throws Exception {
+            out.write(body);
+            return Status.DONE;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.giulius.Dependencies;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Drives hedging with a stub which counts requests and answers only when
+ * told to, so nothing depends on how long anything takes.
+ *
+ * @author Tim Boudreau
+ */
+public class HedgeTest {
+
+    private Dependencies deps;
+    private TimeoutTimer timer;
+    private final List<Callback<Map>> sent = new CopyOnWriteArrayList<>();
+    private final CountDownLatch hedged = new CountDownLatch(1);
+    private final Outcomes outcomes = new Outcomes();
+
+    @Before
+    public void setUp() throws Exception {
+        deps = Dependencies.builder().build();
+        timer = deps.getInstance(TimeoutTimer.class);
+    }
+
+    @After
+    public void tearDown() {
+        deps.shutdown();
+    }
+
+    private Hedge hedge() {
+        return new Hedge(new HedgePolicy(0, TimeUnit.MILLISECONDS.toNanos(1), 1), timer);
+    }
+
+    private Hedge.Attempt<Callback<Map>> stub() {
+        return (target, prepare) -> {
+            sent.add(target);
+            if (sent.size() == 2) {
+                hedged.countDown();
+            }
+            return null;
+        };
+    }
+
+    @Test
+    public void testSecondRequestWins() throws Exception {
+        hedge().call(outcomes, stub());
+        assertTrue(hedged.await(10, TimeUnit.SECONDS));
+        sent.get(1).success(Collections.singletonMap("attempt", 2));
+        sent.get(0).success(Collections.singletonMap("attempt", 1));
+        assertEquals(Arrays.asList("success {attempt=2}"), outcomes.list);
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void testFailureIgnoredWhileOtherIsOutstanding() throws Exception {
+        hedge().call(outcomes, stub());
+        assertTrue(hedged.await(10, TimeUnit.SECONDS));
+        sent.get(0).error(new IOException("reset"));
+        assertEquals(Collections.emptyList(), outcomes.list);
+        sent.get(1).success(Collections.singletonMap("attempt", 2));
+        assertEquals(Arrays.asList("success {attempt=2}"), outcomes.list);
+    }
+
+    @Test
+    public void testLastFailureIsPassedOn() throws Exception {
+        hedge().call(outcomes, stub());
+        assertTrue(hedged.await(10, TimeUnit.SECONDS));
+        sent.get(0).error(new IOException("first"));
+        sent.get(1).error(new IOException("second"));
+        assertEquals(Arrays.asList("error second"), outcomes.list);
+    }
+
+    @Test
+    public void testNoHedgeWithoutBudget() throws Exception {
+        HedgePolicy policy = new HedgePolicy(0, TimeUnit.MILLISECONDS.toNanos(1), 0);
+        // Spend the one token a policy starts with
+        assertTrue(policy.permit());
+        new Hedge(policy, timer).call(outcomes, stub());
+        // Still one request once the delay has certainly passed
+        CountDownLatch ticked = new CountDownLatch(1);
+        timer.defer(ticked::countDown, TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(ticked.await(10, TimeUnit.SECONDS));
+        assertEquals(1, sent.size());
+        sent.get(0).success(Collections.singletonMap("attempt", 1));
+        assertEquals(Arrays.asList("success {attempt=1}"), outcomes.list);
+    }
+
+    private static final class Outcomes extends Callback<Map> {
+
+        private final List<String> list = new CopyOnWriteArrayList<>();
+
+        Outcomes() {
+            super(Map.class);
+        }
+
+        @Override
+        public void success(Map object) {
+            list.add("success " + object);
+        }
+
+        @Override
+        public void fail(HttpResponseStatus status, ByteBuf bytes) {
+            list.add("fail " + status.code());
+        }
+
+        @Override
+        public void error(Throwable err) {
+            list.add("error " + err.getMessage());
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.acteur.headers.Headers;
+import com.mastfrog.netty.http.client.HttpRequestBuilder;
+
+/**
+ * An entity tag to send in an If-None-Match header.
+ *
+ * @author tim
+ */
+public class IfNoneMatch {
+
+    public final String etag;
+
+    public IfNoneMatch(String etag) {
+        this.etag = etag;
+    }
+
+    public String toString() {
+        return etag;
+    }
+
+    public static final class IfNoneMatchDecorator implements Decorator<IfNoneMatch> {
+
+        @Override
+        public void decorate(WebCall call, HttpRequestBuilder builder, IfNoneMatch obj, Class<IfNoneMatch> type) {
+            builder.addHeader(Headers.header("If-None-Match"), obj.etag);
+        }
+    }
+}
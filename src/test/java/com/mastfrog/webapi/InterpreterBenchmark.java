@@ -0,0 +1,102 @@
+package com.mastfrog.webapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures interpreting JSON responses of different sizes as the result
+ * types callers commonly ask for. Run with
+ * <code>java -cp ... com.mastfrog.webapi.InterpreterBenchmark</code>; the GC
+ * profiler reports allocation per interpretation.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int rows;
+
+    private final HttpHeaders headers = new DefaultHttpHeaders()
+            .add(HttpHeaderNames.CONTENT_TYPE, "application/json; charset=UTF-8");
+    private DefaultResponseInterceptor interceptor;
+    private ByteBuf content;
+
+    @Setup
+    public void setup() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        interceptor = new DefaultResponseInterceptor(new JsonBindings(mapper));
+        Rows payload = new Rows();
+        for (int i = 0; i < rows; i++) {
+            WebCallTest.Row row = new WebCallTest.Row();
+            row.index = i;
+            row.name = "Row " + i;
+            payload.rows.add(row);
+        }
+        content = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(mapper.writeValueAsBytes(payload)));
+    }
+
+    @Benchmark
+    public Rows pojo() throws Exception {
+        return interceptor.interpret(HttpResponseStatus.OK, headers, content, Rows.class);
+    }
+
+    @Benchmark
+    public Map<?, ?> map() throws Exception {
+        return interceptor.interpret(HttpResponseStatus.OK, headers, content, Map.class);
+    }
+
+    @Benchmark
+    public String string() throws Exception {
+        return interceptor.interpret(HttpResponseStatus.OK, headers, content, String.class);
+    }
+
+    @Benchmark
+    public byte[] bytes() throws Exception {
+        return interceptor.interpret(HttpResponseStatus.OK, headers, content, byte[].class);
+    }
+
+    public static class Rows {
+
+        public List<WebCallTest.Row> rows = new ArrayList<>();
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(InterpreterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
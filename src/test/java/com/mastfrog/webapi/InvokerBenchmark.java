@@ -0,0 +1,109 @@
+package com.mastfrog.webapi;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
+import com.mastfrog.giulius.Dependencies;
+import com.mastfrog.giulius.scope.ReentrantScope;
+import com.mastfrog.netty.http.client.HttpClient;
+import com.mastfrog.netty.http.client.HttpRequestBuilder;
+import com.mastfrog.webapi.builtin.Parameters;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the per-call overhead of turning a web call and its arguments into
+ * a request, without any network I/O. Run with
+ * <code>java -cp ... com.mastfrog.webapi.InvokerBenchmark</code>; the GC
+ * profiler reports allocation per request.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+// Requests made by toRequest() are never sent, so their bodies are never
+// released; unpooled buffers are at least freed once collected
+@Fork(value = 1, jvmArgsAppend = {"-Dio.netty.allocator.type=unpooled", "-Dio.netty.leakDetection.level=disabled"})
+public class InvokerBenchmark {
+
+    private final UserId user = new UserId("tim");
+    private final DisplayName name = new DisplayName("Tim Boudreau");
+    private final Map<String, Object> body = ImmutableMap.of("name", "Tim", "count", 23);
+    private final Parameters parameters = Parameters.create("displayName", "Tim Boudreau")
+            .add("start", "0").add("count", "100").add("q", "hello world");
+    private HttpClient client;
+    private Dependencies deps;
+    private Invoker<?> invoker;
+    private ReentrantScope scope;
+
+    @Setup
+    public void setup() throws IOException {
+        deps = new Dependencies(new WebCallTest.M());
+        invoker = deps.getInstance(Invoker.class);
+        scope = deps.getInstance(Key.get(ReentrantScope.class, Names.named("webapi")));
+        client = deps.getInstance(HttpClient.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        deps.getInstance(HttpClient.class).shutdown();
+        deps.shutdown();
+    }
+
+    @Benchmark
+    public HttpRequestBuilder helloWorld() throws Exception {
+        try (AutoCloseable ac = scope.enter(name, user)) {
+            return invoker.toRequest(TestAPI.HELLO_WORLD.get(), deps);
+        }
+    }
+
+    @Benchmark
+    public HttpRequestBuilder echo() throws Exception {
+        try (AutoCloseable ac = scope.enter("hot ", user)) {
+            return invoker.toRequest(TestAPI.ECHO.get(), deps);
+        }
+    }
+
+    @Benchmark
+    public HttpRequestBuilder echoMap() throws Exception {
+        try (AutoCloseable ac = scope.enter(body, user)) {
+            return invoker.toRequest(TestAPI.ECHO_MAP.get(), deps);
+        }
+    }
+
+    @Benchmark
+    public HttpRequestBuilder parameters() {
+        HttpRequestBuilder reqb = client.get();
+        parameters.populate(reqb);
+        return reqb;
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(InvokerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,78 @@
+package com.mastfrog.webapi;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.mastfrog.mime.MimeType;
+import com.mastfrog.netty.http.client.HttpClient;
+import com.mastfrog.netty.http.client.HttpRequestBuilder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.CharsetUtil;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class JsonBindingsTest {
+
+    @Test
+    public void testReadersAndWritersAreCached() throws IOException {
+        JsonBindings bindings = new JsonBindings(new ObjectMapper());
+        assertSame(bindings.reader(Map.class), bindings.reader(Map.class));
+        assertSame(bindings.writer(Map.class), bindings.writer(Map.class));
+        assertNotSame(bindings.reader(Map.class), bindings.reader(String.class));
+
+        ByteBuf buf = bindings.toByteBuf(Collections.singletonMap("a", 1), Map.class, PooledByteBufAllocator.DEFAULT);
+        try {
+            assertEquals("{\"a\":1}", buf.toString(CharsetUtil.UTF_8));
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testModulesAreRegisteredOnACopy() throws IOException {
+        ObjectMapper original = new ObjectMapper();
+        SimpleModule module = new SimpleModule("shout");
+        module.addSerializer(new StdSerializer<UserId>(UserId.class) {
+            @Override
+            public void serialize(UserId value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+                gen.writeString(value.toString().toUpperCase());
+            }
+        });
+        JsonBindings bindings = new JsonBindings(original, new JacksonModules(Arrays.asList(module)));
+        assertNotSame(original, bindings.mapper());
+        assertEquals("\"TIM\"", bindings.writer(UserId.class).writeValueAsString(new UserId("tim")));
+        assertEquals("{\"id\":\"tim\"}", original.writeValueAsString(new UserId("tim")));
+    }
+
+    @Test
+    public void testBodyOfUnsentRequestIsReleased() throws IOException {
+        JsonBindings bindings = new JsonBindings(new ObjectMapper());
+        ByteBuf buf = bindings.toByteBuf(Collections.singletonMap("a", 1), Map.class, PooledByteBufAllocator.DEFAULT);
+        HttpClient client = HttpClient.builder().build();
+        try {
+            HttpRequestBuilder reqb = client.post().setURL("http://localhost:8080/users");
+            reqb.setBody(buf, MimeType.JSON_UTF_8);
+            CallContext ctx = new CallContext(null, new Object[0], new Object[0], null);
+            ctx.body(reqb, buf);
+            ctx.discard(reqb);
+            assertEquals(0, buf.refCnt());
+            // Only once
+            ctx.discard(reqb);
+        } finally {
+            client.shutdown();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.mastfrog.webapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverTheirValues() {
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 1000, 999_999, 1_000_000_000L, Long.MAX_VALUE};
+        for (long v : values) {
+            int bucket = LatencyHistogram.bucket(v);
+            long high = LatencyHistogram.highestValue(bucket);
+            assertTrue(v + " above " + high, v <= high);
+            assertTrue(v + " far below " + high, high - v <= Math.max(1, v / 16));
+            if (bucket > 0) {
+                assertTrue(v + " in too high a bucket", LatencyHistogram.highestValue(bucket - 1) < v);
+            }
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.count());
+        assertEquals(1000, snapshot.min());
+        assertEquals(1_000_000, snapshot.max());
+        assertEquals(500_500, snapshot.mean(), 0.001);
+        assertEquals(500_000, snapshot.valueAt(50), 500_000 / 16);
+        assertEquals(990_000, snapshot.valueAt(99), 990_000 / 16);
+        assertEquals(1_000_000, snapshot.valueAt(100));
+        assertEquals(1000, snapshot.valueAt(0));
+        assertEquals(0, new LatencyHistogram().snapshot().valueAt(50));
+    }
+}
@@ -0,0 +1,77 @@
+package com.mastfrog.webapi;
+
+import com.google.inject.AbstractModule;
+import com.mastfrog.giulius.Dependencies;
+import com.mastfrog.netty.http.client.HttpClient;
+import com.mastfrog.url.URL;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Runs a fixed rate of calls against a stub server which fails a quarter of
+ * them.
+ *
+ * @author Tim Boudreau
+ */
+public class LoadGeneratorTest {
+
+    private static final long LATENCY_MS = 5;
+
+    @Test
+    public void testOpenLoop() throws Exception {
+        try (StubServer stub = StubServer.start(Duration.ofMillis(LATENCY_MS), 0.25, "\"ok\"")) {
+            Dependencies deps = new Dependencies(new AbstractModule() {
+                @Override
+                protected void configure() {
+                    install(new WebApiModule<>(StubAPI.class));
+                    bind(URL.class).toInstance(stub.url());
+                    bind(HttpClient.class).toInstance(HttpClient.builder().noCompression().build());
+                }
+            });
+            try {
+                @SuppressWarnings("unchecked")
+                Invoker<StubAPI> invoker = deps.getInstance(Invoker.class);
+                LoadReport report = LoadGenerator.builder(invoker)
+                        .call(StubAPI.STUB, String.class, seq -> new Object[0])
+                        .rate(200)
+                        .duration(Duration.ofSeconds(1))
+                        .drainTimeout(Duration.ofSeconds(10))
+                        .build().run();
+                LoadReport.CallLoad load = report.call(StubAPI.STUB);
+                String msg = report.toString();
+                assertEquals(msg, 200, load.sent());
+                assertEquals(msg, 200, stub.served());
+                assertEquals(msg, 150, load.succeeded());
+                assertEquals(msg, 50, load.failed());
+                assertEquals(msg, 0, load.incomplete());
+                assertEquals(msg, Collections.singletonMap("HTTP 503", 50L), load.errors());
+                assertEquals(msg, 200, load.throughput(), 0.001);
+                assertEquals(msg, 150, load.latency().count());
+                assertTrue(msg, load.latency().min() >= TimeUnit.MILLISECONDS.toNanos(LATENCY_MS));
+                assertTrue(msg, load.latency().valueAt(50) >= load.serviceTime().valueAt(50));
+            } finally {
+                deps.getInstance(HttpClient.class).shutdown();
+                deps.shutdown();
+            }
+        }
+    }
+
+    enum StubAPI implements WebCallEnum {
+        STUB(new WebCallBuilder().path("/stub"));
+
+        private final WebCall call;
+
+        StubAPI(WebCallBuilder bldr) {
+            call = bldr.id(this).build();
+        }
+
+        @Override
+        public WebCall get() {
+            return call;
+        }
+    }
+}
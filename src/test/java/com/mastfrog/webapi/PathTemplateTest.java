@@ -0,0 +1,48 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.url.Path;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class PathTemplateTest {
+
+    @Test
+    public void testSlotsAreFilledInTemplateOrder() {
+        PathTemplate t = PathTemplate.compile("/users/{{userid}}/names/{{displayname}}",
+                DisplayName.class, UserId.class);
+        assertEquals(2, t.slotCount());
+        assertEquals(UserId.class, t.slotType(0));
+        assertEquals(DisplayName.class, t.slotType(1));
+        StringBuilder sb = new StringBuilder();
+        t.appendTo(sb, new Object[]{new UserId("tim"), new DisplayName("Tim Boudreau")});
+        assertEquals("/users/tim/names/Tim+Boudreau", sb.toString());
+    }
+
+    @Test
+    public void testBaseIsMerged() {
+        PathTemplate t = PathTemplate.compile("/users/{{userid}}/hello", UserId.class);
+        String prefix = PathTemplate.basePrefix(Path.parse("/api"));
+        PathTemplate merged = t.withBase(prefix);
+        assertEquals(merged, t.withBase(prefix));
+        StringBuilder sb = new StringBuilder();
+        merged.appendTo(sb, new Object[]{new UserId("tim")});
+        assertEquals("api/users/tim/hello", sb.toString());
+
+        sb.setLength(0);
+        t.withBase(PathTemplate.basePrefix(null)).appendTo(sb, new Object[]{new UserId("tim")});
+        assertEquals("users/tim/hello", sb.toString());
+    }
+
+    @Test
+    public void testNullValuesAndUnknownTokensAreLeftAlone() {
+        PathTemplate t = PathTemplate.compile("/users/{{userid}}/{{whatever}}", UserId.class, String.class);
+        assertEquals(1, t.slotCount());
+        StringBuilder sb = new StringBuilder();
+        t.appendTo(sb, new Object[1]);
+        assertEquals("/users/{{userid}}/{{whatever}}", sb.toString());
+    }
+}
@@ -0,0 +1,141 @@
+package com.mastfrog.webapi;
+
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class ResponseCacheTest {
+
+    private static HttpHeaders headers(String... namesAndValues) {
+        HttpHeaders result = new DefaultHttpHeaders();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            result.add(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return result;
+    }
+
+    @Test
+    public void testCacheControl() {
+        assertEquals("", ResponseCache.directive("public, no-cache", "no-cache"));
+        assertEquals("30", ResponseCache.directive("private, Max-Age=\"30\"", "max-age"));
+        assertNull(ResponseCache.directive("s-maxage=10", "max-age"));
+        assertEquals(-1, ResponseCache.maxAge(headers()));
+        assertEquals(-1, ResponseCache.maxAge(headers("Cache-Control", "public")));
+        assertEquals(0, ResponseCache.maxAge(headers("Cache-Control", "no-cache, max-age=10")));
+        assertEquals(TimeUnit.SECONDS.toNanos(10), ResponseCache.maxAge(headers("Cache-Control", "max-age=10")));
+        assertEquals(TimeUnit.SECONDS.toNanos(6), ResponseCache.maxAge(headers("Cache-Control", "max-age=10", "Age", "4")));
+        assertEquals(0, ResponseCache.maxAge(headers("Cache-Control", "max-age=10", "Age", "40")));
+    }
+
+    @Test
+    public void testStoreAndRevalidate() {
+        ResponseCache cache = new ResponseCache(2);
+        Object value = new Object();
+        cache.lookup("a").store(headers("Cache-Control", "no-store", "ETag", "\"x\""), value, 10);
+        assertEquals(0, cache.size());
+        cache.lookup("a").store(headers(), value, 10);
+        assertEquals("Nothing to revalidate with", 0, cache.size());
+
+        cache.lookup("a").store(headers("ETag", "\"x\""), value, 10);
+        ResponseCache.Lookup stale = cache.lookup("a");
+        assertTrue(stale.canRevalidate());
+        assertNull("No max-age, so always revalidated", stale.fresh());
+        assertSame(value, stale.revalidated(headers("Cache-Control", "max-age=60")));
+        assertSame(value, cache.lookup("a").fresh());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.revalidations());
+
+        cache.lookup("a").store(headers("Vary", "*"), value, 10);
+        assertFalse(cache.lookup("a").canRevalidate());
+    }
+
+    @Test
+    public void testVary() {
+        assertTrue(ResponseCache.isKeyed(Arrays.asList("Accept, accept-encoding", "Authorization")));
+        assertFalse(ResponseCache.isKeyed(Arrays.asList("Accept", "Accept-Language")));
+        assertFalse(ResponseCache.isKeyed(Arrays.asList("*")));
+        ResponseCache cache = new ResponseCache(2);
+        cache.lookup("a").store(headers("Cache-Control", "max-age=60", "Vary", "Accept-Encoding"), "a", 10);
+        assertEquals("a", cache.lookup("a").fresh());
+        cache.lookup("b").store(headers("Cache-Control", "max-age=60", "Vary", "Accept, Cookie"), "b", 10);
+        assertFalse("Varies on a header not in the key", cache.lookup("b").canRevalidate());
+    }
+
+    @Test
+    public void testSizeBound() {
+        ResponseCache cache = new ResponseCache(100, 100);
+        cache.lookup("big").store(headers("Cache-Control", "max-age=60"), "big", 101);
+        assertEquals(0, cache.size());
+        for (int i = 0; i < 4; i++) {
+            cache.lookup("k" + i).store(headers("Cache-Control", "max-age=60"), "v" + i, 30);
+        }
+        assertEquals("Evicted down to seven eighths of the bound", 2, cache.size());
+        assertEquals(60, cache.bytes());
+        assertEquals(2, cache.evictions());
+        assertFalse(cache.lookup("k0").canRevalidate());
+        assertEquals("v3", cache.lookup("k3").fresh());
+        cache.clear();
+        assertEquals(0, cache.bytes());
+    }
+
+    @Test
+    public void testEviction() {
+        ResponseCache cache = new ResponseCache(2);
+        cache.lookup("a").store(headers("Cache-Control", "max-age=60"), "a", 10);
+        cache.lookup("b").store(headers("Cache-Control", "max-age=60"), "b", 10);
+        assertEquals("a", cache.lookup("a").fresh());
+        cache.lookup("c").store(headers("Cache-Control", "max-age=60"), "c", 10);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+        assertEquals("a", cache.lookup("a").fresh());
+        assertFalse("Least recently used", cache.lookup("b").canRevalidate());
+        assertEquals(4, cache.misses());
+    }
+
+    @Test
+    public void testConcurrentUseStaysBounded() throws InterruptedException {
+        ResponseCache cache = new ResponseCache(64);
+        int threads = 8;
+        List<Throwable> thrown = new CopyOnWriteArrayList<>();
+        List<Thread> all = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            all.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20000; i++) {
+                        String key = Integer.toString((i * 31 + seed) % 500);
+                        ResponseCache.Lookup lookup = cache.lookup(key);
+                        if (lookup.fresh() == null) {
+                            lookup.store(headers("Cache-Control", "max-age=60"), key, 10);
+                        }
+                    }
+                } catch (Throwable e) {
+                    thrown.add(e);
+                }
+            }));
+        }
+        for (Thread t : all) {
+            t.start();
+        }
+        for (Thread t : all) {
+            t.join();
+        }
+        assertTrue(thrown.toString(), thrown.isEmpty());
+        assertTrue("Size " + cache.size(), cache.size() <= 64 + threads);
+        assertTrue(cache.evictions() > 0);
+    }
+}
@@ -0,0 +1,134 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.acteur.util.Server;
+import com.mastfrog.giulius.Dependencies;
+import com.mastfrog.netty.http.client.HttpClient;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures whole calls, from invocation to interpreted result, against the
+ * test server running in the same process on port 3729, so nothing but the
+ * loopback interface is needed. Run with
+ * <code>java -cp ... com.mastfrog.webapi.RoundTripBenchmark</code>; pass
+ * <code>-t</code> to add client threads. The test server's logging is
+ * discarded while it runs.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    private final UserId user = new UserId("tim");
+    private final DisplayName name = new DisplayName("Tim Boudreau");
+    private Dependencies serverDeps;
+    private Dependencies deps;
+    private Invoker<TestAPI> invoker;
+    private PrintStream out;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        serverDeps = new Dependencies(new TestApiApplication.Module());
+        serverDeps.getInstance(Server.class).start(3729);
+        deps = new Dependencies(new WebCallTest.M());
+        invoker = deps.getInstance(Invoker.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        deps.getInstance(HttpClient.class).shutdown();
+        deps.shutdown();
+        serverDeps.shutdown();
+        System.setOut(out);
+    }
+
+    @Benchmark
+    public Map<?, ?> call() throws Exception {
+        LatchCallback cb = new LatchCallback();
+        invoker.call(TestAPI.HELLO_WORLD, cb, name, user);
+        cb.latch.await();
+        return cb.result;
+    }
+
+    @Benchmark
+    public Map<?, ?> callAsync() throws Exception {
+        return invoker.callAsync(TestAPI.HELLO_WORLD, Map.class, name, user).get();
+    }
+
+    @Benchmark
+    public Map<?, ?> invoke() throws Exception {
+        return invoker.invoke(TestAPI.HELLO_WORLD, Map.class, name, user);
+    }
+
+    private static final class LatchCallback extends Callback<Map> {
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile Map<?, ?> result;
+
+        LatchCallback() {
+            super(Map.class);
+        }
+
+        @Override
+        public void success(Map object) {
+            result = object;
+            latch.countDown();
+        }
+
+        @Override
+        public void fail(HttpResponseStatus status, ByteBuf bytes) {
+            latch.countDown();
+        }
+
+        @Override
+        public void error(Throwable err) {
+            latch.countDown();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(RoundTripBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,18 @@
+package com.mastfrog.webapi;
+
+/**
+ *
+ * @author tim
+ */
+public class RowCount {
+
+    public final int rowCount;
+
+    public RowCount(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public String toString() {
+        return Integer.toString(rowCount);
+    }
+}
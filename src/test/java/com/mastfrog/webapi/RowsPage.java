@@ -0,0 +1,86 @@
+package com.mastfrog.webapi;
+
+import com.google.inject.Inject;
+import com.mastfrog.acteur.Acteur;
+import com.mastfrog.acteur.ActeurFactory;
+import com.mastfrog.acteur.HttpEvent;
+import com.mastfrog.acteur.Page;
+import com.mastfrog.acteur.headers.Method;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.util.CharsetUtil;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+
+/**
+ * Writes a large JSON array a batch of rows at a time, with no content
+ * length, so the response ends when the connection is closed.
+ *
+ * @author tim
+ */
+public class RowsPage extends Page {
+
+    @Inject
+    RowsPage(ActeurFactory af) {
+        add(af.matchPath("^rows$"));
+        add(af.matchMethods(Method.GET));
+        add(af.requireParameters("rowCount"));
+        add(RowsActeur.class);
+    }
+
+    private static class RowsActeur extends Acteur {
+
+        @Inject
+        RowsActeur(HttpEvent evt) {
+            setState(new RespondWith(OK));
+            // Each batch is written when the previous one has been flushed;
+            // writing them from an iterative ResponseWriter can leave a
+            // batch unflushed on a close-delimited response
+            setResponseBodyWriter(new RowsWriter(Integer.parseInt(evt.urlParameter("rowCount"))));
+        }
+    }
+
+    private static class RowsWriter implements ChannelFutureListener {
+
+        private static final int BATCH = 250;
+        private final int count;
+        private int iteration;
+
+        RowsWriter(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public void operationComplete(ChannelFuture future) throws Exception {
+            // Acteur may call this with the headers' write still pending
+            if (future.cause() != null) {
+                future.channel().close();
+                return;
+            }
+            StringBuilder sb = new StringBuilder(BATCH * 40);
+            int start = iteration++ * BATCH;
+            int end = Math.min(count, start + BATCH);
+            if (start == 0) {
+                sb.append('[');
+            }
+            for (int i = start; i < end; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append("{\"index\":").append(i).append(",\"name\":\"row-").append(i).append("\"}");
+            }
+            if (end == count) {
+                sb.append(']');
+            }
+            ByteBuf buf = Unpooled.copiedBuffer(sb, CharsetUtil.UTF_8);
+            if (end == count) {
+                future.channel().writeAndFlush(new DefaultLastHttpContent(buf)).addListener(CLOSE);
+            } else {
+                future.channel().writeAndFlush(new DefaultHttpContent(buf)).addListener(this);
+            }
+        }
+    }
+}
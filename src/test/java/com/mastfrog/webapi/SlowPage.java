@@ -0,0 +1,39 @@
+package com.mastfrog.webapi;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+import com.mastfrog.acteur.Acteur;
+import com.mastfrog.acteur.ActeurFactory;
+import com.mastfrog.acteur.HttpEvent;
+import com.mastfrog.acteur.Page;
+import com.mastfrog.acteur.headers.Method;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Takes a while to respond, and counts the requests it has answered.
+ *
+ * @author tim
+ */
+public class SlowPage extends Page {
+
+    static final AtomicInteger REQUESTS = new AtomicInteger();
+
+    @Inject
+    SlowPage(ActeurFactory af) {
+        add(af.matchPath("^users/.*?/slow$"));
+        add(af.matchMethods(Method.GET));
+        add(SlowActeur.class);
+    }
+
+    private static final class SlowActeur extends Acteur {
+
+        @Inject
+        SlowActeur(HttpEvent evt) throws Exception {
+            Thread.sleep(300);
+            setState(new RespondWith(OK, ImmutableMap.of(
+                    "name", evt.path().getElement(1).toString(),
+                    "request", REQUESTS.incrementAndGet())));
+        }
+    }
+}
@@ -1,8 +1,14 @@
 package com.mastfrog.webapi;
 
 import com.mastfrog.acteur.headers.Method;
+import com.mastfrog.webapi.builtin.BodyFromMap;
 import com.mastfrog.webapi.builtin.BodyFromString;
+import com.mastfrog.webapi.builtin.CborCodec;
+import com.mastfrog.webapi.builtin.JsonCodec;
 import com.mastfrog.webapi.builtin.ParameterFromClassNameAndToStringCamelCase;
+import com.mastfrog.webapi.builtin.SmileCodec;
+import com.mastfrog.webapi.builtin.StreamingJsonInterpreter;
+import java.time.Duration;
 import java.util.Map;
 
 /**
@@ -21,7 +27,110 @@ public enum TestAPI implements WebCallEnum {
                         .addRequiredType(String.class)
                         .addRequiredType(UserId.class)
                         .withDecorator(String.class, BodyFromString.class)
-                        .path("/users/{{userid}}/echo"));
+                        .path("/users/{{userid}}/echo")),
+    ECHO_MAP(new WebCallBuilder()
+                        .method(Method.POST)
+                        .addRequiredType(UserId.class)
+                        .withDecorator(Map.class, BodyFromMap.class)
+                        .path("/users/{{userid}}/echo")),
+    HELLO_STREAMING(new WebCallBuilder()
+                        .method(Method.GET)
+                        .addRequiredType(UserId.class)
+                        .withDecorator(DisplayName.class, ParameterFromClassNameAndToStringCamelCase.class)
+                        .interpreter(StreamingJsonInterpreter.class)
+                        .path("/users/{{userid}}/hello")),
+    ROWS(new WebCallBuilder()
+                        .method(Method.GET)
+                        .withDecorator(RowCount.class, ParameterFromClassNameAndToStringCamelCase.class)
+                        .path("/rows")),
+    FORMAT_SMILE(new WebCallBuilder()
+                        .method(Method.GET)
+                        .addRequiredType(UserId.class)
+                        .codec(SmileCodec.class)
+                        .codec(JsonCodec.class)
+                        .path("/users/{{userid}}/format")),
+    FORMAT_CBOR(new WebCallBuilder()
+                        .method(Method.GET)
+                        .addRequiredType(UserId.class)
+                        .codec(CborCodec.class)
+                        .codec(JsonCodec.class)
+                        .path("/users/{{userid}}/format")),
+    MISSING(new WebCallBuilder()
+                        .method(Method.GET)
+                        .path("/no/such/thing")),
+    FORMAT_DEFAULT(new WebCallBuilder()
+                        .method(Method.GET)
+                        .addRequiredType(UserId.class)
+                        .path("/users/{{userid}}/format")),
+    CACHED(new WebCallBuilder()
+                        .method(Method.GET)
+                        .addRequiredType(UserId.class)
+                        .cacheable()
+                        .path("/users/{{userid}}/cached")),
+    CACHED_FRESH(new WebCallBuilder()
+                        .method(Method.GET)
+                        .addRequiredType(UserId.class)
+                        .cacheable()
+                        .path("/users/{{userid}}/fresh")),
+    CONDITIONAL(new WebCallBuilder()
+                        .method(Method.GET)
+                        .addRequiredType(UserId.class)
+                        .withDecorator(IfNoneMatch.class, IfNoneMatch.IfNoneMatchDecorator.class)
+                        .path("/users/{{userid}}/cached")),
+    CONDITIONAL_STREAMING(new WebCallBuilder()
+                        .method(Method.GET)
+                        .addRequiredType(UserId.class)
+                        .withDecorator(IfNoneMatch.class, IfNoneMatch.IfNoneMatchDecorator.class)
+                        .interpreter(StreamingJsonInterpreter.class)
+                        .path("/users/{{userid}}/cached")),
+    CONDITIONAL_COALESCED(new WebCallBuilder()
+                        .method(Method.GET)
+                        .addRequiredType(UserId.class)
+                        .withDecorator(IfNoneMatch.class, IfNoneMatch.IfNoneMatchDecorator.class)
+                        .coalesce()
+                        .path("/users/{{userid}}/cached")),
+    COALESCED(new WebCallBuilder()
+                        .method(Method.GET)
+                        .addRequiredType(UserId.class)
+                        .coalesce()
+                        .path("/users/{{userid}}/slow")),
+    LIMITED(new WebCallBuilder()
+                        .method(Method.GET)
+                        .addRequiredType(UserId.class)
+                        .concurrencyLimit(2, 2, Duration.ofSeconds(5))
+                        .path("/users/{{userid}}/slow")),
+    LIMITED_WAIT(new WebCallBuilder()
+                        .method(Method.GET)
+                        .addRequiredType(UserId.class)
+                        .concurrencyLimit(1, 1, Duration.ofMillis(100))
+                        .path("/users/{{userid}}/slow")),
+    RETRIED(new WebCallBuilder()
+                        .method(Method.GET)
+                        .addRequiredType(UserId.class)
+                        .retry(3, Duration.ofMillis(10), Duration.ofMillis(100))
+                        .path("/users/{{userid}}/flaky")),
+    RETRIED_POST(new WebCallBuilder()
+                        .method(Method.POST)
+                        .addRequiredType(UserId.class)
+                        .retry(3, Duration.ofMillis(10), Duration.ofMillis(100))
+                        .idempotencyKey("Idempotency-Key")
+                        .path("/users/{{userid}}/flaky")),
+    BROKEN(new WebCallBuilder()
+                        .method(Method.GET)
+                        .addRequiredType(UserId.class)
+                        .circuitBreaker(2, 0.5, Duration.ofMillis(200), 1)
+                        .path("/users/{{userid}}/flaky")),
+    HEDGED(new WebCallBuilder()
+                        .method(Method.GET)
+                        .addRequiredType(UserId.class)
+                        .hedge(Duration.ofMillis(100), 0.5)
+                        .path("/users/{{userid}}/laggy")),
+    TIMED(new WebCallBuilder()
+                        .method(Method.GET)
+                        .addRequiredType(UserId.class)
+                        .connectTimeout(Duration.ofSeconds(1))
+                        .timeout(Duration.ofMillis(100))
+                        .path("/users/{{userid}}/slow"));
 
     private final WebCall call;
     TestAPI(WebCallBuilder bldr) {
@@ -25,6 +25,11 @@ class TestApiApplication extends Application {
     public TestApiApplication() {
         add(HelloPage.class);
         add(EchoPage.class);
+        add(RowsPage.class);
+        add(FormatPage.class);
+        add(CachedPage.class);
+        add(SlowPage.class);
+        add(FlakyPage.class);
         add(FooPage.class);
         System.out.println("Created application");
     }
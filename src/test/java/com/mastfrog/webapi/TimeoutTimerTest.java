@@ -0,0 +1,49 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.giulius.Dependencies;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class TimeoutTimerTest {
+
+    @Test
+    public void testStoppedWhenInjectorIsShutDown() throws Exception {
+        Dependencies deps = Dependencies.builder().build();
+        TimeoutTimer timer = deps.getInstance(TimeoutTimer.class);
+        CountDownLatch fired = new CountDownLatch(1);
+        timer.schedule(t -> fired.countDown(), TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        AtomicReference<String> thread = new AtomicReference<>();
+        CountDownLatch deferred = new CountDownLatch(1);
+        timer.defer(() -> {
+            thread.set(Thread.currentThread().getName());
+            deferred.countDown();
+        }, TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(deferred.await(5, TimeUnit.SECONDS));
+        assertTrue(thread.get(), thread.get().startsWith("webapi-timeouts-worker"));
+        deps.shutdown();
+        try {
+            timer.schedule(t -> {
+            }, 1);
+            fail("Timer should have been stopped");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+        try {
+            timer.execute(() -> {
+            });
+            fail("Workers should have been shut down");
+        } catch (RejectedExecutionException ex) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.mastfrog.webapi;
+
+import com.mastfrog.acteur.headers.Method;
+import com.mastfrog.netty.http.client.ResponseFuture;
+import com.mastfrog.webapi.annotations.Call;
+import com.mastfrog.webapi.annotations.Decorate;
+import com.mastfrog.webapi.annotations.WebApi;
+import com.mastfrog.webapi.builtin.BodyFromString;
+import com.mastfrog.webapi.builtin.ParameterFromClassNameAndToStringCamelCase;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ *
+ * @author tim
+ */
+@WebApi
+public interface UsersApi {
+
+    @Call("/users/{{userid}}/hello")
+    CompletableFuture<Map<String, Object>> hello(UserId user,
+            @Decorate(ParameterFromClassNameAndToStringCamelCase.class) DisplayName name);
+
+    @Call("/users/{{userid}}/hello")
+    Map<?, ?> helloBlocking(UserId user,
+            @Decorate(ParameterFromClassNameAndToStringCamelCase.class) DisplayName name) throws Exception;
+
+    @Call(value = "/users/{{userid}}/echo", method = Method.POST)
+    ResponseFuture echo(Callback<String> callback, UserId user, @Decorate(BodyFromString.class) String body) throws Exception;
+}
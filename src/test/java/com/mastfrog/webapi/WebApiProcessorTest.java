@@ -0,0 +1,126 @@
+package com.mastfrog.webapi;
+
+import com.google.inject.AbstractModule;
+import com.mastfrog.acteur.util.Server;
+import com.mastfrog.giulius.Dependencies;
+import com.mastfrog.giulius.tests.GuiceRunner;
+import com.mastfrog.giulius.tests.TestWith;
+import com.mastfrog.netty.http.client.HttpClient;
+import com.mastfrog.url.URL;
+import com.mastfrog.webapi.processor.WebApiProcessor;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+@RunWith(GuiceRunner.class)
+@TestWith(value = {TestApiApplication.Module.class})
+public class WebApiProcessorTest {
+
+    @Test
+    public void testGeneratedClient(Server server) throws Exception {
+        server.start(3729);
+        Dependencies deps = new Dependencies(new AbstractModule() {
+            @Override
+            protected void configure() {
+                install(new WebApiModule<>(UsersApiCalls.class));
+                bind(URL.class).toInstance(URL.parse("http://localhost:3729"));
+                bind(HttpClient.class).toInstance(HttpClient.builder().noCompression().build());
+            }
+        });
+        try {
+            // Decorators with no dependencies are created by the generated code
+            assertNotNull(((WebCallBuilder.WebCallImpl) UsersApiCalls.ECHO.get()).decoratorInstance(String.class));
+            @SuppressWarnings("unchecked")
+            UsersApi api = new UsersApiClient(deps.getInstance(Invoker.class));
+            Map<String, Object> hello = api.hello(new UserId("tim"), new DisplayName("Tim Boudreau"))
+                    .get(10, TimeUnit.SECONDS);
+            assertEquals("tim", hello.get("name"));
+            assertEquals("Hello Tim Boudreau", hello.get("message"));
+            assertEquals("Hello Joe Blow", api.helloBlocking(new UserId("joe"), new DisplayName("Joe Blow")).get("message"));
+
+            CompletableFuture<String> echoed = new CompletableFuture<>();
+            api.echo(new Callback<String>(String.class) {
+                @Override
+                public void success(String object) {
+                    echoed.complete(object);
+                }
+
+                @Override
+                public void fail(HttpResponseStatus status, ByteBuf bytes) {
+                    echoed.completeExceptionally(new AssertionError(status));
+                }
+            }, new UserId("tim"), "hello");
+            assertTrue(echoed.get(10, TimeUnit.SECONDS), echoed.get().contains("hello"));
+        } finally {
+            deps.getInstance(HttpClient.class).shutdown();
+            deps.shutdown();
+        }
+    }
+
+    @Test
+    public void testMismatchesFailCompilation() {
+        List<String> errors = compile("package bad;\n"
+                + "import com.mastfrog.webapi.*;\n"
+                + "import com.mastfrog.webapi.annotations.*;\n"
+                + "import java.util.Map;\n"
+                + "import java.util.concurrent.CompletableFuture;\n"
+                + "@WebApi public interface BadApi {\n"
+                + "    @Call(\"/users/{{userid}}/hello\")\n"
+                + "    CompletableFuture<Map> misspelled(DisplayName name);\n"
+                + "    @Call(\"/users/{{userid}}\")\n"
+                + "    CompletableFuture<Map> twice(UserId a, UserId b);\n"
+                + "    @Call(\"/users/{{userid}}\")\n"
+                + "    Map blocking(UserId a);\n"
+                + "}\n");
+        assertEquals(errors.toString(), 3, errors.size());
+        assertTrue(errors.toString(), errors.get(0).startsWith("No parameter for {{userid}}"));
+        assertTrue(errors.toString(), errors.get(1).startsWith("More than one parameter of type com.mastfrog.webapi.UserId"));
+        assertTrue(errors.toString(), errors.get(2).contains("must be declared to throw Exception"));
+    }
+
+    private static List<String> compile(String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///bad/BadApi.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics,
+                Arrays.asList("-proc:only", "-classpath", System.getProperty("java.class.path")),
+                null, Collections.singletonList(file));
+        task.setProcessors(Collections.singletonList(new WebApiProcessor()));
+        assertFalse(task.call());
+        List<String> result = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+            if (d.getKind() == Diagnostic.Kind.ERROR) {
+                result.add(d.getMessage(null));
+            }
+        }
+        return result;
+    }
+}
@@ -1,23 +1,44 @@
 package com.mastfrog.webapi;
 
 import com.google.inject.AbstractModule;
+import com.mastfrog.acteur.headers.Method;
 import com.mastfrog.acteur.util.Server;
 import com.mastfrog.giulius.Dependencies;
 import com.mastfrog.giulius.tests.GuiceRunner;
 import com.mastfrog.giulius.tests.TestWith;
 import com.mastfrog.netty.http.client.HttpClient;
 import com.mastfrog.netty.http.client.ResponseFuture;
+import com.mastfrog.netty.http.client.StateType;
 import com.mastfrog.url.URL;
+import com.mastfrog.util.preconditions.ConfigurationError;
 import com.mastfrog.webapi.WebCallTest.M;
 import io.netty.buffer.ByteBuf;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.CharsetUtil;
 import static io.netty.handler.codec.http.HttpResponseStatus.OK;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -56,9 +77,461 @@ public class WebCallTest {
         assertEquals("hot hot hot ", echo.result);
 
         assertEquals(OK, echo.status);
+
+        EchoCB echoMap = new EchoCB();
+        f = invoker.call(TestAPI.ECHO_MAP, echoMap, Collections.singletonMap("word", "hot"), new UserId("tim"));
+        f.await(3, TimeUnit.SECONDS);
+        f.throwIfError();
+        assertEquals("{\"word\":\"hot\"}{\"word\":\"hot\"}{\"word\":\"hot\"}", echoMap.result);
+
+        CB streamed = new CB();
+        f = invoker.call(TestAPI.HELLO_STREAMING, streamed, new DisplayName("Tim Boudreau"), new UserId("tim"));
+        f.await(5, TimeUnit.SECONDS);
+        f.throwIfError();
+        assertNotNull(streamed.obj);
+        assertEquals("tim", streamed.obj.get("name"));
+        assertEquals("Hello Tim Boudreau", streamed.obj.get("message"));
+
+        RowsCB rows = new RowsCB(Long.MAX_VALUE);
+        f = invoker.stream(TestAPI.ROWS, rows, new RowCount(5000));
+        assertTrue(rows.done.await(10, TimeUnit.SECONDS));
+        f.throwIfError();
+        assertNull(rows.err);
+        assertEquals(5000, rows.rows.size());
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, rows.rows.get(i).index);
+            assertEquals("row-" + i, rows.rows.get(i).name);
+        }
+
+        RowsCB slow = new RowsCB(16);
+        f = invoker.stream(TestAPI.ROWS, slow, new RowCount(5000));
+        assertTrue(slow.done.await(20, TimeUnit.SECONDS));
+        f.throwIfError();
+        assertNull(slow.err);
+        assertEquals(5000, slow.rows.size());
+        assertEquals(4999, slow.rows.get(4999).index);
+        assertTrue("Demand exceeded", slow.maxOutstanding <= 16);
+
+        CB smile = new CB();
+        f = invoker.call(TestAPI.FORMAT_SMILE, smile, new UserId("tim"));
+        f.await(5, TimeUnit.SECONDS);
+        f.throwIfError();
+        assertNotNull(smile.obj);
+        assertEquals("smile", smile.obj.get("format"));
+        assertEquals("tim", smile.obj.get("name"));
+        assertEquals("application/x-jackson-smile, application/json;q=0.9, text/json;q=0.9", smile.obj.get("accept"));
+
+        CB cbor = new CB();
+        f = invoker.call(TestAPI.FORMAT_CBOR, cbor, new UserId("tim"));
+        f.await(5, TimeUnit.SECONDS);
+        f.throwIfError();
+        assertNotNull(cbor.obj);
+        assertEquals("cbor", cbor.obj.get("format"));
+
+        CB json = new CB();
+        f = invoker.call(TestAPI.FORMAT_DEFAULT, json, new UserId("tim"));
+        f.await(5, TimeUnit.SECONDS);
+        f.throwIfError();
+        assertNotNull(json.obj);
+        assertEquals("json", json.obj.get("format"));
+        assertEquals("", json.obj.get("accept"));
+
+        Invoker<TestAPI> typed = invoker;
+        Map<?, ?> async = typed.callAsync(TestAPI.HELLO_WORLD, Map.class, new DisplayName("Tim Boudreau"), new UserId("tim"))
+                .thenCompose(hello -> typed.callAsync(TestAPI.HELLO_STREAMING, Map.class,
+                        new DisplayName(hello.get("message").toString()), new UserId("joe")))
+                .get(10, TimeUnit.SECONDS);
+        assertEquals("joe", async.get("name"));
+        assertEquals("Hello Hello Tim Boudreau", async.get("message"));
+
+        try {
+            typed.callAsync(TestAPI.MISSING, Map.class).get(5, TimeUnit.SECONDS);
+            fail("Should have failed");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof WebCallException);
+            WebCallException wce = (WebCallException) ex.getCause();
+            assertEquals(HttpResponseStatus.NOT_FOUND, wce.status());
+            assertNotNull(wce.headers());
+        }
+
+        Map<?, ?> blocking = typed.invoke(TestAPI.HELLO_WORLD, Map.class, new DisplayName("Joe Blow"), new UserId("joe"));
+        assertEquals("Hello Joe Blow", blocking.get("message"));
+        blocking = typed.invoke(TestAPI.HELLO_STREAMING, Map.class, new DisplayName("Joe Blow"), new UserId("joe"));
+        assertEquals("joe", blocking.get("name"));
+        try {
+            typed.invoke(TestAPI.MISSING, Map.class);
+            fail("Should have thrown");
+        } catch (WebCallException ex) {
+            assertEquals(HttpResponseStatus.NOT_FOUND, ex.status());
+        }
+
+        // Views of the body are read after the response has been handed
+        // back to the client
+        ByteBuf asyncBytes = typed.callAsync(TestAPI.HELLO_WORLD, ByteBuf.class,
+                new DisplayName("Joe Blow"), new UserId("joe")).get(5, TimeUnit.SECONDS);
+        assertTrue(asyncBytes.toString(CharsetUtil.UTF_8).contains("Hello Joe Blow"));
+        TextView blockingChars = typed.invoke(TestAPI.HELLO_WORLD, TextView.class,
+                new DisplayName("Joe Blow"), new UserId("joe"));
+        assertTrue(blockingChars.toString().contains("Hello Joe Blow"));
+
+        CompletableFuture<List> cancelled = typed.callAsync(TestAPI.ROWS, List.class, new RowCount(200000));
+        assertTrue(cancelled.cancel(true));
+        assertTrue(cancelled.isCancelled());
+        assertTrue(((AsyncCall<?>) cancelled).response().lastState() == StateType.Cancelled
+                || ((AsyncCall<?>) cancelled).response().lastState().isResponseComplete());
+
+        ResponseCache cache = deps.getInstance(ResponseCache.class);
+        Map<?, ?> cachedMap = typed.invoke(TestAPI.CACHED, Map.class, new UserId("cache"));
+        int served = CachedPage.SERVED.get();
+        assertEquals(served, cachedMap.get("served"));
+        assertSame(cachedMap, typed.invoke(TestAPI.CACHED, Map.class, new UserId("cache")));
+        assertSame(cachedMap, typed.callAsync(TestAPI.CACHED, Map.class, new UserId("cache")).get(5, TimeUnit.SECONDS));
+        assertEquals(served, CachedPage.SERVED.get());
+        assertEquals(2, cache.revalidations());
+        assertNotEquals(cachedMap, typed.invoke(TestAPI.CACHED, Map.class, new UserId("other")));
+
+        Map<?, ?> freshMap = typed.invoke(TestAPI.CACHED_FRESH, Map.class, new UserId("cache"));
+        CompletableFuture<Map> fromCache = typed.callAsync(TestAPI.CACHED_FRESH, Map.class, new UserId("cache"));
+        assertTrue(fromCache.isDone());
+        assertSame(freshMap, fromCache.get());
+        assertEquals(1, cache.hits());
+        assertEquals(served + 2, CachedPage.SERVED.get());
+
+        // A 304 to conditional headers the cache did not add fails the call
+        // instead of waiting for the connection to close
+        assertFailsWith(HttpResponseStatus.NOT_MODIFIED, typed.callAsync(TestAPI.CONDITIONAL, Map.class,
+                new UserId("cache"), new IfNoneMatch("\"v1\"")));
+        assertFailsWith(HttpResponseStatus.NOT_MODIFIED, typed.callAsync(TestAPI.CONDITIONAL_COALESCED, Map.class,
+                new UserId("cache"), new IfNoneMatch("\"v1\"")));
+        // Requests whose decorators add different headers are not shared
+        CompletableFuture<Map> current = typed.callAsync(TestAPI.CONDITIONAL_COALESCED, Map.class,
+                new UserId("cache"), new IfNoneMatch("\"v1\""));
+        CompletableFuture<Map> stale = typed.callAsync(TestAPI.CONDITIONAL_COALESCED, Map.class,
+                new UserId("cache"), new IfNoneMatch("\"v0\""));
+        assertNotNull(stale.get(10, TimeUnit.SECONDS));
+        assertFailsWith(HttpResponseStatus.NOT_MODIFIED, current);
+        try {
+            typed.invoke(TestAPI.CONDITIONAL, Map.class, new UserId("cache"), new IfNoneMatch("\"v1\""));
+            fail("Should have thrown");
+        } catch (WebCallException ex) {
+            assertEquals(HttpResponseStatus.NOT_MODIFIED, ex.status());
+        }
+        // A streamed call has exactly one outcome for a 304
+        List<String> outcomes = new CopyOnWriteArrayList<>();
+        ResponseFuture notModified = invoker.call(TestAPI.CONDITIONAL_STREAMING, new Callback<Map>(Map.class) {
+            @Override
+            public void notModified(HttpHeaders headers) {
+                outcomes.add("not modified");
+            }
+
+            @Override
+            public void success(Map object) {
+                outcomes.add("success");
+            }
+
+            @Override
+            public void fail(HttpResponseStatus status, ByteBuf bytes) {
+                outcomes.add("fail " + status.code());
+            }
+
+            @Override
+            public void error(Throwable err) {
+                outcomes.add("error " + err);
+            }
+        }, new UserId("cache"), new IfNoneMatch("\"v1\""));
+        notModified.await(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("not modified"), outcomes);
+
+        int requests = SlowPage.REQUESTS.get();
+        List<CompletableFuture<Map>> herd = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            herd.add(typed.callAsync(TestAPI.COALESCED, Map.class, new UserId("herd")));
+        }
+        CB herdCallback = new CB();
+        invoker.call(TestAPI.COALESCED, herdCallback, new UserId("herd"));
+        CompletableFuture<Map> other = typed.callAsync(TestAPI.COALESCED, Map.class, new UserId("other"));
+        Map<?, ?> herdResult = herd.get(0).get(5, TimeUnit.SECONDS);
+        for (CompletableFuture<Map> waiter : herd) {
+            assertSame(herdResult, waiter.get(5, TimeUnit.SECONDS));
+        }
+        herdCallback.latch.await(5, TimeUnit.SECONDS);
+        assertSame(herdResult, herdCallback.obj);
+        assertEquals("other", other.get(5, TimeUnit.SECONDS).get("name"));
+        assertEquals(requests + 2, SlowPage.REQUESTS.get());
+        assertEquals("A new request once the first completes", "herd",
+                typed.invoke(TestAPI.COALESCED, Map.class, new UserId("herd")).get("name"));
+        assertEquals(requests + 3, SlowPage.REQUESTS.get());
+        // A view of the body cannot be shared, so each caller sends its own
+        CompletableFuture<ByteBuf> rawA = typed.callAsync(TestAPI.COALESCED, ByteBuf.class, new UserId("raw"));
+        CompletableFuture<ByteBuf> rawB = typed.callAsync(TestAPI.COALESCED, ByteBuf.class, new UserId("raw"));
+        assertNotEquals(rawA.get(5, TimeUnit.SECONDS).toString(CharsetUtil.UTF_8),
+                rawB.get(5, TimeUnit.SECONDS).toString(CharsetUtil.UTF_8));
+        assertEquals(requests + 5, SlowPage.REQUESTS.get());
+
+        List<Object[]> argSets = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            argSets.add(new Object[]{new UserId("user" + i), new DisplayName("User " + i)});
+        }
+        List<String> names = new ArrayList<>();
+        BulkSummary summary = typed.callAll(TestAPI.HELLO_WORLD, argSets, 4, new BulkCallback<Map>(Map.class, true) {
+            @Override
+            public void onResult(long index, Object[] args, Map result) {
+                assertEquals(names.size(), index);
+                names.add((String) result.get("name"));
+            }
+        }).get(10, TimeUnit.SECONDS);
+        assertEquals(40, summary.succeeded());
+        assertEquals(40, summary.submitted());
+        assertEquals("user0", names.get(0));
+        assertEquals("user39", names.get(39));
+
+        argSets.clear();
+        for (int i = 0; i < 20; i++) {
+            argSets.add(new Object[]{new UserId("slow" + i)});
+        }
+        summary = typed.callAll(TestAPI.COALESCED, argSets, 2, Duration.ofMillis(450), new BulkCallback<Map>(Map.class) {
+            @Override
+            public void onResult(long index, Object[] args, Map result) {
+                assertEquals(args[0].toString(), result.get("name"));
+            }
+        }).get(10, TimeUnit.SECONDS);
+        assertTrue(summary.toString(), summary.deadlineExceeded());
+        assertTrue(summary.toString(), summary.submitted() < 20);
+        assertEquals(summary.toString(), summary.submitted(), summary.succeeded() + summary.failed() + summary.cancelled());
+
+        List<CompletableFuture<Map>> limited = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            limited.add(typed.callAsync(TestAPI.LIMITED, Map.class, new UserId("limited" + i)));
+        }
+        ErrorCB rejectedCallback = new ErrorCB();
+        invoker.call(TestAPI.LIMITED, rejectedCallback, new UserId("limited5"));
+        assertTrue(rejectedCallback.err instanceof CallRejectedException);
+        assertEquals(CallRejectedException.Reason.QUEUE_FULL, ((CallRejectedException) rejectedCallback.err).reason());
+        ConcurrencyLimiter limiter = typed.limiter(TestAPI.LIMITED);
+        assertEquals(2, limiter.inFlight());
+        assertEquals(2, limiter.queueDepth());
+        for (int i = 0; i < 5; i++) {
+            if (i < 4) {
+                assertEquals("limited" + i, limited.get(i).get(5, TimeUnit.SECONDS).get("name"));
+            } else {
+                assertRejected(CallRejectedException.Reason.QUEUE_FULL, limited.get(i));
+            }
+        }
+        assertEquals(2, limiter.rejected());
+        assertEquals(2, limiter.queued());
+        assertTrue(limiter.maxQueueWait().toMillis() > 100);
+        // Permits are released by a receiver which may run after the future
+        // is completed
+        for (int i = 0; i < 100 && limiter.inFlight() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, limiter.inFlight());
+        assertSame(deps.getInstance(ConcurrencyLimiter.class), typed.limiter(TestAPI.HELLO_WORLD));
+
+        CompletableFuture<Map> first = typed.callAsync(TestAPI.LIMITED_WAIT, Map.class, new UserId("wait0"));
+        assertRejected(CallRejectedException.Reason.QUEUE_TIMEOUT,
+                typed.callAsync(TestAPI.LIMITED_WAIT, Map.class, new UserId("wait1")));
+        assertEquals("wait0", first.get(5, TimeUnit.SECONDS).get("name"));
+        assertEquals(1, typed.limiter(TestAPI.LIMITED_WAIT).timedOut());
+
+        RetryBudget budget = typed.retryBudget();
+        long retries = budget.retries();
+        Map retried = typed.callAsync(TestAPI.RETRIED, Map.class, new UserId("retry2")).get(5, TimeUnit.SECONDS);
+        assertEquals(3, retried.get("attempts"));
+        assertEquals("", retried.get("key"));
+        try {
+            typed.invoke(TestAPI.RETRIED, Map.class, new UserId("retry5"));
+            fail("Should have run out of attempts");
+        } catch (WebCallException ex) {
+            assertEquals(HttpResponseStatus.SERVICE_UNAVAILABLE, ex.status());
+        }
+        assertEquals(3, FlakyPage.ATTEMPTS.get("retry5").get());
+        CB retriedPost = new CB();
+        invoker.call(TestAPI.RETRIED_POST, retriedPost, new UserId("post1"));
+        assertTrue(retriedPost.latch.await(5, TimeUnit.SECONDS));
+        assertEquals(2, retriedPost.obj.get("attempts"));
+        assertEquals(36, ((String) retriedPost.obj.get("key")).length());
+        assertEquals(retries + 5, budget.retries());
+
+        // Timing of the open and half-open states is covered by
+        // CircuitBreakerTest
+        CircuitBreaker breaker = typed.circuitBreaker(TestAPI.BROKEN);
+        UserId broken = new UserId("broken3");
+        for (int i = 0; i < 2; i++) {
+            assertFailsWith(HttpResponseStatus.SERVICE_UNAVAILABLE, typed.callAsync(TestAPI.BROKEN, Map.class, broken));
+        }
+        assertEquals(CircuitBreaker.CircuitState.OPEN, breaker.state());
+        assertRejected(CallRejectedException.Reason.CIRCUIT_OPEN, typed.callAsync(TestAPI.BROKEN, Map.class, broken));
+        assertEquals("Nothing sent while open", 2, FlakyPage.ATTEMPTS.get("broken3").get());
+        assertEquals(1, breaker.rejected());
+
+        // Hedging is covered by HedgeTest, which does not depend on timing
+
+        assertTimedOut(CallTimeoutException.Kind.TOTAL, typed.callAsync(TestAPI.TIMED, Map.class, new UserId("timed")));
+        ErrorCB timedOut = new ErrorCB();
+        invoker.call(TestAPI.TIMED, timedOut, new UserId("deadline"), Deadline.after(Duration.ofMillis(50)));
+        assertTrue(timedOut.latch.await(5, TimeUnit.SECONDS));
+        assertEquals(CallTimeoutException.Kind.DEADLINE, ((CallTimeoutException) timedOut.err).kind());
+        CompletableFuture<Map> expired = typed.callAsync(TestAPI.TIMED, Map.class,
+                new UserId("expired"), Deadline.after(Duration.ZERO));
+        assertTrue("Nothing sent once the deadline has passed", expired.isDone());
+        assertTimedOut(CallTimeoutException.Kind.DEADLINE, expired);
+
+        CallMetrics.Snapshot hello = typed.metrics(TestAPI.HELLO_WORLD).snapshot();
+        long ok = hello.statuses().get(200);
+        assertTrue(ok >= 40);
+        assertEquals(ok, hello.latency(CallMetrics.Phase.TOTAL).count());
+        assertEquals(ok, hello.latency(CallMetrics.Phase.INTERPRET).count());
+        assertTrue(hello.latency(CallMetrics.Phase.HEADERS).valueAt(50) > 0);
+        assertTrue(hello.bytesReceived() > ok * 10);
+        assertEquals(0, hello.errors());
+        CallMetrics.Snapshot flaky = typed.metrics().get(TestAPI.RETRIED).snapshot();
+        assertEquals("Each attempt is a request", Long.valueOf(5), flaky.statuses().get(503));
         cl.shutdown();
     }
 
+    @Test(expected = ConfigurationError.class)
+    public void testPostCannotBeHedged() {
+        new WebCallBuilder(TestAPI.ECHO).method(Method.POST).path("/echo")
+                .hedge(Duration.ofMillis(10), 0.1).build();
+    }
+
+    @Test(expected = ConfigurationError.class)
+    public void testPostRetriesNeedIdempotencyKey() {
+        new WebCallBuilder(TestAPI.ECHO).method(Method.POST).path("/echo")
+                .retry(2, Duration.ofMillis(10), Duration.ofMillis(10)).build();
+    }
+
+    @Test(expected = ConfigurationError.class)
+    public void testBadCircuitBreakerIsRejected() {
+        new WebCallBuilder(TestAPI.HELLO_WORLD).circuitBreaker(10, 1.5, Duration.ofSeconds(1), 1);
+    }
+
+    @Test
+    public void testLimitAlgorithmIsOnlyCreatedPerInvoker() {
+        new WebCallBuilder(TestAPI.HELLO_WORLD).method(Method.GET).path("/hello")
+                .adaptiveConcurrencyLimit(() -> {
+                    throw new AssertionError("Created at build time");
+                }, 2, Duration.ofSeconds(1)).build();
+    }
+
+    private static void assertFailsWith(HttpResponseStatus status, CompletableFuture<?> f) throws Exception {
+        try {
+            f.get(5, TimeUnit.SECONDS);
+            fail("Should have failed");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof WebCallException);
+            assertEquals(status, ((WebCallException) ex.getCause()).status());
+        }
+    }
+
+    private static void assertRejected(CallRejectedException.Reason reason, CompletableFuture<?> f) throws Exception {
+        try {
+            f.get(5, TimeUnit.SECONDS);
+            fail("Should have been rejected");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof CallRejectedException);
+            assertEquals(reason, ((CallRejectedException) ex.getCause()).reason());
+        }
+    }
+
+    private static void assertTimedOut(CallTimeoutException.Kind kind, CompletableFuture<?> f) throws Exception {
+        try {
+            f.get(5, TimeUnit.SECONDS);
+            fail("Should have timed out");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof CallTimeoutException);
+            assertEquals(kind, ((CallTimeoutException) ex.getCause()).kind());
+        }
+    }
+
+    private static class ErrorCB extends Callback<Map> {
+
+        private volatile Throwable err;
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        ErrorCB() {
+            super(Map.class);
+        }
+
+        @Override
+        public void success(Map object) {
+        }
+
+        @Override
+        public void fail(HttpResponseStatus status, ByteBuf bytes) {
+        }
+
+        @Override
+        public void error(Throwable err) {
+            this.err = err;
+            latch.countDown();
+        }
+    }
+
+    public static class Row {
+
+        public int index;
+        public String name;
+    }
+
+    /**
+     * Requests rows in batches from a different thread, as a slow consumer
+     * would.
+     */
+    private static class RowsCB extends StreamingCallback<Row> {
+
+        private final List<Row> rows = new ArrayList<>();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final ExecutorService consumer = Executors.newSingleThreadExecutor();
+        private final long batch;
+        private StreamingCallback.Demand demand;
+        private volatile Throwable err;
+        private int outstanding;
+        private int maxOutstanding;
+
+        RowsCB(long batch) {
+            super(Row.class);
+            this.batch = batch;
+        }
+
+        @Override
+        public void onStart(Demand demand) {
+            this.demand = demand;
+            demand.request(batch);
+        }
+
+        @Override
+        public void onElement(Row element) {
+            rows.add(element);
+            if (batch != Long.MAX_VALUE) {
+                maxOutstanding = Math.max(maxOutstanding, ++outstanding);
+                if (outstanding == batch) {
+                    outstanding = 0;
+                    consumer.submit(() -> demand.request(batch));
+                }
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            consumer.shutdown();
+            done.countDown();
+        }
+
+        @Override
+        public void fail(HttpResponseStatus status, ByteBuf bytes) {
+            err = new AssertionError("Failed: " + status);
+            done.countDown();
+        }
+
+        @Override
+        public void error(Throwable err) {
+            this.err = err;
+            done.countDown();
+        }
+    }
+
     private static class EchoCB extends Callback<String> {
 
         volatile HttpResponseStatus status;
@@ -98,12 +571,14 @@ public class WebCallTest {
             super(Map.class);
         }
 
-        private Map obj;
+        private volatile Map obj;
+        private final CountDownLatch latch = new CountDownLatch(1);
 
         @Override
         public void success(Map object) {
             System.out.println("Success " + object);
             obj = object;
+            latch.countDown();
         }
 
         @Override
@@ -114,6 +589,23 @@ public class WebCallTest {
 
     }
 
+    @Test
+    public void testInvokersShareCallState() throws IOException {
+        Dependencies deps = new Dependencies(new M());
+        Invoker<?> a = deps.getInstance(Invoker.class);
+        Invoker<?> b = deps.getInstance(Invoker.class);
+        assertNotSame(a, b);
+        assertNotNull(a.circuitBreaker(TestAPI.BROKEN));
+        assertSame(a.circuitBreaker(TestAPI.BROKEN), b.circuitBreaker(TestAPI.BROKEN));
+        assertSame(a.limiter(TestAPI.LIMITED), b.limiter(TestAPI.LIMITED));
+        assertNotSame(a.limiter(TestAPI.LIMITED), a.limiter(TestAPI.HELLO_WORLD));
+        assertSame(a.limiter(TestAPI.HELLO_WORLD), b.limiter(TestAPI.HELLO_WORLD));
+        assertSame(a.metrics(TestAPI.HEDGED), b.metrics(TestAPI.HEDGED));
+        assertSame(a.connections(), b.connections());
+        assertEquals(a.metrics().keySet(), b.metrics().keySet());
+        deps.shutdown();
+    }
+
     static class M extends AbstractModule {
 
         @Override